@@ -4,7 +4,16 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 /**
@@ -16,11 +25,78 @@ public final class Analyzer implements Ast.Visitor<Void>
 
 	public Scope scope;
 	private Ast.Method method;
+	private final TypeRegistry types;
+
+	/**
+	 * Source position of every method signature defined by {@link
+	 * #visit(Ast.Source)}, used to reject calls to methods that are declared
+	 * later in the source while method bodies are checked concurrently.
+	 */
+	private final Map<Environment.Function, Integer> declarations;
+	private final Map<Environment.Variable, String> fields;
+	private final int position;
+	private Scope globals;
+
+	/**
+	 * The slots of the fields in the frame of the fields and of the
+	 * parameters and locals in the frame of the method being checked, see
+	 * {@link SlotScope}. Slots are reused once the block declaring a variable
+	 * ends, and {@code frameSize} is the most slots used at once.
+	 */
+	private final Map<Environment.Variable, Integer> fieldSlots;
+	private final Map<Environment.Variable, Integer> slots = new IdentityHashMap<>();
+	private int nextSlot = 0;
+	private int frameSize = 0;
+
+	/**
+	 * The declarations (by {@link #key(Ast.Field)} and {@link
+	 * #key(Ast.Method)}) each field and method refers to, recorded while the
+	 * source is analyzed and used by {@link #update(Ast.Source)}.
+	 */
+	private final Map<String, Set<String>> dependencies = new HashMap<>();
+	private Set<String> uses = null;
+	private Map<String, Ast> analyzed = null;
 
 	public Analyzer(Scope parent)
 	{
-		scope = new Scope(parent);
+		this(parent, Environment.getTypes());
+	}
+
+	/**
+	 * Creates an analyzer resolving type names against the given registry.
+	 */
+	public Analyzer(Scope parent, TypeRegistry types)
+	{
+		this.types = types;
+		scope = createGlobals(StandardLibrary.createScope(parent));
+		declarations = new IdentityHashMap<>();
+		fields = new IdentityHashMap<>();
+		fieldSlots = new IdentityHashMap<>();
+		globals = scope;
+		position = Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Creates an analyzer for checking the body of the method at the given
+	 * source position against the signatures collected by {@code global}.
+	 */
+	private Analyzer(Analyzer global, int position)
+	{
+		this.scope = global.scope;
+		this.types = global.types;
+		this.declarations = global.declarations;
+		this.fields = global.fields;
+		this.fieldSlots = global.fieldSlots;
+		this.globals = global.globals;
+		this.position = position;
+		this.uses = new HashSet<>();
+	}
+
+	private static Scope createGlobals(Scope parent)
+	{
+		Scope scope = new Scope(parent);
 		scope.defineFunction("print", "System.out.println", Arrays.asList(Environment.Type.ANY), Environment.Type.NIL, args -> Environment.NIL);
+		return scope;
 	}
 
 	public Scope getScope()
@@ -28,46 +104,296 @@ public final class Analyzer implements Ast.Visitor<Void>
 		return scope;
 	}
 
+	public TypeRegistry getTypes()
+	{
+		return types;
+	}
+
+	/**
+	 * Returns the declarations each field and method of the last analyzed
+	 * source refers to, keyed by field name or method {@code name/arity}.
+	 */
+	public Map<String, Set<String>> getDependencies()
+	{
+		return Collections.unmodifiableMap(dependencies);
+	}
+
+	/**
+	 * Analyzes the source in two phases. Fields and method signatures are
+	 * first defined in the global scope in source order, after which every
+	 * method body is checked concurrently by its own analyzer. Bodies only see
+	 * methods declared before them, and errors are reported in source order,
+	 * so the result is the same as checking each method sequentially.
+	 */
 	@Override
 	public Void visit(Ast.Source ast)
 	{
-		ast.getFields().forEach(this::visit);
-		ast.getMethods().forEach(this::visit);
-		requireAssignable(Environment.Type.INTEGER, scope.lookupFunction("main", 0).getReturnType());
+		analyze(ast, null);
 		return null;
 	}
 
+	/**
+	 * Re-analyzes a source after some of the declarations of the previously
+	 * analyzed source were replaced. Declarations that are the same objects as
+	 * before keep their annotations, so only the replaced declarations and the
+	 * ones referring to a replaced signature are checked again. Since every
+	 * declaration has an explicit signature, dependents of dependents never
+	 * need to be checked. If declarations were added, removed or reordered,
+	 * or the previous analysis failed, the whole source is analyzed. The
+	 * source may be the same object that was analyzed before with its lists
+	 * modified in place.
+	 * <p>
+	 * Returns the keys of the declarations that were checked.
+	 */
+	public Set<String> update(Ast.Source ast)
+	{
+		Set<String> dirty = null;
+
+		Map<String, Ast> current = declarationsByKey(ast);
+
+		if (analyzed != null && new ArrayList<>(analyzed.keySet()).equals(new ArrayList<>(current.keySet())))
+		{
+			dirty = new HashSet<>();
+
+			for (String key : current.keySet())
+			{
+				if (analyzed.get(key) != current.get(key))
+				{
+					dirty.add(key);
+
+					if (!sameSignature(analyzed.get(key), current.get(key)))
+					{
+						for (Map.Entry<String, Set<String>> entry : dependencies.entrySet())
+						{
+							if (entry.getValue().contains(key))
+							{
+								dirty.add(entry.getKey());
+							}
+						}
+					}
+				}
+			}
+		}
+
+		scope = createGlobals(globals.getParent());
+		globals = scope;
+		declarations.clear();
+		fields.clear();
+		fieldSlots.clear();
+
+		if (dirty == null)
+		{
+			dependencies.clear();
+		}
+
+		analyze(ast, dirty);
+		return dirty != null ? dirty : new HashSet<>(current.keySet());
+	}
+
+	/**
+	 * Analyzes the source, only checking the declarations whose keys are in
+	 * {@code dirty} (or all of them if {@code dirty} is null) and defining the
+	 * remaining ones from their declared signatures.
+	 */
+	private void analyze(Ast.Source ast, Set<String> dirty)
+	{
+		analyzed = null;
+
+		for (Ast.Field field : ast.getFields())
+		{
+			if (dirty == null || dirty.contains(key(field)))
+			{
+				uses = new HashSet<>();
+				try
+				{
+					visit(field);
+					dependencies.put(key(field), uses);
+				}
+				finally
+				{
+					uses = null;
+				}
+			}
+			else
+			{
+				field.setVariable(scope.defineVariable(field.getName(), field.getName(), types.get(field.getTypeName()), Environment.NIL));
+			}
+			fields.put(field.getVariable(), key(field));
+			fieldSlots.put(field.getVariable(), fieldSlots.size());
+		}
+
+		RuntimeException signatureError = null;
+		int defined = 0;
+
+		for (Ast.Method method : ast.getMethods())
+		{
+			try
+			{
+				declarations.put(defineMethod(method), defined);
+			}
+			catch (RuntimeException e)
+			{
+				signatureError = e;
+				break;
+			}
+			defined++;
+		}
+
+		List<Ast.Method> methods = new ArrayList<>();
+		List<Analyzer> analyzers = new ArrayList<>();
+		List<CompletableFuture<RuntimeException>> tasks = new ArrayList<>();
+
+		for (int i = 0; i < defined; i++)
+		{
+			Ast.Method method = ast.getMethods().get(i);
+
+			if (dirty != null && !dirty.contains(key(method)))
+			{
+				continue;
+			}
+
+			Analyzer analyzer = new Analyzer(this, i);
+			methods.add(method);
+			analyzers.add(analyzer);
+
+			if (defined == 1)
+			{
+				tasks.add(CompletableFuture.completedFuture(analyzer.checkMethodSafely(method)));
+			}
+			else
+			{
+				tasks.add(CompletableFuture.supplyAsync(() -> analyzer.checkMethodSafely(method)));
+			}
+		}
+
+		List<RuntimeException> errors = new ArrayList<>();
+
+		for (CompletableFuture<RuntimeException> task : tasks)
+		{
+			try
+			{
+				errors.add(task.join());
+			}
+			catch (CompletionException e)
+			{
+				if (e.getCause() instanceof Error)
+				{
+					throw (Error) e.getCause();
+				}
+				throw e;
+			}
+		}
+
+		for (RuntimeException error : errors)
+		{
+			if (error != null)
+			{
+				throw error;
+			}
+		}
+
+		if (signatureError != null)
+		{
+			throw signatureError;
+		}
+
+		for (int i = 0; i < methods.size(); i++)
+		{
+			dependencies.put(key(methods.get(i)), analyzers.get(i).uses);
+		}
+
+		requireAssignable(types, Environment.Type.INTEGER, scope.lookupFunction("main", 0).getReturnType());
+		analyzed = declarationsByKey(ast);
+	}
+
+	private static String key(Ast.Field ast)
+	{
+		return ast.getName();
+	}
+
+	private static String key(Ast.Method ast)
+	{
+		return ast.getName() + "/" + ast.getParameters().size();
+	}
+
+	/**
+	 * Returns the fields and methods of the source by key, in source order.
+	 */
+	private static Map<String, Ast> declarationsByKey(Ast.Source ast)
+	{
+		Map<String, Ast> declarations = new LinkedHashMap<>();
+		ast.getFields().forEach(field -> declarations.put(key(field), field));
+		ast.getMethods().forEach(method -> declarations.put(key(method), method));
+		return declarations;
+	}
+
+	private static boolean sameSignature(Ast previous, Ast current)
+	{
+		if (previous instanceof Ast.Field)
+		{
+			return ((Ast.Field) previous).getTypeName().equals(((Ast.Field) current).getTypeName());
+		}
+		else
+		{
+			return ((Ast.Method) previous).getParameterTypeNames().equals(((Ast.Method) current).getParameterTypeNames()) &&
+					((Ast.Method) previous).getReturnTypeName().equals(((Ast.Method) current).getReturnTypeName());
+		}
+	}
+
 	@Override
 	public Void visit(Ast.Field ast)
 	{
 		if (ast.getValue().isPresent())
 		{
 			visit(ast.getValue().get());
-			requireAssignable(Environment.getType(ast.getTypeName()), ast.getValue().get().getType());
+			requireAssignable(types, types.get(ast.getTypeName()), ast.getValue().get().getType());
 		}
 
-		ast.setVariable(scope.defineVariable(ast.getName(), ast.getName(), Environment.getType(ast.getTypeName()), Environment.NIL));
+		ast.setVariable(scope.defineVariable(ast.getName(), ast.getName(), types.get(ast.getTypeName()), Environment.NIL));
 
 		return null;
 	}
 
 	@Override
 	public Void visit(Ast.Method ast)
+	{
+		defineMethod(ast);
+		checkMethod(ast);
+		return null;
+	}
+
+	/**
+	 * Defines the signature of the method in the current scope.
+	 */
+	private Environment.Function defineMethod(Ast.Method ast)
 	{
 		List<Environment.Type> parameterTypes = new ArrayList<>();
 		Environment.Type returnType = Environment.Type.NIL;
 
 		for (String param : ast.getParameterTypeNames())
 		{
-			parameterTypes.add(Environment.getType(param));
+			parameterTypes.add(types.get(param));
 		}
 
 		if (ast.getReturnTypeName().isPresent())
 		{
-			returnType = Environment.getType(ast.getReturnTypeName().get());
+			returnType = types.get(ast.getReturnTypeName().get());
 		}
 
 		ast.setFunction(scope.defineFunction(ast.getName(), ast.getName(), parameterTypes, returnType, args -> Environment.NIL));
+		return ast.getFunction();
+	}
+
+	/**
+	 * Checks the body of a method whose signature has already been defined.
+	 */
+	private void checkMethod(Ast.Method ast)
+	{
+		List<Environment.Type> parameterTypes = ast.getFunction().getParameterTypes();
+
+		slots.clear();
+		nextSlot = 0;
+		frameSize = 0;
 
 		try
 		{
@@ -75,20 +401,45 @@ public final class Analyzer implements Ast.Visitor<Void>
 
 			for (int i = 0; i < ast.getParameters().size(); i++)
 			{
-				scope.defineVariable(ast.getParameters().get(i), ast.getParameters().get(i), parameterTypes.get(i), Environment.NIL);
+				allocate(scope.defineVariable(ast.getParameters().get(i), ast.getParameters().get(i), parameterTypes.get(i), Environment.NIL));
 			}
 
 			method = ast;
 			ast.getStatements().forEach(this::visit);
+			ast.setFrameSize(frameSize);
 		}
 		finally
 		{
 			scope = scope.getParent();
 			method = null;
 		}
+	}
 
-		return null;
+	/**
+	 * Assigns the next free slot of the current frame to the variable.
+	 */
+	private int allocate(Environment.Variable variable)
+	{
+		slots.put(variable, nextSlot);
+		frameSize = Math.max(frameSize, nextSlot + 1);
+		return nextSlot++;
+	}
 
+	/**
+	 * Checks the body of a method, returning the error instead of throwing it
+	 * so that concurrent checks can be reported in source order.
+	 */
+	private RuntimeException checkMethodSafely(Ast.Method ast)
+	{
+		try
+		{
+			checkMethod(ast);
+			return null;
+		}
+		catch (RuntimeException e)
+		{
+			return e;
+		}
 	}
 
 	@Override
@@ -114,7 +465,7 @@ public final class Analyzer implements Ast.Visitor<Void>
 
 		if (ast.getTypeName().isPresent())
 		{
-			variableType = Environment.getType(ast.getTypeName().get());
+			variableType = types.get(ast.getTypeName().get());
 		}
 
 		if (ast.getValue().isPresent())
@@ -126,10 +477,11 @@ public final class Analyzer implements Ast.Visitor<Void>
 				variableType = ast.getValue().get().getType();
 			}
 
-			requireAssignable(variableType, ast.getValue().get().getType());
+			requireAssignable(types, variableType, ast.getValue().get().getType());
 		}
 
 		ast.setVariable(scope.defineVariable(ast.getName(), ast.getName(), variableType, Environment.NIL));
+		ast.setSlot(allocate(ast.getVariable()));
 
 		return null;
 	}
@@ -145,7 +497,7 @@ public final class Analyzer implements Ast.Visitor<Void>
 		visit(ast.getReceiver());
 		visit(ast.getValue());
 
-		requireAssignable(ast.getReceiver().getType(), ast.getValue().getType());
+		requireAssignable(types, ast.getReceiver().getType(), ast.getValue().getType());
 
 		return null;
 	}
@@ -154,13 +506,15 @@ public final class Analyzer implements Ast.Visitor<Void>
 	public Void visit(Ast.Stmt.If ast)
 	{
 		visit(ast.getCondition());
-		requireAssignable(Environment.Type.BOOLEAN, ast.getCondition().getType());
+		requireAssignable(types, Environment.Type.BOOLEAN, ast.getCondition().getType());
 
 		if (ast.getThenStatements().isEmpty())
 		{
 			throw new RuntimeException("Then statement is empty");
 		}
 
+		int slot = nextSlot;
+
 		try
 		{
 			scope = new Scope(scope);
@@ -169,6 +523,7 @@ public final class Analyzer implements Ast.Visitor<Void>
 		finally
 		{
 			scope = scope.getParent();
+			nextSlot = slot;
 		}
 
 		try
@@ -179,6 +534,7 @@ public final class Analyzer implements Ast.Visitor<Void>
 		finally
 		{
 			scope = scope.getParent();
+			nextSlot = slot;
 		}
 
 		return null;
@@ -188,23 +544,26 @@ public final class Analyzer implements Ast.Visitor<Void>
 	public Void visit(Ast.Stmt.For ast)
 	{
 		visit(ast.getValue());
-		requireAssignable(Environment.Type.INTEGER_ITERABLE, ast.getValue().getType());
+		requireAssignable(types, Environment.Type.INTEGER_ITERABLE, ast.getValue().getType());
 
 		if (ast.getStatements().isEmpty())
 		{
 			throw new RuntimeException("Statement list is empty");
 		}
 
+		int slot = nextSlot;
+
 		try
 		{
 			scope = new Scope(scope);
 
-			scope.defineVariable(ast.getName(), ast.getName(), Environment.Type.INTEGER, Environment.NIL);
+			ast.setSlot(allocate(scope.defineVariable(ast.getName(), ast.getName(), Environment.Type.INTEGER, Environment.NIL)));
 			ast.getStatements().forEach(this::visit);
 		}
 		finally
 		{
 			scope = scope.getParent();
+			nextSlot = slot;
 		}
 
 		return null;
@@ -214,7 +573,9 @@ public final class Analyzer implements Ast.Visitor<Void>
 	public Void visit(Ast.Stmt.While ast)
 	{
 		visit(ast.getCondition());
-		requireAssignable(Environment.Type.BOOLEAN, ast.getCondition().getType());
+		requireAssignable(types, Environment.Type.BOOLEAN, ast.getCondition().getType());
+
+		int slot = nextSlot;
 
 		try
 		{
@@ -224,6 +585,7 @@ public final class Analyzer implements Ast.Visitor<Void>
 		finally
 		{
 			scope = scope.getParent();
+			nextSlot = slot;
 		}
 
 		return null;
@@ -233,7 +595,7 @@ public final class Analyzer implements Ast.Visitor<Void>
 	public Void visit(Ast.Stmt.Return ast)
 	{
 		visit(ast.getValue());
-		requireAssignable(method.getFunction().getReturnType(), ast.getValue().getType());
+		requireAssignable(types, method.getFunction().getReturnType(), ast.getValue().getType());
 		return null;
 	}
 
@@ -307,15 +669,15 @@ public final class Analyzer implements Ast.Visitor<Void>
 
 		if (ast.getOperator().equals("AND") || ast.getOperator().equals("OR"))
 		{
-			requireAssignable(Environment.Type.BOOLEAN, ast.getLeft().getType());
-			requireAssignable(Environment.Type.BOOLEAN, ast.getRight().getType());
+			requireAssignable(types, Environment.Type.BOOLEAN, ast.getLeft().getType());
+			requireAssignable(types, Environment.Type.BOOLEAN, ast.getRight().getType());
 			ast.setType(Environment.Type.BOOLEAN);
 		}
 		else if (ast.getOperator().equals("<") || ast.getOperator().equals("<=") || ast.getOperator().equals(">") || ast.getOperator().equals(">=") || ast.getOperator().equals("==") || ast.getOperator().equals("!="))
 		{
-			requireAssignable(Environment.Type.COMPARABLE, ast.getLeft().getType());
-			requireAssignable(Environment.Type.COMPARABLE, ast.getRight().getType());
-			requireAssignable(ast.getLeft().getType(), ast.getRight().getType());
+			requireAssignable(types, Environment.Type.COMPARABLE, ast.getLeft().getType());
+			requireAssignable(types, Environment.Type.COMPARABLE, ast.getRight().getType());
+			requireAssignable(types, ast.getLeft().getType(), ast.getRight().getType());
 			ast.setType(Environment.Type.BOOLEAN);
 		}
 		else if (ast.getOperator().equals("+") || ast.getOperator().equals("-") || ast.getOperator().equals("*") || ast.getOperator().equals("/"))
@@ -355,6 +717,16 @@ public final class Analyzer implements Ast.Visitor<Void>
 		else
 		{
 			ast.setVariable(scope.lookupVariable(ast.getName()));
+			use(fields.get(ast.getVariable()));
+
+			if (slots.containsKey(ast.getVariable()))
+			{
+				ast.setAddress(0, slots.get(ast.getVariable()));
+			}
+			else if (fieldSlots.containsKey(ast.getVariable()))
+			{
+				ast.setAddress(method != null ? 1 : 0, fieldSlots.get(ast.getVariable()));
+			}
 		}
 
 		return null;
@@ -372,19 +744,20 @@ public final class Analyzer implements Ast.Visitor<Void>
 			for (int i = 1; i < ast.getArguments().size(); i++)
 			{
 				visit(ast.getArguments().get(i));
-				requireAssignable(function.getParameterTypes().get(i), ast.getArguments().get(i).getType());
+				requireAssignable(types, function.getParameterTypes().get(i), ast.getArguments().get(i).getType());
 			}
 
 			ast.setFunction(function);
+			ast.setSelector(Selector.of(ast.getName(), ast.getArguments().size() + 1));
 		}
 		else
 		{
-			Environment.Function function = scope.lookupFunction(ast.getName(), ast.getArguments().size());
+			Environment.Function function = lookupFunction(ast.getName(), ast.getArguments().size());
 
 			for (int i = 0; i < ast.getArguments().size(); i++)
 			{
 				visit(ast.getArguments().get(i));
-				requireAssignable(function.getParameterTypes().get(i), ast.getArguments().get(i).getType());
+				requireAssignable(types, function.getParameterTypes().get(i), ast.getArguments().get(i).getType());
 			}
 
 			ast.setFunction(function);
@@ -393,22 +766,54 @@ public final class Analyzer implements Ast.Visitor<Void>
 		return null;
 	}
 
-	public static void requireAssignable(Environment.Type target, Environment.Type type)
+	/**
+	 * Looks up a function, skipping methods declared after the method being
+	 * checked as they would not have been defined yet in sequential order.
+	 */
+	private Environment.Function lookupFunction(String name, int arity)
 	{
-		if (target.getName().equals(type.getName()))
+		Environment.Function function = scope.lookupFunction(name, arity);
+
+		if (declarations.getOrDefault(function, -1) > position)
 		{
-			return;
+			if (globals.getParent() == null)
+			{
+				throw new RuntimeException("The function " + name + "/" + arity + " is not defined in this scope.");
+			}
+			return globals.getParent().lookupFunction(name, arity);
 		}
-		else if (target.getName().equals("Any"))
+
+		if (declarations.containsKey(function))
 		{
-			return;
+			use(name + "/" + arity);
 		}
-		else if (target.getName().equals("Comparable") && (type.getName().equals("Integer") || type.getName().equals("Decimal") || type.getName().equals("Character") || type.getName().equals("String")))
+
+		return function;
+	}
+
+	/**
+	 * Records a reference to a global declaration by the field or method
+	 * currently being analyzed.
+	 */
+	private void use(String key)
+	{
+		if (uses != null && key != null)
 		{
-			return;
+			uses.add(key);
 		}
+	}
 
-		throw new RuntimeException("Target type does not match the type being used or assigned");
+	public static void requireAssignable(Environment.Type target, Environment.Type type)
+	{
+		requireAssignable(Environment.getTypes(), target, type);
+	}
+
+	public static void requireAssignable(TypeRegistry types, Environment.Type target, Environment.Type type)
+	{
+		if (!types.isSubtype(type, target))
+		{
+			throw new RuntimeException("Target type does not match the type being used or assigned");
+		}
 	}
 
 }
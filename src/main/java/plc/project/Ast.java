@@ -115,6 +115,7 @@ public abstract class Ast {
         private final Optional<String> returnTypeName;
         private final List<Stmt> statements;
         private Environment.Function function = null;
+        private int frameSize = -1;
 
         public Method(String name, List<String> parameters, List<Stmt> statements) {
             this(name, parameters, new ArrayList<>(), Optional.of("Any"), statements);
@@ -162,6 +163,19 @@ public abstract class Ast {
             this.function = function;
         }
 
+        /**
+         * Returns the number of slots needed for the parameters and local
+         * variables of this method, or -1 if the variables of this method
+         * haven't been resolved by the {@link Analyzer}.
+         */
+        public int getFrameSize() {
+            return frameSize;
+        }
+
+        public void setFrameSize(int frameSize) {
+            this.frameSize = frameSize;
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Method &&
@@ -222,6 +236,7 @@ public abstract class Ast {
             private final Optional<String> typeName;
             private final Optional<Expr> value;
             private Environment.Variable variable;
+            private int slot = -1;
 
             public Declaration(String name, Optional<Expr> value) {
                 this(name, Optional.empty(), value);
@@ -256,6 +271,18 @@ public abstract class Ast {
                 this.variable = variable;
             }
 
+            /**
+             * Returns the slot of this variable in the frame of the enclosing
+             * method, or -1 if it hasn't been resolved.
+             */
+            public int getSlot() {
+                return slot;
+            }
+
+            public void setSlot(int slot) {
+                this.slot = slot;
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Declaration &&
@@ -361,6 +388,7 @@ public abstract class Ast {
             private final String name;
             private final Expr value;
             private final List<Stmt> statements;
+            private int slot = -1;
 
             public For(String name, Expr value, List<Stmt> statements) {
                 this.name = name;
@@ -380,6 +408,18 @@ public abstract class Ast {
                 return statements;
             }
 
+            /**
+             * Returns the slot of the loop variable in the frame of the
+             * enclosing method, or -1 if it hasn't been resolved.
+             */
+            public int getSlot() {
+                return slot;
+            }
+
+            public void setSlot(int slot) {
+                this.slot = slot;
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof For &&
@@ -556,6 +596,7 @@ public abstract class Ast {
             private final Expr left;
             private final Expr right;
             private Environment.Type type = null;
+            private boolean overflowSafe = false;
 
             public Binary(String operator, Expr left, Expr right) {
                 this.operator = operator;
@@ -587,6 +628,18 @@ public abstract class Ast {
                 this.type = type;
             }
 
+            /**
+             * Returns true if this is Integer arithmetic which has been proven
+             * to stay within the range of an {@code int}, see {@link RangeAnalyzer}.
+             */
+            public boolean isOverflowSafe() {
+                return overflowSafe;
+            }
+
+            public void setOverflowSafe(boolean overflowSafe) {
+                this.overflowSafe = overflowSafe;
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Binary &&
@@ -613,6 +666,8 @@ public abstract class Ast {
             private final Optional<Expr> receiver;
             private final String name;
             private Environment.Variable variable = null;
+            private int depth = -1;
+            private int slot = -1;
 
             public Access(Optional<Expr> receiver, String name) {
                 this.receiver = receiver;
@@ -638,6 +693,28 @@ public abstract class Ast {
                 this.variable = variable;
             }
 
+            /**
+             * Returns the number of frames between this access and the frame
+             * defining the variable, which is 0 for the locals of a method and
+             * 1 for fields accessed from a method, or -1 if the variable isn't
+             * in a frame and must be looked up by name.
+             */
+            public int getDepth() {
+                return depth;
+            }
+
+            /**
+             * Returns the slot of the variable in its frame, see {@link #getDepth()}.
+             */
+            public int getSlot() {
+                return slot;
+            }
+
+            public void setAddress(int depth, int slot) {
+                this.depth = depth;
+                this.slot = slot;
+            }
+
             @Override
             public Environment.Type getType() {
                 return getVariable().getType();
@@ -668,6 +745,7 @@ public abstract class Ast {
             private final String name;
             private final List<Expr> arguments;
             private Environment.Function function = null;
+            private int selector = -1;
 
             public Function(Optional<Expr> receiver, String name, List<Expr> arguments) {
                 this.receiver = receiver;
@@ -698,6 +776,18 @@ public abstract class Ast {
                 this.function = function;
             }
 
+            /**
+             * Returns the {@link Selector} of this method call if it has a
+             * receiver and has been analyzed, or -1.
+             */
+            public int getSelector() {
+                return selector;
+            }
+
+            public void setSelector(int selector) {
+                this.selector = selector;
+            }
+
             @Override
             public Environment.Type getType() {
                 return getFunction().getReturnType();
@@ -0,0 +1,217 @@
+package plc.project;
+
+import java.util.List;
+
+/**
+ * The bytecode the {@link BytecodeCompiler} compiles sources to and the
+ * {@link VirtualMachine} executes. Each function's code is an array of ints,
+ * where every instruction is an opcode followed by its operands, as listed
+ * by the {@link Disassembler}.
+ * <p>
+ * Instructions operate on an operand stack, above the locals of the frame
+ * (whose first slots hold the arguments). Operands refer to the slots of
+ * locals or fields, to the constant pool of the function (which holds
+ * literals, names, and the functions called), to selectors, or to the
+ * offsets of jump targets. Arithmetic and comparisons have typed variants
+ * for operands the {@link Analyzer} inferred to be Integers, and the untyped
+ * ones share the implementation of the {@link Interpreter}.
+ */
+public final class Bytecode
+{
+
+	/** {@code CONST index}: pushes the constant. */
+	public static final int CONST = 0;
+	/** {@code LOAD slot}: pushes the local. */
+	public static final int LOAD = 1;
+	/** {@code STORE slot}: pops into the local. */
+	public static final int STORE = 2;
+	/** {@code LOAD_FIELD slot}: pushes the field. */
+	public static final int LOAD_FIELD = 3;
+	/** {@code STORE_FIELD slot}: pops into the field. */
+	public static final int STORE_FIELD = 4;
+	/** {@code LOAD_GLOBAL name}: pushes the variable of the globals with the constant name. */
+	public static final int LOAD_GLOBAL = 5;
+	/** {@code STORE_GLOBAL name}: pops into the variable of the globals with the constant name. */
+	public static final int STORE_GLOBAL = 6;
+	/** {@code GET_FIELD name}: replaces the receiver with its field with the constant name. */
+	public static final int GET_FIELD = 7;
+	/** {@code SET_FIELD name}: pops a value and a receiver, and sets the field of the receiver. */
+	public static final int SET_FIELD = 8;
+	/** {@code POP}: discards the top of the stack. */
+	public static final int POP = 9;
+	public static final int ADD = 10;
+	public static final int SUB = 11;
+	public static final int MUL = 12;
+	public static final int DIV = 13;
+	public static final int EQ = 14;
+	public static final int NE = 15;
+	public static final int LT = 16;
+	public static final int LE = 17;
+	public static final int GT = 18;
+	public static final int GE = 19;
+	public static final int IADD = 20;
+	public static final int ISUB = 21;
+	public static final int IMUL = 22;
+	public static final int IDIV = 23;
+	public static final int IEQ = 24;
+	public static final int INE = 25;
+	public static final int ILT = 26;
+	public static final int ILE = 27;
+	public static final int IGT = 28;
+	public static final int IGE = 29;
+	/** {@code JUMP target}: continues at the target. */
+	public static final int JUMP = 30;
+	/** {@code JUMP_FALSE target}: pops a Boolean, and continues at the target if it is false. */
+	public static final int JUMP_FALSE = 31;
+	/** {@code JUMP_TRUE target}: pops a Boolean, and continues at the target if it is true. */
+	public static final int JUMP_TRUE = 32;
+	/** {@code CALL function arity}: calls the constant compiled function with the arguments on the stack. */
+	public static final int CALL = 33;
+	/** {@code INVOKE function arity}: calls the constant {@link Environment.Function}. */
+	public static final int INVOKE = 34;
+	/** {@code INVOKE_GLOBAL name arity}: calls the function of the globals with the constant name. */
+	public static final int INVOKE_GLOBAL = 35;
+	/** {@code INVOKE_METHOD selector arity}: calls a method on the receiver, which is above the arguments. */
+	public static final int INVOKE_METHOD = 36;
+	/** {@code RETURN}: returns the top of the stack to the caller. */
+	public static final int RETURN = 37;
+	/** {@code ITER slot}: pops an iterable into a cursor in the local. */
+	public static final int ITER = 38;
+	/** {@code NEXT cursor slot target}: stores the next element of the cursor in the local, or continues at the target at the end. */
+	public static final int NEXT = 39;
+
+	private static final String[] NAMES = {
+			"CONST", "LOAD", "STORE", "LOAD_FIELD", "STORE_FIELD", "LOAD_GLOBAL", "STORE_GLOBAL", "GET_FIELD", "SET_FIELD", "POP",
+			"ADD", "SUB", "MUL", "DIV", "EQ", "NE", "LT", "LE", "GT", "GE",
+			"IADD", "ISUB", "IMUL", "IDIV", "IEQ", "INE", "ILT", "ILE", "IGT", "IGE",
+			"JUMP", "JUMP_FALSE", "JUMP_TRUE", "CALL", "INVOKE", "INVOKE_GLOBAL", "INVOKE_METHOD", "RETURN", "ITER", "NEXT"
+	};
+
+	private static final int[] OPERANDS = {
+			1, 1, 1, 1, 1, 1, 1, 1, 1, 0,
+			0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+			0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+			1, 1, 1, 2, 2, 2, 2, 0, 1, 3
+	};
+
+	private Bytecode()
+	{
+	}
+
+	public static String getName(int opcode)
+	{
+		return NAMES[opcode];
+	}
+
+	/**
+	 * Returns the number of operands following the opcode.
+	 */
+	public static int getOperands(int opcode)
+	{
+		return OPERANDS[opcode];
+	}
+
+	/**
+	 * A compiled method (or the entry point of a program), whose code is
+	 * executed in a frame of {@code maxLocals} locals and at most {@code
+	 * maxStack} operands. The code of a method is set once it has been
+	 * compiled, as calls to it may be compiled first.
+	 */
+	public static final class Function
+	{
+
+		private final String name;
+		private final int arity;
+		int[] code = new int[0];
+		Object[] constants = new Object[0];
+		int maxLocals;
+		int maxStack;
+
+		Function(String name, int arity)
+		{
+			this.name = name;
+			this.arity = arity;
+			this.maxLocals = arity;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public int getArity()
+		{
+			return arity;
+		}
+
+		public int[] getCode()
+		{
+			return code.clone();
+		}
+
+		public List<Object> getConstants()
+		{
+			return List.of(constants);
+		}
+
+		public int getMaxLocals()
+		{
+			return maxLocals;
+		}
+
+		public int getMaxStack()
+		{
+			return maxStack;
+		}
+
+		@Override
+		public String toString()
+		{
+			return name + "/" + arity;
+		}
+
+	}
+
+	/**
+	 * A compiled source: its methods, and the entry point which initializes
+	 * the fields and calls {@code main}.
+	 */
+	public static final class Program
+	{
+
+		private final Scope globals;
+		private final Function entry;
+		private final List<Function> functions;
+		private final int fieldCount;
+
+		Program(Scope globals, Function entry, List<Function> functions, int fieldCount)
+		{
+			this.globals = globals;
+			this.entry = entry;
+			this.functions = functions;
+			this.fieldCount = fieldCount;
+		}
+
+		public Scope getGlobals()
+		{
+			return globals;
+		}
+
+		public Function getEntry()
+		{
+			return entry;
+		}
+
+		public List<Function> getFunctions()
+		{
+			return functions;
+		}
+
+		public int getFieldCount()
+		{
+			return fieldCount;
+		}
+
+	}
+
+}
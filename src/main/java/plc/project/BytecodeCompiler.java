@@ -0,0 +1,562 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a source to {@link Bytecode} for the {@link VirtualMachine}, with
+ * the semantics of the {@link Interpreter}. Like the {@link ClosureCompiler},
+ * it resolves variables itself, so sources need not have been analyzed, but
+ * it only emits typed instructions for expressions the {@link Analyzer}
+ * inferred to be Integers.
+ */
+public final class BytecodeCompiler implements Ast.Visitor<Void>
+{
+
+	private final Scope globals;
+	private final Map<String, Bytecode.Function> methods = new HashMap<>();
+	private final Map<String, Integer> fieldSlots = new HashMap<>();
+
+	/**
+	 * The code and constants of the function being compiled, and the depth of
+	 * its operand stack at the end of the code.
+	 */
+	private int[] code;
+	private int length;
+	private List<Object> constants;
+	private Map<Object, Integer> constantIndices;
+	private int depth;
+	private int maxStack;
+
+	/**
+	 * The slots of the locals visible at the current point of compilation,
+	 * innermost block first.
+	 */
+	private final Deque<Map<String, Integer>> blocks = new ArrayDeque<>();
+	private int nextSlot;
+	private int maxLocals;
+
+	public BytecodeCompiler(Scope parent)
+	{
+		globals = new Scope(StandardLibrary.createScope(parent));
+		globals.defineFunction("print", 1, Invoker.of(value -> {
+			System.out.println(value.getValue());
+			return Environment.NIL;
+		}));
+	}
+
+	public Scope getScope()
+	{
+		return globals;
+	}
+
+	public Bytecode.Program compile(Ast.Source ast)
+	{
+		visit(ast);
+		Bytecode.Function entry = methods.get("<source>/0");
+		List<Bytecode.Function> functions = new ArrayList<>(methods.values());
+		functions.remove(entry);
+		return new Bytecode.Program(globals, entry, functions, fieldSlots.size());
+	}
+
+	@Override
+	public Void visit(Ast.Source ast)
+	{
+		for (Ast.Method method : ast.getMethods())
+		{
+			String key = method.getName() + "/" + method.getParameters().size();
+			if (methods.containsKey(key))
+			{
+				throw new RuntimeException("The function " + key + " is already defined in this scope.");
+			}
+			methods.put(key, new Bytecode.Function(method.getName(), method.getParameters().size()));
+		}
+
+		// the entry point initializes the fields, then calls main
+		Bytecode.Function entry = new Bytecode.Function("<source>", 0);
+		methods.put("<source>/0", entry);
+		begin();
+		ast.getFields().forEach(this::visit);
+		call("main", 0);
+		emit(Bytecode.RETURN);
+		end(entry);
+
+		ast.getMethods().forEach(this::visit);
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Field ast)
+	{
+		if (ast.getValue().isPresent())
+		{
+			visit(ast.getValue().get());
+		}
+		else
+		{
+			emit(Bytecode.CONST, constant(Environment.NIL));
+		}
+
+		int slot = fieldSlots.size();
+		fieldSlots.put(ast.getName(), slot);
+		emit(Bytecode.STORE_FIELD, slot);
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Method ast)
+	{
+		Bytecode.Function function = methods.get(ast.getName() + "/" + ast.getParameters().size());
+		begin();
+		for (String parameter : ast.getParameters())
+		{
+			allocate(parameter);
+		}
+		block(ast.getStatements());
+		emit(Bytecode.CONST, constant(Environment.NIL));
+		emit(Bytecode.RETURN);
+		end(function);
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Stmt.Expression ast)
+	{
+		visit(ast.getExpression());
+		emit(Bytecode.POP);
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Stmt.Declaration ast)
+	{
+		if (ast.getValue().isPresent())
+		{
+			visit(ast.getValue().get());
+		}
+		else
+		{
+			emit(Bytecode.CONST, constant(Environment.NIL));
+		}
+		emit(Bytecode.STORE, allocate(ast.getName()));
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Stmt.Assignment ast)
+	{
+		if (!(ast.getReceiver() instanceof Ast.Expr.Access))
+		{
+			return null;
+		}
+
+		Ast.Expr.Access access = (Ast.Expr.Access) ast.getReceiver();
+		if (access.getReceiver().isPresent())
+		{
+			visit(access.getReceiver().get());
+			visit(ast.getValue());
+			emit(Bytecode.SET_FIELD, constant(access.getName()));
+			return null;
+		}
+
+		visit(ast.getValue());
+		Integer slot = lookupLocal(access.getName());
+		if (slot != null)
+		{
+			emit(Bytecode.STORE, slot);
+		}
+		else if (fieldSlots.containsKey(access.getName()))
+		{
+			emit(Bytecode.STORE_FIELD, fieldSlots.get(access.getName()));
+		}
+		else
+		{
+			emit(Bytecode.STORE_GLOBAL, constant(access.getName()));
+		}
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Stmt.If ast)
+	{
+		visit(ast.getCondition());
+		int otherwise = jump(Bytecode.JUMP_FALSE);
+		block(ast.getThenStatements());
+
+		if (ast.getElseStatements().isEmpty())
+		{
+			patch(otherwise);
+		}
+		else
+		{
+			int end = jump(Bytecode.JUMP);
+			patch(otherwise);
+			block(ast.getElseStatements());
+			patch(end);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Stmt.For ast)
+	{
+		visit(ast.getValue());
+
+		int enclosingSlot = nextSlot;
+		blocks.push(new HashMap<>());
+		try
+		{
+			int cursor = allocate(" cursor");
+			int slot = allocate(ast.getName());
+			emit(Bytecode.ITER, cursor);
+
+			int start = length;
+			emit(Bytecode.NEXT, cursor, slot, -1);
+			int end = length - 1;
+			block(ast.getStatements());
+			emit(Bytecode.JUMP, start);
+			patch(end);
+		}
+		finally
+		{
+			blocks.pop();
+			nextSlot = enclosingSlot;
+		}
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Stmt.While ast)
+	{
+		int start = length;
+		visit(ast.getCondition());
+		int end = jump(Bytecode.JUMP_FALSE);
+		block(ast.getStatements());
+		emit(Bytecode.JUMP, start);
+		patch(end);
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Stmt.Return ast)
+	{
+		visit(ast.getValue());
+		emit(Bytecode.RETURN);
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Expr.Literal ast)
+	{
+		emit(Bytecode.CONST, constant(ast.getLiteral() == null ? Environment.NIL : Environment.create(ast.getLiteral())));
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Expr.Group ast)
+	{
+		return visit(ast.getExpression());
+	}
+
+	@Override
+	public Void visit(Ast.Expr.Binary ast)
+	{
+		if (ast.getOperator().equals("AND") || ast.getOperator().equals("OR"))
+		{
+			// short-circuits to the result, with both sides required to be Booleans
+			int test = ast.getOperator().equals("AND") ? Bytecode.JUMP_FALSE : Bytecode.JUMP_TRUE;
+			visit(ast.getLeft());
+			int first = jump(test);
+			visit(ast.getRight());
+			int second = jump(test);
+			emit(Bytecode.CONST, constant(Environment.create(test == Bytecode.JUMP_FALSE)));
+			int end = jump(Bytecode.JUMP);
+			patch(first);
+			patch(second);
+			depth--;
+			emit(Bytecode.CONST, constant(Environment.create(test != Bytecode.JUMP_FALSE)));
+			patch(end);
+			return null;
+		}
+
+		visit(ast.getLeft());
+		visit(ast.getRight());
+
+		boolean integers = typeOf(ast.getLeft()) == Environment.Type.INTEGER && typeOf(ast.getRight()) == Environment.Type.INTEGER;
+		int opcode;
+		switch (ast.getOperator())
+		{
+			case "+":
+				opcode = Bytecode.ADD;
+				break;
+			case "-":
+				opcode = Bytecode.SUB;
+				break;
+			case "*":
+				opcode = Bytecode.MUL;
+				break;
+			case "/":
+				opcode = Bytecode.DIV;
+				break;
+			case "==":
+				opcode = Bytecode.EQ;
+				break;
+			case "!=":
+				opcode = Bytecode.NE;
+				break;
+			case "<":
+				opcode = Bytecode.LT;
+				break;
+			case "<=":
+				opcode = Bytecode.LE;
+				break;
+			case ">":
+				opcode = Bytecode.GT;
+				break;
+			case ">=":
+				opcode = Bytecode.GE;
+				break;
+			default:
+				throw new RuntimeException("Unknown operator " + ast.getOperator() + ".");
+		}
+		emit(integers ? opcode + (Bytecode.IADD - Bytecode.ADD) : opcode);
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Expr.Access ast)
+	{
+		if (ast.getReceiver().isPresent())
+		{
+			visit(ast.getReceiver().get());
+			emit(Bytecode.GET_FIELD, constant(ast.getName()));
+			return null;
+		}
+
+		Integer slot = lookupLocal(ast.getName());
+		if (slot != null)
+		{
+			emit(Bytecode.LOAD, slot);
+		}
+		else if (fieldSlots.containsKey(ast.getName()))
+		{
+			emit(Bytecode.LOAD_FIELD, fieldSlots.get(ast.getName()));
+		}
+		else
+		{
+			emit(Bytecode.LOAD_GLOBAL, constant(ast.getName()));
+		}
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Expr.Function ast)
+	{
+		ast.getArguments().forEach(this::visit);
+
+		if (ast.getReceiver().isPresent())
+		{
+			// the receiver is evaluated after the arguments
+			visit(ast.getReceiver().get());
+			int selector = ast.getSelector() >= 0 ? ast.getSelector() : Selector.of(ast.getName(), ast.getArguments().size() + 1);
+			emit(Bytecode.INVOKE_METHOD, selector, ast.getArguments().size());
+		}
+		else
+		{
+			call(ast.getName(), ast.getArguments().size());
+		}
+		return null;
+	}
+
+	/**
+	 * Emits a call of a function without a receiver, whose arguments are on
+	 * the stack.
+	 */
+	private void call(String name, int arity)
+	{
+		Bytecode.Function method = methods.get(name + "/" + arity);
+		if (method != null)
+		{
+			emit(Bytecode.CALL, constant(method), arity);
+			return;
+		}
+
+		Environment.Function function;
+		try
+		{
+			function = globals.lookupFunction(name, arity);
+		}
+		catch (RuntimeException e)
+		{
+			// fails when it is called, like in the Interpreter
+			emit(Bytecode.INVOKE_GLOBAL, constant(name), arity);
+			return;
+		}
+		emit(Bytecode.INVOKE, constant(function), arity);
+	}
+
+	private void block(List<Ast.Stmt> statements)
+	{
+		int enclosingSlot = nextSlot;
+		blocks.push(new HashMap<>());
+		try
+		{
+			statements.forEach(this::visit);
+		}
+		finally
+		{
+			blocks.pop();
+			nextSlot = enclosingSlot;
+		}
+	}
+
+	private int allocate(String name)
+	{
+		blocks.peek().put(name, nextSlot);
+		maxLocals = Math.max(maxLocals, nextSlot + 1);
+		return nextSlot++;
+	}
+
+	private Integer lookupLocal(String name)
+	{
+		for (Map<String, Integer> block : blocks)
+		{
+			Integer slot = block.get(name);
+			if (slot != null)
+			{
+				return slot;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Starts compiling a function, which only sees the fields and globals.
+	 */
+	private void begin()
+	{
+		code = new int[64];
+		length = 0;
+		constants = new ArrayList<>();
+		constantIndices = new HashMap<>();
+		depth = 0;
+		maxStack = 0;
+		blocks.clear();
+		blocks.push(new HashMap<>());
+		nextSlot = 0;
+		maxLocals = 0;
+	}
+
+	private void end(Bytecode.Function function)
+	{
+		function.code = Arrays.copyOf(code, length);
+		function.constants = constants.toArray();
+		function.maxLocals = Math.max(maxLocals, function.getArity());
+		function.maxStack = maxStack;
+	}
+
+	/**
+	 * Returns the index of the value in the constant pool, adding it if it
+	 * isn't in the pool yet. Literals are shared by value, and names and
+	 * functions are kept apart from literals.
+	 */
+	private int constant(Object value)
+	{
+		Object key = value instanceof Environment.PlcObject ? Arrays.asList("literal", ((Environment.PlcObject) value).getValue()) :
+				value instanceof String ? Arrays.asList("name", value) : value;
+		Integer index = constantIndices.get(key);
+		if (index == null)
+		{
+			index = constants.size();
+			constants.add(value);
+			constantIndices.put(key, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Emits an instruction, tracking the depth of the operand stack.
+	 */
+	private void emit(int opcode, int... operands)
+	{
+		if (length + operands.length + 1 > code.length)
+		{
+			code = Arrays.copyOf(code, code.length * 2 + operands.length + 1);
+		}
+		code[length++] = opcode;
+		for (int operand : operands)
+		{
+			code[length++] = operand;
+		}
+
+		depth += effect(opcode, operands);
+		maxStack = Math.max(maxStack, depth);
+	}
+
+	private static int effect(int opcode, int[] operands)
+	{
+		switch (opcode)
+		{
+			case Bytecode.CONST:
+			case Bytecode.LOAD:
+			case Bytecode.LOAD_FIELD:
+			case Bytecode.LOAD_GLOBAL:
+				return 1;
+			case Bytecode.GET_FIELD:
+			case Bytecode.JUMP:
+			case Bytecode.NEXT:
+				return 0;
+			case Bytecode.SET_FIELD:
+				return -2;
+			case Bytecode.CALL:
+			case Bytecode.INVOKE:
+			case Bytecode.INVOKE_GLOBAL:
+				return 1 - operands[1];
+			case Bytecode.INVOKE_METHOD:
+				return -operands[1];
+			default:
+				// stores, pops, binary operators, conditional jumps, returns and iterators
+				return -1;
+		}
+	}
+
+	/**
+	 * Emits a jump whose target is patched later, returning the offset of
+	 * the target operand.
+	 */
+	private int jump(int opcode)
+	{
+		emit(opcode, -1);
+		return length - 1;
+	}
+
+	/**
+	 * Sets the target of a jump to the end of the code.
+	 */
+	private void patch(int operand)
+	{
+		code[operand] = length;
+	}
+
+	/**
+	 * Returns the type the {@link Analyzer} inferred for the expression, or
+	 * null if it hasn't been analyzed.
+	 */
+	private static Environment.Type typeOf(Ast.Expr expr)
+	{
+		try
+		{
+			return expr.getType();
+		}
+		catch (IllegalStateException e)
+		{
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,507 @@
+package plc.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal writer of JVM class files for the {@link JvmCompiler}, which
+ * supports what it needs: a constant pool, static fields, and methods whose
+ * code uses labels for jumps. The depth of the operand stack is tracked as
+ * instructions are emitted, so that {@code max_stack} needn't be computed
+ * afterwards.
+ * <p>
+ * Classes are written in version 49 (Java 5), which the JVM verifies by type
+ * inference, so no stack map frames need to be written.
+ */
+final class ClassFileWriter
+{
+
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_PRIVATE = 0x0002;
+	static final int ACC_STATIC = 0x0008;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+
+	static final int ACONST_NULL = 0x01;
+	static final int ICONST_0 = 0x03;
+	static final int BIPUSH = 0x10;
+	static final int SIPUSH = 0x11;
+	static final int LDC = 0x12;
+	static final int LDC_W = 0x13;
+	static final int ALOAD = 0x19;
+	static final int AALOAD = 0x32;
+	static final int ASTORE = 0x3A;
+	static final int AASTORE = 0x53;
+	static final int POP = 0x57;
+	static final int DUP = 0x59;
+	static final int SWAP = 0x5F;
+	static final int IFEQ = 0x99;
+	static final int IFNE = 0x9A;
+	static final int GOTO = 0xA7;
+	static final int ARETURN = 0xB0;
+	static final int RETURN = 0xB1;
+	static final int GETSTATIC = 0xB2;
+	static final int PUTSTATIC = 0xB3;
+	static final int INVOKEVIRTUAL = 0xB6;
+	static final int INVOKESTATIC = 0xB8;
+	static final int INVOKEINTERFACE = 0xB9;
+	static final int ANEWARRAY = 0xBD;
+	static final int CHECKCAST = 0xC0;
+
+	private static final int VERSION = 49;
+
+	private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private final DataOutputStream poolOut = new DataOutputStream(pool);
+	private final Map<String, Integer> entries = new HashMap<>();
+	private int poolCount = 1;
+
+	private final int thisClass;
+	private final int superClass;
+	private final List<byte[]> fields = new ArrayList<>();
+	private final List<Method> methods = new ArrayList<>();
+
+	ClassFileWriter(String name, String superName)
+	{
+		thisClass = classRef(name);
+		superClass = classRef(superName);
+	}
+
+	int utf8(String value)
+	{
+		return entry("U" + value, out -> {
+			out.writeByte(1);
+			out.writeUTF(value);
+		});
+	}
+
+	int classRef(String name)
+	{
+		int index = utf8(name);
+		return entry("C" + name, out -> {
+			out.writeByte(7);
+			out.writeShort(index);
+		});
+	}
+
+	int string(String value)
+	{
+		int index = utf8(value);
+		return entry("S" + value, out -> {
+			out.writeByte(8);
+			out.writeShort(index);
+		});
+	}
+
+	int integer(int value)
+	{
+		return entry("I" + value, out -> {
+			out.writeByte(3);
+			out.writeInt(value);
+		});
+	}
+
+	int fieldRef(String owner, String name, String descriptor)
+	{
+		return memberRef(9, owner, name, descriptor);
+	}
+
+	int methodRef(String owner, String name, String descriptor)
+	{
+		return memberRef(10, owner, name, descriptor);
+	}
+
+	int interfaceMethodRef(String owner, String name, String descriptor)
+	{
+		return memberRef(11, owner, name, descriptor);
+	}
+
+	private int memberRef(int tag, String owner, String name, String descriptor)
+	{
+		int owned = classRef(owner);
+		int nameIndex = utf8(name);
+		int descriptorIndex = utf8(descriptor);
+		int nameAndType = entry("N" + name + ":" + descriptor, out -> {
+			out.writeByte(12);
+			out.writeShort(nameIndex);
+			out.writeShort(descriptorIndex);
+		});
+		return entry(tag + owner + "." + name + ":" + descriptor, out -> {
+			out.writeByte(tag);
+			out.writeShort(owned);
+			out.writeShort(nameAndType);
+		});
+	}
+
+	private int entry(String key, Entry entry)
+	{
+		Integer index = entries.get(key);
+		if (index != null)
+		{
+			return index;
+		}
+		try
+		{
+			entry.write(poolOut);
+		}
+		catch (IOException e)
+		{
+			throw new AssertionError(e);
+		}
+		if (poolCount > 0xFFFF)
+		{
+			throw new RuntimeException("The constant pool is too large.");
+		}
+		entries.put(key, poolCount);
+		return poolCount++;
+	}
+
+	void addField(int access, String name, String descriptor)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try
+		{
+			out.writeShort(access);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(descriptor));
+			out.writeShort(0);
+		}
+		catch (IOException e)
+		{
+			throw new AssertionError(e);
+		}
+		fields.add(bytes.toByteArray());
+	}
+
+	Method addMethod(int access, String name, String descriptor)
+	{
+		Method method = new Method(access, utf8(name), utf8(descriptor), parameterSlots(descriptor));
+		methods.add(method);
+		return method;
+	}
+
+	byte[] toByteArray()
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try
+		{
+			int code = utf8("Code");
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(VERSION);
+			out.writeShort(poolCount);
+			pool.writeTo(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0);
+			out.writeShort(fields.size());
+			for (byte[] field : fields)
+			{
+				out.write(field);
+			}
+			out.writeShort(methods.size());
+			for (Method method : methods)
+			{
+				method.write(out, code);
+			}
+			out.writeShort(0);
+		}
+		catch (IOException e)
+		{
+			throw new AssertionError(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Returns the number of local slots taken by the parameters of a method
+	 * descriptor, where longs and doubles take two.
+	 */
+	static int parameterSlots(String descriptor)
+	{
+		int slots = 0;
+		int i = 1;
+		while (descriptor.charAt(i) != ')')
+		{
+			char c = descriptor.charAt(i);
+			slots += c == 'J' || c == 'D' ? 2 : 1;
+			while (descriptor.charAt(i) == '[')
+			{
+				i++;
+			}
+			i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+		}
+		return slots;
+	}
+
+	/**
+	 * Returns the number of stack slots taken by the return value of a method
+	 * descriptor.
+	 */
+	private static int returnSlots(String descriptor)
+	{
+		char c = descriptor.charAt(descriptor.indexOf(')') + 1);
+		return c == 'V' ? 0 : c == 'J' || c == 'D' ? 2 : 1;
+	}
+
+	@FunctionalInterface
+	private interface Entry
+	{
+
+		void write(DataOutputStream out) throws IOException;
+
+	}
+
+	/**
+	 * A position in the code of a method, which jumps may refer to before it
+	 * has been marked.
+	 */
+	static final class Label
+	{
+
+		private int offset = -1;
+		private final List<Integer> jumps = new ArrayList<>();
+
+	}
+
+	/**
+	 * The code of a method, which only supports jumps within 32 KiB.
+	 */
+	final class Method
+	{
+
+		private final int access;
+		private final int name;
+		private final int descriptor;
+		private byte[] code = new byte[256];
+		private int length = 0;
+		private int depth = 0;
+		private int maxStack = 0;
+		private int maxLocals;
+
+		private Method(int access, int name, int descriptor, int maxLocals)
+		{
+			this.access = access;
+			this.name = name;
+			this.descriptor = descriptor;
+			this.maxLocals = maxLocals;
+		}
+
+		/**
+		 * Emits an instruction without operands, which changes the depth of
+		 * the stack by {@code effect}.
+		 */
+		void op(int opcode, int effect)
+		{
+			u1(opcode);
+			adjust(effect);
+		}
+
+		void load(int slot)
+		{
+			local(ALOAD, slot);
+			adjust(1);
+		}
+
+		void store(int slot)
+		{
+			local(ASTORE, slot);
+			adjust(-1);
+		}
+
+		private void local(int opcode, int slot)
+		{
+			if (slot > 0xFF)
+			{
+				throw new RuntimeException("The method has too many locals.");
+			}
+			u1(opcode);
+			u1(slot);
+			maxLocals = Math.max(maxLocals, slot + 1);
+		}
+
+		void pushInt(int value)
+		{
+			if (value >= -1 && value <= 5)
+			{
+				u1(ICONST_0 + value);
+			}
+			else if (value == (byte) value)
+			{
+				u1(BIPUSH);
+				u1(value);
+			}
+			else if (value == (short) value)
+			{
+				u1(SIPUSH);
+				u2(value);
+			}
+			else
+			{
+				ldc(integer(value));
+				return;
+			}
+			adjust(1);
+		}
+
+		void ldc(int index)
+		{
+			if (index <= 0xFF)
+			{
+				u1(LDC);
+				u1(index);
+			}
+			else
+			{
+				u1(LDC_W);
+				u2(index);
+			}
+			adjust(1);
+		}
+
+		void getStatic(String owner, String name, String type)
+		{
+			u1(GETSTATIC);
+			u2(fieldRef(owner, name, type));
+			adjust(1);
+		}
+
+		void putStatic(String owner, String name, String type)
+		{
+			u1(PUTSTATIC);
+			u2(fieldRef(owner, name, type));
+			adjust(-1);
+		}
+
+		void typed(int opcode, String className)
+		{
+			u1(opcode);
+			u2(classRef(className));
+		}
+
+		void invokeStatic(String owner, String name, String descriptor)
+		{
+			u1(INVOKESTATIC);
+			u2(methodRef(owner, name, descriptor));
+			adjust(returnSlots(descriptor) - parameterSlots(descriptor));
+		}
+
+		void invokeVirtual(String owner, String name, String descriptor)
+		{
+			u1(INVOKEVIRTUAL);
+			u2(methodRef(owner, name, descriptor));
+			adjust(returnSlots(descriptor) - parameterSlots(descriptor) - 1);
+		}
+
+		void invokeInterface(String owner, String name, String descriptor)
+		{
+			u1(INVOKEINTERFACE);
+			u2(interfaceMethodRef(owner, name, descriptor));
+			u1(parameterSlots(descriptor) + 1);
+			u1(0);
+			adjust(returnSlots(descriptor) - parameterSlots(descriptor) - 1);
+		}
+
+		/**
+		 * Emits a jump to the label, where conditional jumps pop their
+		 * operand.
+		 */
+		void jump(int opcode, Label label)
+		{
+			int offset = length;
+			u1(opcode);
+			if (label.offset >= 0)
+			{
+				u2(label.offset - offset);
+			}
+			else
+			{
+				label.jumps.add(offset);
+				u2(0);
+			}
+			if (opcode != GOTO)
+			{
+				adjust(-1);
+			}
+		}
+
+		void mark(Label label)
+		{
+			label.offset = length;
+			for (int jump : label.jumps)
+			{
+				int relative = length - jump;
+				if (relative != (short) relative)
+				{
+					throw new RuntimeException("The method is too large.");
+				}
+				code[jump + 1] = (byte) (relative >> 8);
+				code[jump + 2] = (byte) relative;
+			}
+		}
+
+		/**
+		 * Sets the depth of the stack, for code only reached by jumps.
+		 */
+		void setDepth(int depth)
+		{
+			this.depth = depth;
+		}
+
+		int getDepth()
+		{
+			return depth;
+		}
+
+		private void adjust(int effect)
+		{
+			depth += effect;
+			maxStack = Math.max(maxStack, depth);
+		}
+
+		private void u1(int value)
+		{
+			if (length == code.length)
+			{
+				code = Arrays.copyOf(code, code.length * 2);
+			}
+			code[length++] = (byte) value;
+		}
+
+		private void u2(int value)
+		{
+			u1(value >> 8);
+			u1(value);
+		}
+
+		private void write(DataOutputStream out, int codeAttribute) throws IOException
+		{
+			if (length > 0xFFFF)
+			{
+				throw new RuntimeException("The method is too large.");
+			}
+			out.writeShort(access);
+			out.writeShort(name);
+			out.writeShort(descriptor);
+			out.writeShort(1);
+			out.writeShort(codeAttribute);
+			out.writeInt(12 + length);
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(length);
+			out.write(code, 0, length);
+			out.writeShort(0);
+			out.writeShort(0);
+		}
+
+	}
+
+}
@@ -0,0 +1,689 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An alternative to the {@link Interpreter} which compiles an AST once into a
+ * tree of {@link Node}s and then executes that tree. Compiling resolves
+ * everything the Interpreter looks up while it runs: operators are resolved
+ * to nodes specialized for them, variables to slots in an array of locals or
+ * fields, calls of methods to the compiled method, and groups disappear.
+ * Statements signal a {@code RETURN} by their result rather than by throwing.
+ * <p>
+ * The semantics are those of the Interpreter, which the compiled nodes share
+ * the slow paths of (see {@link Interpreter#binary(Ast.Expr.Binary,
+ * Environment.PlcObject, Environment.PlcObject)}). Variables are resolved by
+ * the compiler itself, so sources need not have been analyzed; names that
+ * don't resolve to a local or field are looked up in the globals when they
+ * are evaluated.
+ */
+public final class ClosureCompiler implements Ast.Visitor<ClosureCompiler.Node>
+{
+
+	/**
+	 * A compiled AST, executed with the locals of the method it is in.
+	 * Expressions return their value, while statements return null unless
+	 * they return from the method, in which case they return its result.
+	 */
+	@FunctionalInterface
+	public interface Node
+	{
+
+		Environment.PlcObject execute(Environment.PlcObject[] locals);
+
+	}
+
+	private static final Node NOTHING = locals -> null;
+
+	private final Scope globals;
+	private final Map<Ast.Method, CompiledMethod> methods = new IdentityHashMap<>();
+
+	/**
+	 * The values of the fields, in the slots they were compiled to.
+	 */
+	private final Map<String, Integer> fieldSlots = new HashMap<>();
+	private Environment.PlcObject[] fields = new Environment.PlcObject[0];
+
+	/**
+	 * The slots of the locals visible at the current point of compilation,
+	 * innermost block first, and the frame being allocated, which is the
+	 * frame of the method being compiled or of the nodes compiled outside of
+	 * methods.
+	 */
+	private final Deque<Map<String, Integer>> blocks = new ArrayDeque<>();
+	private int nextSlot = 0;
+	private int frameSize = 0;
+
+	public ClosureCompiler(Scope parent)
+	{
+		globals = new Scope(StandardLibrary.createScope(parent));
+		globals.defineFunction("print", 1, Invoker.of(value -> {
+			System.out.println(value.getValue());
+			return Environment.NIL;
+		}));
+		blocks.push(new HashMap<>());
+	}
+
+	public Scope getScope()
+	{
+		return globals;
+	}
+
+	/**
+	 * Executes a node compiled by this compiler outside of any method, such
+	 * as a source, in a new frame for the locals declared outside of methods.
+	 */
+	public Environment.PlcObject execute(Node node)
+	{
+		return node.execute(new Environment.PlcObject[frameSize]);
+	}
+
+	/**
+	 * Compiles the source into a node which initializes the fields and calls
+	 * {@code main}, returning its result. The node may be executed again,
+	 * which runs the program from the start.
+	 */
+	@Override
+	public Node visit(Ast.Source ast)
+	{
+		for (Ast.Method method : ast.getMethods())
+		{
+			declare(method);
+		}
+
+		Node[] initializers = new Node[ast.getFields().size()];
+		for (int i = 0; i < initializers.length; i++)
+		{
+			initializers[i] = visit(ast.getFields().get(i));
+		}
+		for (Ast.Method method : ast.getMethods())
+		{
+			visit(method);
+		}
+
+		return locals -> {
+			for (Node initializer : initializers)
+			{
+				initializer.execute(locals);
+			}
+			return globals.lookupFunction("main", 0).invoke();
+		};
+	}
+
+	@Override
+	public Node visit(Ast.Field ast)
+	{
+		Node value = ast.getValue().isPresent() ? visit(ast.getValue().get()) : literal(Environment.NIL);
+		int slot = fields.length;
+		fields = Arrays.copyOf(fields, slot + 1);
+		fieldSlots.put(ast.getName(), slot);
+
+		return locals -> {
+			fields[slot] = value.execute(locals);
+			return null;
+		};
+	}
+
+	@Override
+	public Node visit(Ast.Method ast)
+	{
+		CompiledMethod method = declare(ast);
+
+		Deque<Map<String, Integer>> enclosing = new ArrayDeque<>(blocks);
+		int enclosingSlot = nextSlot;
+		int enclosingSize = frameSize;
+		try
+		{
+			// methods only see the fields and globals, not the locals around them
+			blocks.clear();
+			blocks.push(new HashMap<>());
+			nextSlot = 0;
+			frameSize = 0;
+
+			for (String parameter : ast.getParameters())
+			{
+				allocate(parameter);
+			}
+			method.body = block(ast.getStatements());
+			method.frameSize = frameSize;
+		}
+		finally
+		{
+			blocks.clear();
+			blocks.addAll(enclosing);
+			nextSlot = enclosingSlot;
+			frameSize = enclosingSize;
+		}
+
+		return NOTHING;
+	}
+
+	/**
+	 * Defines the method in the globals, before its body has been compiled
+	 * so that calls can be compiled regardless of the order of methods.
+	 */
+	private CompiledMethod declare(Ast.Method ast)
+	{
+		CompiledMethod method = methods.get(ast);
+		if (method == null)
+		{
+			method = new CompiledMethod(ast.getParameters().size());
+			methods.put(ast, method);
+			globals.defineFunction(ast.getName(), ast.getName(), Collections.nCopies(ast.getParameters().size(), Environment.Type.ANY), Environment.Type.ANY, method);
+		}
+		return method;
+	}
+
+	@Override
+	public Node visit(Ast.Stmt.Expression ast)
+	{
+		Node expression = visit(ast.getExpression());
+		return locals -> {
+			expression.execute(locals);
+			return null;
+		};
+	}
+
+	@Override
+	public Node visit(Ast.Stmt.Declaration ast)
+	{
+		Node value = ast.getValue().isPresent() ? visit(ast.getValue().get()) : literal(Environment.NIL);
+		int slot = allocate(ast.getName());
+		return locals -> {
+			locals[slot] = value.execute(locals);
+			return null;
+		};
+	}
+
+	@Override
+	public Node visit(Ast.Stmt.Assignment ast)
+	{
+		if (!(ast.getReceiver() instanceof Ast.Expr.Access))
+		{
+			return NOTHING;
+		}
+
+		Ast.Expr.Access access = (Ast.Expr.Access) ast.getReceiver();
+		Node value = visit(ast.getValue());
+
+		if (access.getReceiver().isPresent())
+		{
+			Node receiver = visit(access.getReceiver().get());
+			String name = access.getName();
+			return locals -> {
+				receiver.execute(locals).setField(name, value.execute(locals));
+				return null;
+			};
+		}
+
+		Integer slot = lookupLocal(access.getName());
+		if (slot != null)
+		{
+			int local = slot;
+			return locals -> {
+				locals[local] = value.execute(locals);
+				return null;
+			};
+		}
+
+		Integer field = fieldSlots.get(access.getName());
+		if (field != null)
+		{
+			int index = field;
+			return locals -> {
+				fields[index] = value.execute(locals);
+				return null;
+			};
+		}
+
+		String name = access.getName();
+		return locals -> {
+			globals.lookupVariable(name).setValue(value.execute(locals));
+			return null;
+		};
+	}
+
+	@Override
+	public Node visit(Ast.Stmt.If ast)
+	{
+		Node condition = visit(ast.getCondition());
+		Node thenStatements = block(ast.getThenStatements());
+		Node elseStatements = block(ast.getElseStatements());
+		return locals -> Interpreter.isTrue(condition.execute(locals)) ? thenStatements.execute(locals) : elseStatements.execute(locals);
+	}
+
+	@Override
+	public Node visit(Ast.Stmt.For ast)
+	{
+		Node value = visit(ast.getValue());
+
+		int enclosingSlot = nextSlot;
+		blocks.push(new HashMap<>());
+		int slot;
+		Node body;
+		try
+		{
+			slot = allocate(ast.getName());
+			body = block(ast.getStatements());
+		}
+		finally
+		{
+			blocks.pop();
+			nextSlot = enclosingSlot;
+		}
+
+		return locals -> {
+			Environment.PlcObject iterable = value.execute(locals);
+			if (iterable.getValue() instanceof IntegerRange)
+			{
+				IntegerRange range = (IntegerRange) iterable.getValue();
+				long next = range.getStart();
+				for (long remaining = range.size(); remaining != 0; remaining--, next += range.getStep())
+				{
+					locals[slot] = Environment.createInteger(next);
+					Environment.PlcObject result = body.execute(locals);
+					if (result != null)
+					{
+						return result;
+					}
+				}
+			}
+			else
+			{
+				Iterable<?> elements = Interpreter.requireType(Iterable.class, iterable);
+				for (Object element : elements)
+				{
+					locals[slot] = (Environment.PlcObject) element;
+					Environment.PlcObject result = body.execute(locals);
+					if (result != null)
+					{
+						return result;
+					}
+				}
+			}
+			return null;
+		};
+	}
+
+	@Override
+	public Node visit(Ast.Stmt.While ast)
+	{
+		Node condition = visit(ast.getCondition());
+		Node body = block(ast.getStatements());
+		return locals -> {
+			while (Interpreter.isTrue(condition.execute(locals)))
+			{
+				Environment.PlcObject result = body.execute(locals);
+				if (result != null)
+				{
+					return result;
+				}
+			}
+			return null;
+		};
+	}
+
+	@Override
+	public Node visit(Ast.Stmt.Return ast)
+	{
+		return visit(ast.getValue());
+	}
+
+	@Override
+	public Node visit(Ast.Expr.Literal ast)
+	{
+		return literal(ast.getLiteral() == null ? Environment.NIL : Environment.create(ast.getLiteral()));
+	}
+
+	private static Node literal(Environment.PlcObject value)
+	{
+		return locals -> value;
+	}
+
+	@Override
+	public Node visit(Ast.Expr.Group ast)
+	{
+		return visit(ast.getExpression());
+	}
+
+	@Override
+	public Node visit(Ast.Expr.Binary ast)
+	{
+		Node left = visit(ast.getLeft());
+		Node right = visit(ast.getRight());
+
+		switch (ast.getOperator())
+		{
+			case "AND":
+				return locals -> Environment.create(Interpreter.isTrue(left.execute(locals)) && Interpreter.isTrue(right.execute(locals)));
+			case "OR":
+				return locals -> Environment.create(Interpreter.isTrue(left.execute(locals)) || Interpreter.isTrue(right.execute(locals)));
+			case "+":
+				return locals -> {
+					Environment.PlcObject leftObject = left.execute(locals);
+					Environment.PlcObject rightObject = right.execute(locals);
+					if (leftObject.isLong() && rightObject.isLong())
+					{
+						long l = leftObject.getLong();
+						long r = rightObject.getLong();
+						long result = l + r;
+						if (((l ^ result) & (r ^ result)) >= 0)
+						{
+							return Environment.createInteger(result);
+						}
+					}
+					return Interpreter.binary(ast, leftObject, rightObject);
+				};
+			case "-":
+				return locals -> {
+					Environment.PlcObject leftObject = left.execute(locals);
+					Environment.PlcObject rightObject = right.execute(locals);
+					if (leftObject.isLong() && rightObject.isLong())
+					{
+						long l = leftObject.getLong();
+						long r = rightObject.getLong();
+						long result = l - r;
+						if (((l ^ r) & (l ^ result)) >= 0)
+						{
+							return Environment.createInteger(result);
+						}
+					}
+					return Interpreter.binary(ast, leftObject, rightObject);
+				};
+			case "<":
+				return locals -> {
+					Environment.PlcObject leftObject = left.execute(locals);
+					Environment.PlcObject rightObject = right.execute(locals);
+					if (leftObject.isLong() && rightObject.isLong())
+					{
+						return Environment.create(leftObject.getLong() < rightObject.getLong());
+					}
+					return Interpreter.binary(ast, leftObject, rightObject);
+				};
+			case "<=":
+				return locals -> {
+					Environment.PlcObject leftObject = left.execute(locals);
+					Environment.PlcObject rightObject = right.execute(locals);
+					if (leftObject.isLong() && rightObject.isLong())
+					{
+						return Environment.create(leftObject.getLong() <= rightObject.getLong());
+					}
+					return Interpreter.binary(ast, leftObject, rightObject);
+				};
+			case ">":
+				return locals -> {
+					Environment.PlcObject leftObject = left.execute(locals);
+					Environment.PlcObject rightObject = right.execute(locals);
+					if (leftObject.isLong() && rightObject.isLong())
+					{
+						return Environment.create(leftObject.getLong() > rightObject.getLong());
+					}
+					return Interpreter.binary(ast, leftObject, rightObject);
+				};
+			case ">=":
+				return locals -> {
+					Environment.PlcObject leftObject = left.execute(locals);
+					Environment.PlcObject rightObject = right.execute(locals);
+					if (leftObject.isLong() && rightObject.isLong())
+					{
+						return Environment.create(leftObject.getLong() >= rightObject.getLong());
+					}
+					return Interpreter.binary(ast, leftObject, rightObject);
+				};
+			default:
+				// the remaining operators gain little over the shared implementation
+				return locals -> {
+					Environment.PlcObject leftObject = left.execute(locals);
+					return Interpreter.binary(ast, leftObject, right.execute(locals));
+				};
+		}
+	}
+
+	@Override
+	public Node visit(Ast.Expr.Access ast)
+	{
+		String name = ast.getName();
+
+		if (ast.getReceiver().isPresent())
+		{
+			Node receiver = visit(ast.getReceiver().get());
+			return locals -> receiver.execute(locals).getField(name).getValue();
+		}
+
+		Integer slot = lookupLocal(name);
+		if (slot != null)
+		{
+			int local = slot;
+			return locals -> locals[local];
+		}
+
+		Integer field = fieldSlots.get(name);
+		if (field != null)
+		{
+			int index = field;
+			return locals -> fields[index];
+		}
+
+		return locals -> globals.lookupVariable(name).getValue();
+	}
+
+	@Override
+	public Node visit(Ast.Expr.Function ast)
+	{
+		Node[] arguments = new Node[ast.getArguments().size()];
+		for (int i = 0; i < arguments.length; i++)
+		{
+			arguments[i] = visit(ast.getArguments().get(i));
+		}
+
+		if (ast.getReceiver().isPresent())
+		{
+			return method(ast, visit(ast.getReceiver().get()), arguments);
+		}
+
+		Environment.Function function;
+		try
+		{
+			function = globals.lookupFunction(ast.getName(), arguments.length);
+		}
+		catch (RuntimeException e)
+		{
+			// fails when it is called, like in the Interpreter
+			String name = ast.getName();
+			return locals -> globals.lookupFunction(name, arguments.length).invoke(evaluate(arguments, locals, 0));
+		}
+
+		if (function.getInvoker() instanceof CompiledMethod)
+		{
+			// the arguments are evaluated directly into the frame of the call
+			CompiledMethod method = (CompiledMethod) function.getInvoker();
+			return locals -> {
+				Environment.PlcObject[] frame = new Environment.PlcObject[method.frameSize];
+				for (int i = 0; i < arguments.length; i++)
+				{
+					frame[i] = arguments[i].execute(locals);
+				}
+				return method.call(frame);
+			};
+		}
+
+		switch (arguments.length)
+		{
+			case 0:
+				return locals -> function.invoke();
+			case 1:
+				return locals -> function.invoke(arguments[0].execute(locals));
+			case 2:
+				return locals -> {
+					Environment.PlcObject first = arguments[0].execute(locals);
+					return function.invoke(first, arguments[1].execute(locals));
+				};
+			case 3:
+				return locals -> {
+					Environment.PlcObject first = arguments[0].execute(locals);
+					Environment.PlcObject second = arguments[1].execute(locals);
+					return function.invoke(first, second, arguments[2].execute(locals));
+				};
+			default:
+				return locals -> function.invoke(evaluate(arguments, locals, 0));
+		}
+	}
+
+	/**
+	 * Compiles a call of a method on a receiver, which like in the {@link
+	 * Interpreter} is evaluated after the arguments.
+	 */
+	private static Node method(Ast.Expr.Function ast, Node receiver, Node[] arguments)
+	{
+		int selector = ast.getSelector() >= 0 ? ast.getSelector() : Selector.of(ast.getName(), arguments.length + 1);
+
+		switch (arguments.length)
+		{
+			case 0:
+				return locals -> receiver.execute(locals).callMethod(selector);
+			case 1:
+				return locals -> {
+					Environment.PlcObject first = arguments[0].execute(locals);
+					return receiver.execute(locals).callMethod(selector, first);
+				};
+			case 2:
+				return locals -> {
+					Environment.PlcObject first = arguments[0].execute(locals);
+					Environment.PlcObject second = arguments[1].execute(locals);
+					return receiver.execute(locals).callMethod(selector, first, second);
+				};
+			default:
+				return locals -> {
+					Environment.PlcObject[] values = evaluate(arguments, locals, 1);
+					return receiver.execute(locals).callMethod(selector, values);
+				};
+		}
+	}
+
+	/**
+	 * Evaluates the arguments into an array, after {@code offset} elements
+	 * left for the receiver.
+	 */
+	private static Environment.PlcObject[] evaluate(Node[] arguments, Environment.PlcObject[] locals, int offset)
+	{
+		Environment.PlcObject[] values = new Environment.PlcObject[arguments.length + offset];
+		for (int i = 0; i < arguments.length; i++)
+		{
+			values[i + offset] = arguments[i].execute(locals);
+		}
+		return values;
+	}
+
+	/**
+	 * Compiles the statements of a block, whose locals are released once the
+	 * block has been compiled so that later blocks can reuse their slots.
+	 */
+	private Node block(List<Ast.Stmt> statements)
+	{
+		int enclosingSlot = nextSlot;
+		blocks.push(new HashMap<>());
+		Node[] nodes = new Node[statements.size()];
+		try
+		{
+			for (int i = 0; i < nodes.length; i++)
+			{
+				nodes[i] = visit(statements.get(i));
+			}
+		}
+		finally
+		{
+			blocks.pop();
+			nextSlot = enclosingSlot;
+		}
+
+		switch (nodes.length)
+		{
+			case 0:
+				return NOTHING;
+			case 1:
+				return nodes[0];
+			default:
+				return locals -> {
+					for (Node node : nodes)
+					{
+						Environment.PlcObject result = node.execute(locals);
+						if (result != null)
+						{
+							return result;
+						}
+					}
+					return null;
+				};
+		}
+	}
+
+	/**
+	 * Assigns the next free slot of the current frame to a local of the
+	 * innermost block.
+	 */
+	private int allocate(String name)
+	{
+		blocks.peek().put(name, nextSlot);
+		frameSize = Math.max(frameSize, nextSlot + 1);
+		return nextSlot++;
+	}
+
+	private Integer lookupLocal(String name)
+	{
+		for (Map<String, Integer> block : blocks)
+		{
+			Integer slot = block.get(name);
+			if (slot != null)
+			{
+				return slot;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A method compiled by this compiler, which is also the implementation of
+	 * its function in the globals. Its body is set once it has been compiled.
+	 */
+	private static final class CompiledMethod extends Invoker
+	{
+
+		private final int arity;
+		private Node body = NOTHING;
+		private int frameSize;
+
+		private CompiledMethod(int arity)
+		{
+			this.arity = arity;
+			this.frameSize = arity;
+		}
+
+		/**
+		 * Executes the body in a frame whose first slots hold the arguments.
+		 */
+		private Environment.PlcObject call(Environment.PlcObject[] frame)
+		{
+			Environment.PlcObject result = body.execute(frame);
+			return result != null ? result : Environment.NIL;
+		}
+
+		@Override
+		public Environment.PlcObject invoke(Environment.PlcObject[] arguments)
+		{
+			if (arguments.length != arity)
+			{
+				throw arityMismatch(arity, arguments.length);
+			}
+			return call(Arrays.copyOf(arguments, frameSize));
+		}
+
+	}
+
+}
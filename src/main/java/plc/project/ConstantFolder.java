@@ -0,0 +1,416 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Folds constant expressions of an analyzed AST, returning a new AST with the
+ * same annotations. Binary expressions over literals are evaluated with the
+ * same semantics as the {@link Interpreter}, and fields that are initialized
+ * with a constant and never assigned are replaced by their value.
+ * <p>
+ * Integer results are only folded if they are within the range of an
+ * {@code int}, so folding never introduces a literal the {@link Analyzer}
+ * would reject. Decimal division is never folded, as it rounds to the scale of
+ * the dividend in the {@link Interpreter} but uses {@code double} division in
+ * the code emitted by the {@link Generator}. Decimal sums, differences, and
+ * products are still folded exactly, which can differ from the last digits of
+ * the {@code double} arithmetic emitted by the {@link Generator}. Expressions
+ * that would fail at runtime (such as division by zero) are left as they are.
+ */
+public final class ConstantFolder implements Ast.Visitor<Ast>
+{
+
+	private static final BigInteger INT_MIN = BigInteger.valueOf(Integer.MIN_VALUE);
+	private static final BigInteger INT_MAX = BigInteger.valueOf(Integer.MAX_VALUE);
+
+	private final Map<String, Ast.Expr.Literal> constants = new HashMap<>();
+	private final Deque<Set<String>> locals = new ArrayDeque<>();
+
+	@Override
+	public Ast.Source visit(Ast.Source ast)
+	{
+		Set<String> assigned = new HashSet<>();
+		for (Ast.Method method : ast.getMethods())
+		{
+			locals.push(new HashSet<>(method.getParameters()));
+			collectAssigned(method.getStatements(), assigned);
+			locals.pop();
+		}
+
+		List<Ast.Field> fields = new ArrayList<>();
+		for (Ast.Field field : ast.getFields())
+		{
+			Ast.Field folded = visit(field);
+			fields.add(folded);
+
+			if (!assigned.contains(field.getName()) && folded.getValue().isPresent() && folded.getValue().get() instanceof Ast.Expr.Literal)
+			{
+				Ast.Expr.Literal literal = (Ast.Expr.Literal) folded.getValue().get();
+				if (literal.getLiteral() != null && literal.getType() == field.getVariable().getType())
+				{
+					constants.put(field.getName(), literal);
+				}
+			}
+		}
+
+		List<Ast.Method> methods = new ArrayList<>();
+		for (Ast.Method method : ast.getMethods())
+		{
+			methods.add(visit(method));
+		}
+
+		return new Ast.Source(fields, methods);
+	}
+
+	@Override
+	public Ast.Field visit(Ast.Field ast)
+	{
+		Ast.Field field = new Ast.Field(ast.getName(), ast.getTypeName(), ast.getValue().map(this::fold));
+		field.setVariable(ast.getVariable());
+		return field;
+	}
+
+	@Override
+	public Ast.Method visit(Ast.Method ast)
+	{
+		Ast.Method method = new Ast.Method(ast.getName(), ast.getParameters(), ast.getParameterTypeNames(), ast.getReturnTypeName(), block(ast.getStatements(), ast.getParameters()));
+		method.setFunction(ast.getFunction());
+		method.setFrameSize(ast.getFrameSize());
+		return method;
+	}
+
+	@Override
+	public Ast.Stmt visit(Ast.Stmt.Expression ast)
+	{
+		return new Ast.Stmt.Expression(fold(ast.getExpression()));
+	}
+
+	@Override
+	public Ast.Stmt visit(Ast.Stmt.Declaration ast)
+	{
+		Ast.Stmt.Declaration declaration = new Ast.Stmt.Declaration(ast.getName(), ast.getTypeName(), ast.getValue().map(this::fold));
+		declaration.setVariable(ast.getVariable());
+		declaration.setSlot(ast.getSlot());
+		locals.peek().add(ast.getName());
+		return declaration;
+	}
+
+	@Override
+	public Ast.Stmt visit(Ast.Stmt.Assignment ast)
+	{
+		return new Ast.Stmt.Assignment(fold(ast.getReceiver()), fold(ast.getValue()));
+	}
+
+	@Override
+	public Ast.Stmt visit(Ast.Stmt.If ast)
+	{
+		return new Ast.Stmt.If(fold(ast.getCondition()), block(ast.getThenStatements()), block(ast.getElseStatements()));
+	}
+
+	@Override
+	public Ast.Stmt visit(Ast.Stmt.For ast)
+	{
+		Ast.Stmt.For statement = new Ast.Stmt.For(ast.getName(), fold(ast.getValue()), block(ast.getStatements(), List.of(ast.getName())));
+		statement.setSlot(ast.getSlot());
+		return statement;
+	}
+
+	@Override
+	public Ast.Stmt visit(Ast.Stmt.While ast)
+	{
+		return new Ast.Stmt.While(fold(ast.getCondition()), block(ast.getStatements()));
+	}
+
+	@Override
+	public Ast.Stmt visit(Ast.Stmt.Return ast)
+	{
+		return new Ast.Stmt.Return(fold(ast.getValue()));
+	}
+
+	@Override
+	public Ast.Expr visit(Ast.Expr.Literal ast)
+	{
+		return ast;
+	}
+
+	@Override
+	public Ast.Expr visit(Ast.Expr.Group ast)
+	{
+		Ast.Expr expression = fold(ast.getExpression());
+		if (expression instanceof Ast.Expr.Literal)
+		{
+			return expression;
+		}
+
+		Ast.Expr.Group group = new Ast.Expr.Group(expression);
+		group.setType(ast.getType());
+		return group;
+	}
+
+	@Override
+	public Ast.Expr visit(Ast.Expr.Binary ast)
+	{
+		Ast.Expr left = fold(ast.getLeft());
+		Ast.Expr right = fold(ast.getRight());
+
+		if (left instanceof Ast.Expr.Literal)
+		{
+			Object value = ((Ast.Expr.Literal) left).getLiteral();
+
+			if ((ast.getOperator().equals("AND") && Boolean.FALSE.equals(value)) || (ast.getOperator().equals("OR") && Boolean.TRUE.equals(value)))
+			{
+				return literal(value, ast.getType());
+			}
+			else if (right instanceof Ast.Expr.Literal)
+			{
+				Object result = evaluate(ast.getOperator(), value, ((Ast.Expr.Literal) right).getLiteral());
+				if (result != null)
+				{
+					return literal(result, ast.getType());
+				}
+			}
+		}
+
+		Ast.Expr.Binary binary = new Ast.Expr.Binary(ast.getOperator(), left, right);
+		binary.setType(ast.getType());
+		binary.setOverflowSafe(ast.isOverflowSafe());
+		return binary;
+	}
+
+	@Override
+	public Ast.Expr visit(Ast.Expr.Access ast)
+	{
+		if (!ast.getReceiver().isPresent() && constants.containsKey(ast.getName()) && !isLocal(ast.getName()))
+		{
+			Ast.Expr.Literal constant = constants.get(ast.getName());
+			return literal(constant.getLiteral(), constant.getType());
+		}
+
+		Ast.Expr.Access access = new Ast.Expr.Access(ast.getReceiver().map(this::fold), ast.getName());
+		access.setVariable(ast.getVariable());
+		access.setAddress(ast.getDepth(), ast.getSlot());
+		return access;
+	}
+
+	@Override
+	public Ast.Expr visit(Ast.Expr.Function ast)
+	{
+		List<Ast.Expr> arguments = new ArrayList<>();
+		for (Ast.Expr argument : ast.getArguments())
+		{
+			arguments.add(fold(argument));
+		}
+
+		Ast.Expr.Function function = new Ast.Expr.Function(ast.getReceiver().map(this::fold), ast.getName(), arguments);
+		function.setFunction(ast.getFunction());
+		function.setSelector(ast.getSelector());
+		return function;
+	}
+
+	private Ast.Expr fold(Ast.Expr ast)
+	{
+		return (Ast.Expr) visit(ast);
+	}
+
+	private List<Ast.Stmt> block(List<Ast.Stmt> statements, List<String> variables)
+	{
+		List<Ast.Stmt> folded = new ArrayList<>();
+		locals.push(new HashSet<>(variables));
+		try
+		{
+			for (Ast.Stmt statement : statements)
+			{
+				folded.add((Ast.Stmt) visit(statement));
+			}
+		}
+		finally
+		{
+			locals.pop();
+		}
+		return folded;
+	}
+
+	private List<Ast.Stmt> block(List<Ast.Stmt> statements)
+	{
+		return block(statements, List.of());
+	}
+
+	private boolean isLocal(String name)
+	{
+		for (Set<String> scope : locals)
+		{
+			if (scope.contains(name))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Collects the names of fields that are assigned in the given statements,
+	 * ignoring assignments to local variables that shadow them.
+	 */
+	private void collectAssigned(List<Ast.Stmt> statements, Set<String> assigned)
+	{
+		for (Ast.Stmt statement : statements)
+		{
+			if (statement instanceof Ast.Stmt.Declaration)
+			{
+				locals.peek().add(((Ast.Stmt.Declaration) statement).getName());
+			}
+			else if (statement instanceof Ast.Stmt.Assignment && ((Ast.Stmt.Assignment) statement).getReceiver() instanceof Ast.Expr.Access)
+			{
+				Ast.Expr.Access receiver = (Ast.Expr.Access) ((Ast.Stmt.Assignment) statement).getReceiver();
+				if (!receiver.getReceiver().isPresent() && !isLocal(receiver.getName()))
+				{
+					assigned.add(receiver.getName());
+				}
+			}
+			else if (statement instanceof Ast.Stmt.If)
+			{
+				locals.push(new HashSet<>());
+				collectAssigned(((Ast.Stmt.If) statement).getThenStatements(), assigned);
+				locals.pop();
+				locals.push(new HashSet<>());
+				collectAssigned(((Ast.Stmt.If) statement).getElseStatements(), assigned);
+				locals.pop();
+			}
+			else if (statement instanceof Ast.Stmt.For)
+			{
+				locals.push(new HashSet<>(List.of(((Ast.Stmt.For) statement).getName())));
+				collectAssigned(((Ast.Stmt.For) statement).getStatements(), assigned);
+				locals.pop();
+			}
+			else if (statement instanceof Ast.Stmt.While)
+			{
+				locals.push(new HashSet<>());
+				collectAssigned(((Ast.Stmt.While) statement).getStatements(), assigned);
+				locals.pop();
+			}
+		}
+	}
+
+	/**
+	 * Evaluates a binary operator over two literal values, returning null if
+	 * the expression cannot be folded.
+	 */
+	private static Object evaluate(String operator, Object left, Object right)
+	{
+		switch (operator)
+		{
+			case "AND":
+				if (left instanceof Boolean && right instanceof Boolean)
+				{
+					return (Boolean) left && (Boolean) right;
+				}
+				return null;
+			case "OR":
+				if (left instanceof Boolean && right instanceof Boolean)
+				{
+					return (Boolean) left || (Boolean) right;
+				}
+				return null;
+			case "==":
+				return Objects.equals(left, right);
+			case "!=":
+				return !Objects.equals(left, right);
+			case "<":
+			case "<=":
+			case ">":
+			case ">=":
+				return compare(operator, left, right);
+			case "+":
+				if (left instanceof String && right instanceof String)
+				{
+					return left + (String) right;
+				}
+				else if (left instanceof BigInteger && right instanceof BigInteger)
+				{
+					return integer(((BigInteger) left).add((BigInteger) right));
+				}
+				else if (left instanceof BigDecimal && right instanceof BigDecimal)
+				{
+					return ((BigDecimal) left).add((BigDecimal) right);
+				}
+				return null;
+			case "-":
+				if (left instanceof BigInteger && right instanceof BigInteger)
+				{
+					return integer(((BigInteger) left).subtract((BigInteger) right));
+				}
+				else if (left instanceof BigDecimal && right instanceof BigDecimal)
+				{
+					return ((BigDecimal) left).subtract((BigDecimal) right);
+				}
+				return null;
+			case "*":
+				if (left instanceof BigInteger && right instanceof BigInteger)
+				{
+					return integer(((BigInteger) left).multiply((BigInteger) right));
+				}
+				else if (left instanceof BigDecimal && right instanceof BigDecimal)
+				{
+					return ((BigDecimal) left).multiply((BigDecimal) right);
+				}
+				return null;
+			case "/":
+				if (left instanceof BigInteger && right instanceof BigInteger && ((BigInteger) right).signum() != 0)
+				{
+					return integer(((BigInteger) left).divide((BigInteger) right));
+				}
+				return null;
+			default:
+				return null;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Object compare(String operator, Object left, Object right)
+	{
+		if (!(left instanceof Comparable) || right == null || left.getClass() != right.getClass())
+		{
+			return null;
+		}
+
+		int comparison = ((Comparable<Object>) left).compareTo(right);
+
+		switch (operator)
+		{
+			case "<":
+				return comparison < 0;
+			case "<=":
+				return comparison <= 0;
+			case ">":
+				return comparison > 0;
+			default:
+				return comparison >= 0;
+		}
+	}
+
+	/**
+	 * Returns the value if it fits in an {@code int}, otherwise null.
+	 */
+	private static BigInteger integer(BigInteger value)
+	{
+		return value.compareTo(INT_MIN) >= 0 && value.compareTo(INT_MAX) <= 0 ? value : null;
+	}
+
+	private static Ast.Expr.Literal literal(Object value, Environment.Type type)
+	{
+		Ast.Expr.Literal literal = new Ast.Expr.Literal(value);
+		literal.setType(type);
+		return literal;
+	}
+
+}
@@ -0,0 +1,341 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes code that can never run from an analyzed AST, returning a new AST
+ * with the same annotations. This includes statements following a
+ * {@code RETURN} (or a statement that always returns, such as a
+ * {@code WHILE TRUE} loop, as there is no way to leave a loop otherwise),
+ * branches of {@code IF} statements with a literal condition, {@code WHILE
+ * FALSE} loops, and methods that cannot be called from {@code main}.
+ * <p>
+ * The taken branch of a constant {@code IF} is inlined into the enclosing
+ * block unless it declares variables, in which case it is kept in its own
+ * {@code IF TRUE} so the scoping of those variables doesn't change. This pass
+ * is most effective after the {@link ConstantFolder}, which turns constant
+ * conditions into literals. Everything that was removed is available from
+ * {@link #getRemoved()}.
+ */
+public final class DeadCodeEliminator implements Ast.Visitor<Ast>
+{
+
+	private final List<Ast> removed = new ArrayList<>();
+
+	/**
+	 * Returns the statements and methods removed by this eliminator.
+	 */
+	public List<Ast> getRemoved()
+	{
+		return Collections.unmodifiableList(removed);
+	}
+
+	@Override
+	public Ast.Source visit(Ast.Source ast)
+	{
+		Map<String, Ast.Method> methods = new HashMap<>();
+		List<Ast.Method> optimized = new ArrayList<>();
+
+		for (Ast.Method method : ast.getMethods())
+		{
+			Ast.Method result = visit(method);
+			methods.put(key(method.getName(), method.getParameters().size()), result);
+			optimized.add(result);
+		}
+
+		if (methods.containsKey("main/0"))
+		{
+			Set<Ast.Method> reachable = Collections.newSetFromMap(new IdentityHashMap<>());
+			Deque<Ast.Method> worklist = new ArrayDeque<>();
+			worklist.push(methods.get("main/0"));
+
+			while (!worklist.isEmpty())
+			{
+				Ast.Method method = worklist.pop();
+				if (reachable.add(method))
+				{
+					List<String> calls = new ArrayList<>();
+					method.getStatements().forEach(statement -> collectCalls(statement, calls));
+					calls.stream().filter(methods::containsKey).map(methods::get).forEach(worklist::push);
+				}
+			}
+
+			List<Ast.Method> called = new ArrayList<>();
+			for (int i = 0; i < optimized.size(); i++)
+			{
+				if (reachable.contains(optimized.get(i)))
+				{
+					called.add(optimized.get(i));
+				}
+				else
+				{
+					removed.add(ast.getMethods().get(i));
+				}
+			}
+			optimized = called;
+		}
+
+		return new Ast.Source(ast.getFields(), optimized);
+	}
+
+	@Override
+	public Ast.Field visit(Ast.Field ast)
+	{
+		return ast;
+	}
+
+	@Override
+	public Ast.Method visit(Ast.Method ast)
+	{
+		Ast.Method method = new Ast.Method(ast.getName(), ast.getParameters(), ast.getParameterTypeNames(), ast.getReturnTypeName(), block(ast.getStatements()));
+		method.setFunction(ast.getFunction());
+		method.setFrameSize(ast.getFrameSize());
+		return method;
+	}
+
+	@Override
+	public Ast.Stmt visit(Ast.Stmt.Expression ast)
+	{
+		return ast;
+	}
+
+	@Override
+	public Ast.Stmt visit(Ast.Stmt.Declaration ast)
+	{
+		return ast;
+	}
+
+	@Override
+	public Ast.Stmt visit(Ast.Stmt.Assignment ast)
+	{
+		return ast;
+	}
+
+	@Override
+	public Ast.Stmt visit(Ast.Stmt.If ast)
+	{
+		return new Ast.Stmt.If(ast.getCondition(), block(ast.getThenStatements()), block(ast.getElseStatements()));
+	}
+
+	@Override
+	public Ast.Stmt visit(Ast.Stmt.For ast)
+	{
+		Ast.Stmt.For statement = new Ast.Stmt.For(ast.getName(), ast.getValue(), block(ast.getStatements()));
+		statement.setSlot(ast.getSlot());
+		return statement;
+	}
+
+	@Override
+	public Ast.Stmt visit(Ast.Stmt.While ast)
+	{
+		return new Ast.Stmt.While(ast.getCondition(), block(ast.getStatements()));
+	}
+
+	@Override
+	public Ast.Stmt visit(Ast.Stmt.Return ast)
+	{
+		return ast;
+	}
+
+	@Override
+	public Ast.Expr visit(Ast.Expr.Literal ast)
+	{
+		return ast;
+	}
+
+	@Override
+	public Ast.Expr visit(Ast.Expr.Group ast)
+	{
+		return ast;
+	}
+
+	@Override
+	public Ast.Expr visit(Ast.Expr.Binary ast)
+	{
+		return ast;
+	}
+
+	@Override
+	public Ast.Expr visit(Ast.Expr.Access ast)
+	{
+		return ast;
+	}
+
+	@Override
+	public Ast.Expr visit(Ast.Expr.Function ast)
+	{
+		return ast;
+	}
+
+	/**
+	 * Removes unreachable statements from a block, inlining or dropping
+	 * statements with constant conditions.
+	 */
+	private List<Ast.Stmt> block(List<Ast.Stmt> statements)
+	{
+		List<Ast.Stmt> result = new ArrayList<>();
+		boolean terminated = false;
+
+		for (Ast.Stmt statement : statements)
+		{
+			if (terminated)
+			{
+				removed.add(statement);
+			}
+			else if (statement instanceof Ast.Stmt.If && isConstant(((Ast.Stmt.If) statement).getCondition()))
+			{
+				Ast.Stmt.If ast = (Ast.Stmt.If) statement;
+				boolean condition = (Boolean) ((Ast.Expr.Literal) ast.getCondition()).getLiteral();
+				removed.addAll(condition ? ast.getElseStatements() : ast.getThenStatements());
+
+				List<Ast.Stmt> taken = block(condition ? ast.getThenStatements() : ast.getElseStatements());
+
+				if (taken.stream().anyMatch(stmt -> stmt instanceof Ast.Stmt.Declaration))
+				{
+					Ast.Expr.Literal literal = new Ast.Expr.Literal(true);
+					literal.setType(Environment.Type.BOOLEAN);
+					result.add(new Ast.Stmt.If(literal, taken, new ArrayList<>()));
+				}
+				else
+				{
+					result.addAll(taken);
+				}
+
+				terminated = terminates(taken);
+			}
+			else if (statement instanceof Ast.Stmt.While && isConstant(((Ast.Stmt.While) statement).getCondition()) && !isTrue(((Ast.Stmt.While) statement).getCondition()))
+			{
+				removed.add(statement);
+			}
+			else
+			{
+				Ast.Stmt optimized = (Ast.Stmt) visit(statement);
+				result.add(optimized);
+				terminated = terminates(optimized);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns true if execution can never continue past the given statements.
+	 */
+	private static boolean terminates(List<Ast.Stmt> statements)
+	{
+		return !statements.isEmpty() && terminates(statements.get(statements.size() - 1));
+	}
+
+	private static boolean terminates(Ast.Stmt statement)
+	{
+		if (statement instanceof Ast.Stmt.Return)
+		{
+			return true;
+		}
+		else if (statement instanceof Ast.Stmt.If)
+		{
+			Ast.Stmt.If ast = (Ast.Stmt.If) statement;
+			if (isTrue(ast.getCondition()))
+			{
+				return terminates(ast.getThenStatements());
+			}
+			return terminates(ast.getThenStatements()) && terminates(ast.getElseStatements());
+		}
+		else if (statement instanceof Ast.Stmt.While)
+		{
+			return isTrue(((Ast.Stmt.While) statement).getCondition());
+		}
+		return false;
+	}
+
+	private static boolean isConstant(Ast.Expr expression)
+	{
+		return expression instanceof Ast.Expr.Literal && ((Ast.Expr.Literal) expression).getLiteral() instanceof Boolean;
+	}
+
+	private static boolean isTrue(Ast.Expr expression)
+	{
+		return isConstant(expression) && (Boolean) ((Ast.Expr.Literal) expression).getLiteral();
+	}
+
+	private static String key(String name, int arity)
+	{
+		return name + "/" + arity;
+	}
+
+	/**
+	 * Collects the {@code name/arity} keys of the functions called without a
+	 * receiver in the given statement or expression.
+	 */
+	private static void collectCalls(Ast ast, List<String> calls)
+	{
+		if (ast instanceof Ast.Stmt.Expression)
+		{
+			collectCalls(((Ast.Stmt.Expression) ast).getExpression(), calls);
+		}
+		else if (ast instanceof Ast.Stmt.Declaration)
+		{
+			((Ast.Stmt.Declaration) ast).getValue().ifPresent(value -> collectCalls(value, calls));
+		}
+		else if (ast instanceof Ast.Stmt.Assignment)
+		{
+			collectCalls(((Ast.Stmt.Assignment) ast).getReceiver(), calls);
+			collectCalls(((Ast.Stmt.Assignment) ast).getValue(), calls);
+		}
+		else if (ast instanceof Ast.Stmt.If)
+		{
+			collectCalls(((Ast.Stmt.If) ast).getCondition(), calls);
+			((Ast.Stmt.If) ast).getThenStatements().forEach(statement -> collectCalls(statement, calls));
+			((Ast.Stmt.If) ast).getElseStatements().forEach(statement -> collectCalls(statement, calls));
+		}
+		else if (ast instanceof Ast.Stmt.For)
+		{
+			collectCalls(((Ast.Stmt.For) ast).getValue(), calls);
+			((Ast.Stmt.For) ast).getStatements().forEach(statement -> collectCalls(statement, calls));
+		}
+		else if (ast instanceof Ast.Stmt.While)
+		{
+			collectCalls(((Ast.Stmt.While) ast).getCondition(), calls);
+			((Ast.Stmt.While) ast).getStatements().forEach(statement -> collectCalls(statement, calls));
+		}
+		else if (ast instanceof Ast.Stmt.Return)
+		{
+			collectCalls(((Ast.Stmt.Return) ast).getValue(), calls);
+		}
+		else if (ast instanceof Ast.Expr.Group)
+		{
+			collectCalls(((Ast.Expr.Group) ast).getExpression(), calls);
+		}
+		else if (ast instanceof Ast.Expr.Binary)
+		{
+			collectCalls(((Ast.Expr.Binary) ast).getLeft(), calls);
+			collectCalls(((Ast.Expr.Binary) ast).getRight(), calls);
+		}
+		else if (ast instanceof Ast.Expr.Access)
+		{
+			((Ast.Expr.Access) ast).getReceiver().ifPresent(receiver -> collectCalls(receiver, calls));
+		}
+		else if (ast instanceof Ast.Expr.Function)
+		{
+			Ast.Expr.Function function = (Ast.Expr.Function) ast;
+			if (function.getReceiver().isPresent())
+			{
+				collectCalls(function.getReceiver().get(), calls);
+			}
+			else
+			{
+				calls.add(key(function.getName(), function.getArguments().size()));
+			}
+			function.getArguments().forEach(argument -> collectCalls(argument, calls));
+		}
+	}
+
+}
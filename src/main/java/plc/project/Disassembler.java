@@ -0,0 +1,94 @@
+package plc.project;
+
+/**
+ * Lists the instructions of {@link Bytecode} as text, one per line with its
+ * offset, and the constants operands refer to in comments, such as:
+ * <pre>
+ * fib/1 (locals 1, stack 3)
+ *     0: LOAD 0
+ *     2: CONST 0 ; 2
+ *     4: ILT
+ *     5: JUMP_FALSE 10
+ * </pre>
+ */
+public final class Disassembler
+{
+
+	private Disassembler()
+	{
+	}
+
+	/**
+	 * Lists the entry point and then every method of the program.
+	 */
+	public static String disassemble(Bytecode.Program program)
+	{
+		StringBuilder builder = new StringBuilder(disassemble(program.getEntry()));
+		for (Bytecode.Function function : program.getFunctions())
+		{
+			builder.append('\n').append(disassemble(function));
+		}
+		return builder.toString();
+	}
+
+	public static String disassemble(Bytecode.Function function)
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append(function).append(" (locals ").append(function.maxLocals).append(", stack ").append(function.maxStack).append(")\n");
+
+		int[] code = function.code;
+		int pc = 0;
+		while (pc < code.length)
+		{
+			int opcode = code[pc];
+			builder.append(String.format("%5d: %s", pc, Bytecode.getName(opcode)));
+			for (int i = 1; i <= Bytecode.getOperands(opcode); i++)
+			{
+				builder.append(' ').append(code[pc + i]);
+			}
+
+			String comment = comment(function, opcode, pc + 1 < code.length ? code[pc + 1] : -1);
+			if (comment != null)
+			{
+				builder.append(" ; ").append(comment);
+			}
+			builder.append('\n');
+			pc += 1 + Bytecode.getOperands(opcode);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Returns what the first operand refers to, or null if it is a slot or
+	 * offset (or there are no operands).
+	 */
+	private static String comment(Bytecode.Function function, int opcode, int operand)
+	{
+		switch (opcode)
+		{
+			case Bytecode.CONST:
+			{
+				Object value = ((Environment.PlcObject) function.constants[operand]).getValue();
+				return value instanceof String ? "\"" + value + "\"" : value instanceof Character ? "'" + value + "'" : String.valueOf(value);
+			}
+			case Bytecode.LOAD_GLOBAL:
+			case Bytecode.STORE_GLOBAL:
+			case Bytecode.GET_FIELD:
+			case Bytecode.SET_FIELD:
+			case Bytecode.INVOKE_GLOBAL:
+				return (String) function.constants[operand];
+			case Bytecode.CALL:
+				return function.constants[operand].toString();
+			case Bytecode.INVOKE:
+			{
+				Environment.Function callee = (Environment.Function) function.constants[operand];
+				return callee.getName() + "/" + callee.getParameterTypes().size();
+			}
+			case Bytecode.INVOKE_METHOD:
+				return Selector.getName(operand) + "/" + Selector.getArity(operand);
+			default:
+				return null;
+		}
+	}
+
+}
@@ -1,10 +1,12 @@
 package plc.project;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public final class Environment {
 
@@ -17,24 +19,147 @@ public final class Environment {
 
     });
 
-    private static final Map<String, Type> TYPES = new HashMap<>();
+    /**
+     * The built-in types, which every registry from {@link #createTypes()}
+     * starts with, and the shared registry used by the static methods below.
+     */
+    private static final TypeRegistry BUILTINS;
+    private static final TypeRegistry TYPES;
+
+    /**
+     * Returns the registry shared by the whole JVM, which is the default for
+     * runtimes not given their own {@link TypeRegistry}.
+     */
+    public static TypeRegistry getTypes() {
+        return TYPES;
+    }
+
+    /**
+     * Creates a registry with only the built-in types.
+     */
+    public static TypeRegistry createTypes() {
+        return BUILTINS.copy();
+    }
 
     public static Type getType(String name) {
-        if (!TYPES.containsKey(name)) {
-            throw new RuntimeException("Unknown type " + name + ".");
-        }
         return TYPES.get(name);
     }
 
     public static void registerType(Type type) {
-        if (TYPES.containsKey(type.getName())) {
-            throw new IllegalArgumentException("Duplicate registration of type " + type.getName() + ".");
+        TYPES.register(type);
+    }
+
+    /**
+     * Flattens the functions of a scope and its parents into a table indexed
+     * by {@link Selector}, where functions of a scope override those of its
+     * parents.
+     */
+    private static Function[] createMethodTable(Scope scope) {
+        List<Scope> scopes = new ArrayList<>();
+        for (; scope != null; scope = scope.getParent()) {
+            scopes.add(0, scope);
+        }
+
+        List<Function> functions = new ArrayList<>();
+        scopes.forEach(current -> current.forEachFunction(functions::add));
+
+        Function[] table = new Function[0];
+        for (Function function : functions) {
+            int selector = Selector.of(function.getName(), function.getParameterTypes().size());
+            if (selector >= table.length) {
+                table = Arrays.copyOf(table, Math.max(selector + 1, Selector.count()));
+            }
+            table[selector] = function;
+        }
+        return table;
+    }
+
+    /**
+     * A method table with the {@link Scope#getTypeFunctions()} it was built
+     * at, which is read before the scopes so that a concurrent definition
+     * leaves it stale rather than missing the function.
+     */
+    private static final class MethodTable {
+
+        private final int version;
+        private final Function[] table;
+
+        private MethodTable(Scope scope) {
+            version = Scope.getTypeFunctions();
+            table = createMethodTable(scope);
+        }
+
+    }
+
+    public static boolean isSubtype(Type type, Type target) {
+        return TYPES.isSubtype(type, target);
+    }
+
+    public static final PlcObject TRUE = new PlcObject(null, null, true);
+    public static final PlcObject FALSE = new PlcObject(null, null, false);
+
+    /**
+     * Canonical objects for the integers in [{@link #MIN_CACHED_INTEGER},
+     * {@link #MAX_CACHED_INTEGER}] and the ASCII characters, which covers most
+     * loop counters, indices and character literals. Like all objects created
+     * here, their (empty) scopes are only created if fields are looked up.
+     */
+    private static final int MIN_CACHED_INTEGER = -128;
+    private static final int MAX_CACHED_INTEGER = 1023;
+    private static final PlcObject[] INTEGERS = new PlcObject[MAX_CACHED_INTEGER - MIN_CACHED_INTEGER + 1];
+    private static final PlcObject[] CHARACTERS = new PlcObject[128];
+
+    static {
+        for (int i = 0; i < INTEGERS.length; i++) {
+            INTEGERS[i] = new PlcObject(i + MIN_CACHED_INTEGER, 0, PlcObject.LONG);
+        }
+        for (char c = 0; c < CHARACTERS.length; c++) {
+            CHARACTERS[c] = new PlcObject(null, null, c);
         }
-        TYPES.put(type.getName(), type);
     }
 
+    /**
+     * Creates an object for the value, returning a canonical object for
+     * booleans, small integers and ASCII characters.
+     */
     public static PlcObject create(Object value) {
-        return new PlcObject(new Scope(null), value);
+        if (value instanceof Boolean) {
+            return create((boolean) value);
+        } else if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 32) {
+            int integer = ((BigInteger) value).intValue();
+            if (integer >= MIN_CACHED_INTEGER && integer <= MAX_CACHED_INTEGER) {
+                return INTEGERS[integer - MIN_CACHED_INTEGER];
+            }
+        } else if (value instanceof Character && (Character) value < CHARACTERS.length) {
+            return CHARACTERS[(Character) value];
+        }
+        return new PlcObject(null, null, value);
+    }
+
+    /**
+     * Returns the canonical object for the boolean.
+     */
+    public static PlcObject create(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    /**
+     * Creates an Integer object holding the value unboxed, see {@link
+     * PlcObject#isLong()}.
+     */
+    public static PlcObject createInteger(long value) {
+        if (value >= MIN_CACHED_INTEGER && value <= MAX_CACHED_INTEGER) {
+            return INTEGERS[(int) value - MIN_CACHED_INTEGER];
+        }
+        return new PlcObject(value, 0, PlcObject.LONG);
+    }
+
+    /**
+     * Creates a Decimal object with the value {@code unscaled * 10^-scale},
+     * held unboxed, see {@link PlcObject#isCompactDecimal()}.
+     */
+    public static PlcObject createDecimal(long unscaled, int scale) {
+        return new PlcObject(unscaled, scale, PlcObject.DECIMAL);
     }
 
     public static final class Type {
@@ -53,6 +178,8 @@ public final class Environment {
         private final String jvmName;
         private final Scope scope;
 
+        private volatile MethodTable methods = null;
+
         public Type(String name, String jvmName, Scope scope) {
             this.name = name;
             this.jvmName = jvmName;
@@ -71,12 +198,59 @@ public final class Environment {
             return this.scope;
         }
 
+        /**
+         * Builds the method table of the type from the functions currently
+         * defined in its scope, the first time it is called.
+         */
+        synchronized void prepare() {
+            if (methods == null) {
+                scope.markTypeScope();
+                methods = new MethodTable(scope);
+            }
+        }
+
+        /**
+         * Rebuilds the method table if functions were defined in the scope of
+         * a registered type since it was built.
+         */
+        private synchronized MethodTable refresh() {
+            if (methods.version != Scope.getTypeFunctions()) {
+                methods = new MethodTable(scope);
+            }
+            return methods;
+        }
+
         public Variable getField(String name) {
             return scope.lookupVariable(name);
         }
 
+        /**
+         * Returns the method with the given name and arity (excluding the
+         * receiver), see {@link #getMethod(int)}.
+         */
         public Function getMethod(String name, int arity) {
-            return scope.lookupFunction(name, arity + 1);
+            return getMethod(Selector.of(name, arity + 1));
+        }
+
+        /**
+         * Returns the method for the given {@link Selector}. Registered types
+         * answer this from a method table, which is rebuilt after functions
+         * are defined in the scope of any registered type (so a method defined
+         * later on a subtype still overrides its supertype's); methods not in
+         * the table (or of unregistered types) are looked up in the scope.
+         */
+        public Function getMethod(int selector) {
+            MethodTable methods = this.methods;
+            if (methods != null) {
+                if (methods.version != Scope.getTypeFunctions()) {
+                    methods = refresh();
+                }
+                Function[] table = methods.table;
+                if (selector < table.length && table[selector] != null) {
+                    return table[selector];
+                }
+            }
+            return scope.lookupFunction(Selector.getName(selector), Selector.getArity(selector));
         }
 
         @Override
@@ -90,50 +264,264 @@ public final class Environment {
 
     }
 
+    /**
+     * A value with a type and a scope of fields.
+     * <p>
+     * Integers that fit in a {@code long} and decimals whose unscaled value
+     * fits in a {@code long} are also held unboxed, so that arithmetic on them
+     * doesn't need {@link BigInteger}s or {@link BigDecimal}s. Objects created
+     * from unboxed values only box them if {@link #getValue()} is called. The
+     * unboxed representation is exact, so the boxed value is always the same.
+     * Likewise, long Strings built by concatenation are held as {@link Rope}s
+     * and only flattened by {@link #getValue()}.
+     */
     public static final class PlcObject {
 
-        private final Type type;
-        private final Scope scope;
-        private final Object value;
+        static final byte BOXED = 0;
+        static final byte LONG = 1;
+        static final byte DECIMAL = 2;
+        static final byte ROPE = 3;
+
+        /**
+         * The type and scope, which are created on demand for objects created
+         * without them (see {@link #getType()}). The scope is written before
+         * the type is published.
+         */
+        private volatile Type type;
+        private Scope scope;
+        private final byte representation;
+        private final long bits;
+        private final int scale;
+
+        /**
+         * The boxed value, which is computed on demand for unboxed objects.
+         * The race when that happens is benign, as boxed numbers are immutable.
+         */
+        private Object value;
 
         public PlcObject(Scope scope, Object value) {
-            this(new Type("Unknown", "Unknown", scope), scope, value);
+            this(null, scope, value);
         }
 
         public PlcObject(Type type, Scope scope, Object value) {
             this.type = type;
             this.scope = scope;
             this.value = value;
+
+            if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+                this.representation = LONG;
+                this.bits = ((BigInteger) value).longValue();
+                this.scale = 0;
+            } else if (value instanceof BigDecimal && ((BigDecimal) value).precision() < 19) {
+                this.representation = DECIMAL;
+                this.bits = ((BigDecimal) value).unscaledValue().longValue();
+                this.scale = ((BigDecimal) value).scale();
+            } else if (value instanceof Rope) {
+                this.representation = ROPE;
+                this.bits = 0;
+                this.scale = 0;
+            } else {
+                this.representation = BOXED;
+                this.bits = 0;
+                this.scale = 0;
+            }
         }
 
+        private PlcObject(long bits, int scale, byte representation) {
+            this.representation = representation;
+            this.bits = bits;
+            this.scale = scale;
+        }
+
+        /**
+         * Returns the type of the object. Objects created without a type have
+         * the built-in type of their value, or otherwise an unregistered type
+         * whose scope is the scope of the object.
+         */
         public Type getType() {
+            Type type = this.type;
+            return type != null ? type : initialize();
+        }
+
+        private synchronized Type initialize() {
+            if (type == null) {
+                Type builtin = scope == null ? getBuiltinType() : null;
+                if (builtin != null) {
+                    type = builtin;
+                } else {
+                    if (scope == null) {
+                        scope = new Scope(null);
+                    }
+                    type = new Type("Unknown", "Unknown", scope);
+                }
+            }
             return type;
         }
 
+        private Type getBuiltinType() {
+            if (representation == LONG) {
+                return Type.INTEGER;
+            } else if (representation == DECIMAL) {
+                return Type.DECIMAL;
+            } else if (representation == ROPE) {
+                return Type.STRING;
+            }
+            Object value = this.value;
+            if (value instanceof BigInteger) {
+                return Type.INTEGER;
+            } else if (value instanceof BigDecimal) {
+                return Type.DECIMAL;
+            } else if (value instanceof String) {
+                return Type.STRING;
+            } else if (value instanceof Character) {
+                return Type.CHARACTER;
+            } else if (value instanceof Boolean) {
+                return Type.BOOLEAN;
+            } else if (value instanceof IntegerRange) {
+                return Type.INTEGER_ITERABLE;
+            }
+            return null;
+        }
+
+        /**
+         * Returns the field with the given name. Values of built-in types have
+         * no fields of their own, so their fields are read-only variables
+         * holding the result of the method with the same name (such as {@code
+         * length} for Strings).
+         */
         public Variable getField(String name) {
+            Type type = getType();
+            if (scope == null) {
+                Function getter = type.getMethod(Selector.of(name, 1));
+                return new Variable(name, getter.getJvmName(), getter.getReturnType(), getter.invoke(this));
+            }
             return scope.lookupVariable(name);
         }
 
         public void setField(String name, PlcObject value) {
+            getType();
+            if (scope == null) {
+                throw new RuntimeException("The field " + name + " of a built-in value cannot be assigned.");
+            }
             scope.lookupVariable(name).setValue(value);
         }
 
         public PlcObject callMethod(String name, List<PlcObject> arguments) {
-            Function function = type.getMethod(name, arguments.size());
-            arguments = new ArrayList<>(arguments);
-            arguments.add(0, this);
-            return function.invoke(arguments);
+            return callMethod(Selector.of(name, arguments.size() + 1), arguments);
+        }
+
+        /**
+         * Calls the method for the given {@link Selector}, whose arity includes
+         * this object as the receiver.
+         */
+        public PlcObject callMethod(int selector, List<PlcObject> arguments) {
+            Function function = getType().getMethod(selector);
+            switch (arguments.size()) {
+                case 0:
+                    return function.invoke(this);
+                case 1:
+                    return function.invoke(this, arguments.get(0));
+                case 2:
+                    return function.invoke(this, arguments.get(0), arguments.get(1));
+                case 3:
+                    return function.invoke(this, arguments.get(0), arguments.get(1), arguments.get(2));
+                default:
+                    PlcObject[] array = new PlcObject[arguments.size() + 1];
+                    array[0] = this;
+                    for (int i = 0; i < arguments.size(); i++) {
+                        array[i + 1] = arguments.get(i);
+                    }
+                    return function.invoke(array);
+            }
+        }
+
+        /**
+         * Calls the method for the given {@link Selector} with the arguments
+         * passed directly, see {@link Invoker}.
+         */
+        public PlcObject callMethod(int selector) {
+            return getType().getMethod(selector).invoke(this);
+        }
+
+        public PlcObject callMethod(int selector, PlcObject first) {
+            return getType().getMethod(selector).invoke(this, first);
+        }
+
+        public PlcObject callMethod(int selector, PlcObject first, PlcObject second) {
+            return getType().getMethod(selector).invoke(this, first, second);
+        }
+
+        public PlcObject callMethod(int selector, PlcObject first, PlcObject second, PlcObject third) {
+            return getType().getMethod(selector).invoke(this, first, second, third);
+        }
+
+        /**
+         * Calls the method with the arguments in {@code arguments} after the
+         * first element, which is replaced by this object.
+         */
+        public PlcObject callMethod(int selector, PlcObject[] arguments) {
+            arguments[0] = this;
+            return getType().getMethod(selector).invoke(arguments);
         }
 
         public Object getValue() {
+            Object value = this.value;
+            if (representation == ROPE) {
+                return value.toString();
+            } else if (value == null && representation != BOXED) {
+                value = representation == LONG ? BigInteger.valueOf(bits) : BigDecimal.valueOf(bits, scale);
+                this.value = value;
+            }
             return value;
         }
 
+        /**
+         * Returns true if this is a String, without flattening it if it's held
+         * as a {@link Rope}.
+         */
+        public boolean isString() {
+            return representation == ROPE || value instanceof String;
+        }
+
+        /**
+         * Returns the concatenation of two Strings, see {@link Rope}.
+         */
+        PlcObject concat(PlcObject right) {
+            return new PlcObject(null, null, Rope.concat(representation == ROPE ? value : getValue(), (String) right.getValue()));
+        }
+
+        /**
+         * Returns true if this is an Integer held as a {@code long}.
+         */
+        public boolean isLong() {
+            return representation == LONG;
+        }
+
+        public long getLong() {
+            return bits;
+        }
+
+        /**
+         * Returns true if this is a Decimal held as an unscaled {@code long}
+         * and a scale, like a {@link BigDecimal}.
+         */
+        public boolean isCompactDecimal() {
+            return representation == DECIMAL;
+        }
+
+        public long getUnscaled() {
+            return bits;
+        }
+
+        public int getScale() {
+            return scale;
+        }
+
         @Override
         public String toString() {
             return "Object{" +
-                    "type=" + type +
-                    ", value=" + value +
+                    "type=" + getType() +
+                    ", value=" + getValue() +
                     ", scope=" + scope +
                     '}';
         }
@@ -142,6 +530,21 @@ public final class Environment {
 
     public static final class Variable {
 
+        /**
+         * Accesses {@link #value} with acquire/release semantics, so that a
+         * value assigned by one thread is completely visible to another thread
+         * reading it (see {@link Scope} for concurrent scopes).
+         */
+        private static final VarHandle VALUE;
+
+        static {
+            try {
+                VALUE = MethodHandles.lookup().findVarHandle(Variable.class, "value", PlcObject.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
         private final String name;
         private final String jvmName;
         private final Type type;
@@ -171,11 +574,11 @@ public final class Environment {
         }
 
         public PlcObject getValue() {
-            return value;
+            return (PlcObject) VALUE.getAcquire(this);
         }
 
         public void setValue(PlcObject value) {
-            this.value = value;
+            VALUE.setRelease(this, value);
         }
 
         @Override
@@ -204,7 +607,7 @@ public final class Environment {
         private final String jvmName;
         private final List<Type> parameterTypes;
         private final Type returnType;
-        private final java.util.function.Function<List<PlcObject>, PlcObject> function;
+        private final Invoker function;
 
         public Function(String name, int arity, java.util.function.Function<List<PlcObject>, PlcObject> function) {
             this(name, name, new ArrayList<>(), Type.ANY, function);
@@ -214,6 +617,10 @@ public final class Environment {
         }
 
         public Function(String name, String jvmName, List<Type> parameterTypes, Type returnType, java.util.function.Function<List<PlcObject>, PlcObject> function) {
+            this(name, jvmName, parameterTypes, returnType, Invoker.ofList(function));
+        }
+
+        public Function(String name, String jvmName, List<Type> parameterTypes, Type returnType, Invoker function) {
             this.name = name;
             this.jvmName = jvmName;
             this.parameterTypes = parameterTypes;
@@ -237,8 +644,40 @@ public final class Environment {
             return returnType;
         }
 
+        public Invoker getInvoker() {
+            return function;
+        }
+
         public PlcObject invoke(List<PlcObject> arguments) {
-            return function.apply(arguments);
+            return function.invoke(arguments);
+        }
+
+        /**
+         * Calls the function with the arguments passed directly, see {@link
+         * Invoker}.
+         */
+        public PlcObject invoke() {
+            return function.invoke();
+        }
+
+        public PlcObject invoke(PlcObject first) {
+            return function.invoke(first);
+        }
+
+        public PlcObject invoke(PlcObject first, PlcObject second) {
+            return function.invoke(first, second);
+        }
+
+        public PlcObject invoke(PlcObject first, PlcObject second, PlcObject third) {
+            return function.invoke(first, second, third);
+        }
+
+        public PlcObject invoke(PlcObject first, PlcObject second, PlcObject third, PlcObject fourth) {
+            return function.invoke(first, second, third, fourth);
+        }
+
+        public PlcObject invoke(PlcObject[] arguments) {
+            return function.invoke(arguments);
         }
 
         @Override
@@ -265,23 +704,18 @@ public final class Environment {
     }
 
     static {
-        registerType(Type.ANY);
-        registerType(Type.NIL);
-        registerType(Type.INTEGER_ITERABLE);
-        registerType(Type.COMPARABLE);
-        registerType(Type.BOOLEAN);
-        registerType(Type.INTEGER);
-        registerType(Type.DECIMAL);
-        registerType(Type.CHARACTER);
-        registerType(Type.STRING);
-        Type.ANY.scope.defineFunction("stringify", "toString", Arrays.asList(), Type.STRING, args -> Environment.NIL);
-        Type.COMPARABLE.scope.defineFunction("compare", "compareTo", Arrays.asList(Type.ANY, Type.COMPARABLE), Type.COMPARABLE, args -> Environment.NIL);
-        Type.INTEGER.scope.defineFunction("compare", "compareTo", Arrays.asList(Type.ANY, Type.INTEGER), Type.INTEGER, args -> Environment.NIL);
-        Type.DECIMAL.scope.defineFunction("compare", "compareTo", Arrays.asList(Type.ANY, Type.DECIMAL), Type.DECIMAL, args -> Environment.NIL);
-        Type.CHARACTER.scope.defineFunction("compare", "compareTo", Arrays.asList(Type.ANY, Type.CHARACTER), Type.CHARACTER, args -> Environment.NIL);
-        Type.STRING.scope.defineVariable("length", "length()", Type.INTEGER, Environment.NIL);
-        Type.STRING.scope.defineFunction("slice", "substring", Arrays.asList(Type.ANY, Type.INTEGER, Type.INTEGER), Type.STRING, args -> Environment.NIL);
-        Type.STRING.scope.defineFunction("compare", "compareTo", Arrays.asList(Type.ANY, Type.STRING), Type.STRING, args -> Environment.NIL);
+        StandardLibrary.defineMethods();
+        BUILTINS = new TypeRegistry();
+        BUILTINS.register(Type.ANY);
+        BUILTINS.register(Type.NIL);
+        BUILTINS.register(Type.INTEGER_ITERABLE);
+        BUILTINS.register(Type.COMPARABLE);
+        BUILTINS.register(Type.BOOLEAN);
+        BUILTINS.register(Type.INTEGER);
+        BUILTINS.register(Type.DECIMAL);
+        BUILTINS.register(Type.CHARACTER);
+        BUILTINS.register(Type.STRING);
+        TYPES = BUILTINS.copy();
     }
 
 }
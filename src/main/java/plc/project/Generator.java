@@ -3,6 +3,7 @@ package plc.project;
 import java.io.PrintWriter;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.List;
 
 public final class Generator implements Ast.Visitor<Void>
 {
@@ -205,26 +206,125 @@ public final class Generator implements Ast.Visitor<Void>
 	@Override
 	public Void visit(Ast.Stmt.For ast)
 	{
-		print("for (", "int ", ast.getName(), " : ", ast.getValue(), ") {");
+		boolean range = isRange(ast.getValue());
+		boolean block = false;
+		if (range)
+		{
+			block = range(ast.getName(), ((Ast.Expr.Function) ast.getValue()).getArguments());
+		}
+		else
+		{
+			print("for (", "int ", ast.getName(), " : ", ast.getValue(), ") {");
+		}
 		indent++;
 
-		if (!ast.getStatements().isEmpty())
+		if (range)
 		{
-			for (Ast.Stmt statement : ast.getStatements())
-			{
-				newline(indent);
-				print(statement);
-			}
+			newline(indent);
+			print("int ", ast.getName(), " = ", ast.getName(), "$;");
+		}
 
-			indent--;
+		for (Ast.Stmt statement : ast.getStatements())
+		{
 			newline(indent);
+			print(statement);
 		}
 
+		indent--;
+		if (range || !ast.getStatements().isEmpty())
+		{
+			newline(indent);
+		}
 		print("}");
 
+		if (block)
+		{
+			indent--;
+			newline(indent);
+			print("}");
+		}
+
 		return null;
 	}
 
+	/**
+	 * Returns whether the expression calls the {@code range} function, which
+	 * FOR loops translate to a counted loop instead of iterating.
+	 */
+	private static boolean isRange(Ast.Expr expr)
+	{
+		if (!(expr instanceof Ast.Expr.Function))
+		{
+			return false;
+		}
+		Ast.Expr.Function function = (Ast.Expr.Function) expr;
+		return !function.getReceiver().isPresent() && function.getName().equals("range") &&
+				function.getFunction().getJvmName().equals("range");
+	}
+
+	/**
+	 * Prints the header of a counted loop over {@code range(start, end[,
+	 * step])}, which is driven by a hidden counter so that assigning the loop
+	 * variable in the body doesn't change the iteration, like in the {@link
+	 * Interpreter}. The end and step are evaluated once like the arguments of
+	 * the call, and are only hoisted into locals when they aren't literals. A
+	 * step that isn't a literal is checked before the loop, in a block
+	 * enclosing it, and returns true as the block must then be closed.
+	 */
+	private boolean range(String name, List<Ast.Expr> arguments)
+	{
+		String counter = name + "$";
+		String end = name + "$end";
+		String step = name + "$step";
+		Ast.Expr endExpr = arguments.get(1);
+		Ast.Expr stepExpr = arguments.size() == 3 ? arguments.get(2) : null;
+		Object bound = endExpr instanceof Ast.Expr.Literal ? endExpr : end;
+
+		if (stepExpr != null && !(stepExpr instanceof Ast.Expr.Literal))
+		{
+			print("{");
+			indent++;
+			newline(indent);
+			print("int ", counter, " = ", arguments.get(0));
+			if (!(endExpr instanceof Ast.Expr.Literal))
+			{
+				print(", ", end, " = ", endExpr);
+			}
+			print(", ", step, " = ", stepExpr, ";");
+			newline(indent);
+			print("if (", step, " == 0) {");
+			newline(indent + 1);
+			print("throw new RuntimeException(\"The step of a range cannot be 0.\");");
+			newline(indent);
+			print("}");
+			newline(indent);
+			print("for (; ", step, " > 0 ? ", counter, " < ", bound, " : ", counter, " > ", bound, "; ", counter, " += ", step, ") {");
+			return true;
+		}
+
+		print("for (int ", counter, " = ", arguments.get(0));
+		if (!(endExpr instanceof Ast.Expr.Literal))
+		{
+			print(", ", end, " = ", endExpr);
+		}
+		print("; ");
+
+		if (stepExpr == null)
+		{
+			print(counter, " < ", bound, "; ", counter, "++) {");
+		}
+		else
+		{
+			int sign = new BigInteger(((Ast.Expr.Literal) stepExpr).getLiteral().toString()).signum();
+			if (sign == 0)
+			{
+				throw new RuntimeException("The step of a range cannot be 0.");
+			}
+			print(counter, sign > 0 ? " < " : " > ", bound, "; ", counter, " += ", stepExpr, ") {");
+		}
+		return false;
+	}
+
 	@Override
 	public Void visit(Ast.Stmt.While ast)
 	{
@@ -323,6 +423,11 @@ public final class Generator implements Ast.Visitor<Void>
 	@Override
 	public Void visit(Ast.Expr.Function ast)
 	{
+		if (isRange(ast))
+		{
+			throw new RuntimeException("A range can only be generated as the value of a FOR loop.");
+		}
+
 		if (ast.getReceiver().isPresent())
 		{
 			print(ast.getReceiver().get(), ".");
@@ -0,0 +1,120 @@
+package plc.project;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The Integers from {@code start} (inclusive) to {@code end} (exclusive) in
+ * increments of {@code step}, which may be negative, as returned by the
+ * {@code range} function. Ranges are lazy: they only hold their bounds, and
+ * the {@link Interpreter} iterates them with a primitive counter instead of
+ * through {@link #iterator()}, creating each element with {@link
+ * Environment#createInteger(long)}.
+ */
+public final class IntegerRange implements Iterable<Environment.PlcObject>
+{
+
+	private final long start;
+	private final long end;
+	private final long step;
+
+	private IntegerRange(long start, long end, long step)
+	{
+		if (step == 0)
+		{
+			throw new RuntimeException("The step of a range cannot be 0.");
+		}
+		this.start = start;
+		this.end = end;
+		this.step = step;
+	}
+
+	public static IntegerRange of(long start, long end)
+	{
+		return new IntegerRange(start, end, 1);
+	}
+
+	public static IntegerRange of(long start, long end, long step)
+	{
+		return new IntegerRange(start, end, step);
+	}
+
+	public long getStart()
+	{
+		return start;
+	}
+
+	public long getEnd()
+	{
+		return end;
+	}
+
+	public long getStep()
+	{
+		return step;
+	}
+
+	/**
+	 * Returns the number of elements as an unsigned {@code long}, as a range
+	 * of all longs has more elements than fit in a signed one.
+	 */
+	public long size()
+	{
+		if (step > 0)
+		{
+			return start < end ? Long.divideUnsigned(end - start - 1, step) + 1 : 0;
+		}
+		return start > end ? Long.divideUnsigned(start - end - 1, -step) + 1 : 0;
+	}
+
+	@Override
+	public Iterator<Environment.PlcObject> iterator()
+	{
+		return new Iterator<Environment.PlcObject>()
+		{
+			private long remaining = size();
+			private long next = start;
+
+			@Override
+			public boolean hasNext()
+			{
+				return remaining != 0;
+			}
+
+			@Override
+			public Environment.PlcObject next()
+			{
+				if (remaining == 0)
+				{
+					throw new NoSuchElementException();
+				}
+				Environment.PlcObject value = Environment.createInteger(next);
+				next += step;
+				remaining--;
+				return value;
+			}
+		};
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		return obj instanceof IntegerRange &&
+				start == ((IntegerRange) obj).start &&
+				end == ((IntegerRange) obj).end &&
+				step == ((IntegerRange) obj).step;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Long.hashCode(start) * 31 * 31 + Long.hashCode(end) * 31 + Long.hashCode(step);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "range(" + start + ", " + end + ", " + step + ")";
+	}
+
+}
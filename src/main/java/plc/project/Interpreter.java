@@ -3,22 +3,64 @@ package plc.project;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 public class Interpreter implements Ast.Visitor<Environment.PlcObject>
 {
 
 	private Scope scope = new Scope(null);
+	private final Scope globals;
+
+	/**
+	 * The methods defined by this interpreter by their functions, and the
+	 * snapshot of the globals once {@link #prepare(Ast.Source)} was called,
+	 * both of which are shared with the interpreters forked from this one.
+	 */
+	private final Map<Environment.Function, Ast.Method> methods;
+	private PersistentScope prepared = null;
+
+	/**
+	 * The frames of variables resolved by the {@link Analyzer}, where {@code
+	 * frame} is the frame of the method being called (or the fields, outside
+	 * of methods). Variables that weren't resolved are looked up in {@code
+	 * scope} by name.
+	 */
+	private final SlotScope fields = new SlotScope(null, 0);
+	private int fieldCount = 0;
+	private SlotScope frame = fields;
+
+	/**
+	 * The method being called, or null outside of methods, which is passed to
+	 * {@link #backEdge(Ast.Method)}.
+	 */
+	private Ast.Method method = null;
 
 	public Interpreter(Scope parent)
 	{
-		scope = new Scope(parent);
-		scope.defineFunction("print", 1, args -> {
-			System.out.println(args.get(0).getValue());
+		scope = new Scope(StandardLibrary.createScope(parent));
+		scope.defineFunction("print", 1, Invoker.of(value -> {
+			System.out.println(value.getValue());
 			return Environment.NIL;
-		});
+		}));
+		globals = scope;
+		methods = new IdentityHashMap<>();
+	}
+
+	/**
+	 * Creates an interpreter with a fork of the globals prepared by {@code
+	 * interpreter}, rebinding its methods to this interpreter as they are
+	 * first called.
+	 */
+	private Interpreter(Interpreter interpreter)
+	{
+		prepared = interpreter.prepared;
+		methods = interpreter.methods;
+		scope = prepared.fork(this::bind);
+		globals = scope;
 	}
 
 	public Scope getScope()
@@ -33,21 +75,56 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject>
 		ast.getFields().forEach(this::visit);
 		ast.getMethods().forEach(this::visit);
 
-		return scope.lookupFunction("main", 0).invoke(new ArrayList<>());
+		return execute();
 	}
 
-	@Override
-	public Environment.PlcObject visit(Ast.Field ast)
+	/**
+	 * Evaluates the fields and defines the methods of the source without
+	 * calling {@code main}, returning a snapshot of the globals that {@link
+	 * #fork()} starts from. The interpreter may not be used after this, other
+	 * than to fork it (which can be done concurrently).
+	 */
+	public PersistentScope prepare(Ast.Source ast)
 	{
-		//throw new UnsupportedOperationException(); //TODO
-		if (ast.getValue().isPresent())
+		if (prepared != null)
 		{
-			scope.defineVariable(ast.getName(), visit(ast.getValue().get()));
+			throw new IllegalStateException("The interpreter has already been prepared.");
 		}
-		else
+
+		ast.getFields().forEach(this::visit);
+		ast.getMethods().forEach(this::visit);
+		prepared = PersistentScope.of(globals);
+		return prepared;
+	}
+
+	/**
+	 * Returns a new interpreter whose globals are a fork of the prepared
+	 * globals, in constant time. Assignments to fields in one fork are not
+	 * seen by others.
+	 */
+	public Interpreter fork()
+	{
+		if (prepared == null)
 		{
-			scope.defineVariable(ast.getName(), Environment.NIL);
+			throw new IllegalStateException("The interpreter has not been prepared.");
 		}
+		return new Interpreter(this);
+	}
+
+	/**
+	 * Calls the {@code main} method defined in the globals.
+	 */
+	public Environment.PlcObject execute()
+	{
+		return globals.lookupFunction("main", 0).invoke();
+	}
+
+	@Override
+	public Environment.PlcObject visit(Ast.Field ast)
+	{
+		//throw new UnsupportedOperationException(); //TODO
+		Environment.PlcObject value = ast.getValue().isPresent() ? visit(ast.getValue().get()) : Environment.NIL;
+		fields.define(fieldCount++, scope.defineVariable(ast.getName(), ast.getName(), Environment.Type.ANY, value));
 
 		return Environment.NIL;
 	}
@@ -56,15 +133,74 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject>
 	public Environment.PlcObject visit(Ast.Method ast)
 	{
 		//throw new UnsupportedOperationException(); //TODO
-		Scope parent = new Scope(scope);
-		scope.defineFunction(ast.getName(), ast.getParameters().size(), arguments -> {
+		Environment.Function function = scope.defineFunction(ast.getName(), ast.getName(), Collections.nCopies(ast.getParameters().size(), Environment.Type.ANY), Environment.Type.ANY, implement(ast, closure(ast, scope)));
+
+		if (prepared == null)
+		{
+			methods.put(function, ast);
+		}
+
+		return Environment.NIL;
+	}
+
+	/**
+	 * Returns the implementation of a method of the source, given the one
+	 * interpreting it, which subclasses may replace (see {@link
+	 * TieredInterpreter}).
+	 */
+	Invoker implement(Ast.Method ast, Invoker interpreted)
+	{
+		return interpreted;
+	}
+
+	/**
+	 * Called on every iteration of a loop in the given method (or null
+	 * outside of methods), which subclasses may count as back-edges.
+	 */
+	void backEdge(Ast.Method method)
+	{
+	}
+
+	/**
+	 * Called after every iteration of a WHILE loop, returning a compiled
+	 * version of the loop to continue in (on-stack replacement), or null to
+	 * keep interpreting it.
+	 */
+	JvmCompiler.Loop replace(Ast.Stmt.While ast)
+	{
+		return null;
+	}
+
+	/**
+	 * Returns the implementation of a method defined in the given scope.
+	 */
+	private Invoker closure(Ast.Method ast, Scope definition)
+	{
+		Scope parent = new Scope(definition);
+		return Invoker.variadic(arguments -> {
+			Scope callerScope = scope;
+			SlotScope caller = frame;
+			Ast.Method callerMethod = method;
 			try
 			{
 				scope = new Scope(parent);
+				method = ast;
 
-				for (int i = 0; i < arguments.size(); i++)
+				if (ast.getFrameSize() >= 0)
 				{
-					scope.defineVariable(ast.getParameters().get(i), arguments.get(i));
+					frame = new SlotScope(fields, ast.getFrameSize());
+
+					for (int i = 0; i < arguments.length; i++)
+					{
+						frame.define(i, new Environment.Variable(ast.getParameters().get(i), ast.getParameters().get(i), Environment.Type.ANY, arguments[i]));
+					}
+				}
+				else
+				{
+					for (int i = 0; i < arguments.length; i++)
+					{
+						scope.defineVariable(ast.getParameters().get(i), arguments[i]);
+					}
 				}
 
 				ast.getStatements().forEach(this::visit);
@@ -75,12 +211,26 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject>
 			}
 			finally
 			{
-				scope = parent.getParent();
+				scope = callerScope;
+				frame = caller;
+				method = callerMethod;
 			}
 			return Environment.NIL;
 		});
+	}
 
-		return Environment.NIL;
+	/**
+	 * Rebinds a function of the prepared globals to this interpreter if it is
+	 * a method, see {@link PersistentScope#fork(java.util.function.UnaryOperator)}.
+	 */
+	private Environment.Function bind(Environment.Function function)
+	{
+		Ast.Method method = methods.get(function);
+		if (method == null)
+		{
+			return function;
+		}
+		return new Environment.Function(function.getName(), function.getJvmName(), function.getParameterTypes(), function.getReturnType(), closure(method, globals));
 	}
 
 	@Override
@@ -96,13 +246,15 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject>
 	public Environment.PlcObject visit(Ast.Stmt.Declaration ast)
 	{
 		//throw new UnsupportedOperationException(); //TODO (in lecture)
-		if (ast.getValue().isPresent())
+		Environment.PlcObject value = ast.getValue().isPresent() ? visit(ast.getValue().get()) : Environment.NIL;
+
+		if (ast.getSlot() >= 0)
 		{
-			scope.defineVariable(ast.getName(), visit(ast.getValue().get()));
+			frame.define(ast.getSlot(), new Environment.Variable(ast.getName(), ast.getName(), Environment.Type.ANY, value));
 		}
 		else
 		{
-			scope.defineVariable(ast.getName(), Environment.NIL);
+			scope.defineVariable(ast.getName(), value);
 		}
 
 		return Environment.NIL;
@@ -120,7 +272,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject>
 			}
 			else
 			{
-				scope.lookupVariable(((Ast.Expr.Access) ast.getReceiver()).getName()).setValue(visit(ast.getValue()));
+				lookupVariable((Ast.Expr.Access) ast.getReceiver()).setValue(visit(ast.getValue()));
 			}
 		}
 
@@ -163,41 +315,120 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject>
 	public Environment.PlcObject visit(Ast.Stmt.For ast)
 	{
 		//throw new UnsupportedOperationException(); //TODO
-		Iterable<Environment.PlcObject> iter = requireType(Iterable.class, visit(ast.getValue()));
+		Environment.PlcObject value = visit(ast.getValue());
 
-		for (Environment.PlcObject variable : iter)
+		Environment.Variable slot = null;
+		if (ast.getSlot() >= 0)
 		{
-			try
-			{
-				scope = new Scope(scope);
-				scope.defineVariable(ast.getName(), variable);
+			slot = new Environment.Variable(ast.getName(), ast.getName(), Environment.Type.ANY, Environment.NIL);
+			frame.define(ast.getSlot(), slot);
+		}
 
-				ast.getStatements().forEach(this::visit);
+		Scope body = slot == null || declaresVariables(ast.getStatements()) ? new Scope(scope) : null;
+
+		if (value.getValue() instanceof IntegerRange)
+		{
+			// counts with a primitive, without an iterator
+			IntegerRange range = (IntegerRange) value.getValue();
+			long next = range.getStart();
+			for (long remaining = range.size(); remaining != 0; remaining--, next += range.getStep())
+			{
+				backEdge(method);
+				iteration(ast, slot, body, Environment.createInteger(next));
 			}
-			finally
+		}
+		else
+		{
+			Iterable<?> iter = requireType(Iterable.class, value);
+			for (Object variable : iter)
 			{
-				scope = scope.getParent();
+				backEdge(method);
+				iteration(ast, slot, body, (Environment.PlcObject) variable);
 			}
 		}
 
 		return Environment.NIL;
 	}
 
+	/**
+	 * Runs one iteration of a FOR loop, with the loop variable in the slot or
+	 * otherwise defined in the body scope.
+	 */
+	private void iteration(Ast.Stmt.For ast, Environment.Variable slot, Scope body, Environment.PlcObject variable)
+	{
+		if (slot != null)
+		{
+			slot.setValue(variable);
+		}
+
+		if (body == null)
+		{
+			statements(ast.getStatements());
+			return;
+		}
+
+		try
+		{
+			scope = body;
+
+			if (slot == null)
+			{
+				scope.defineVariable(ast.getName(), variable);
+			}
+
+			statements(ast.getStatements());
+		}
+		finally
+		{
+			scope = body.getParent();
+			body.clear();
+		}
+	}
+
 	@Override
 	public Environment.PlcObject visit(Ast.Stmt.While ast)
 	{
 		//throw new UnsupportedOperationException(); //TODO (in lecture)
+		Scope body = declaresVariables(ast.getStatements()) ? new Scope(scope) : null;
+
 		while (requireType(Boolean.class, visit(ast.getCondition())))
 		{
-			try
+			backEdge(method);
+
+			if (body == null)
 			{
-				scope = new Scope(scope);
+				statements(ast.getStatements());
+			}
+			else
+			{
+				try
+				{
+					scope = body;
 
-				ast.getStatements().forEach(this::visit);
+					statements(ast.getStatements());
+				}
+				finally
+				{
+					scope = body.getParent();
+					body.clear();
+				}
 			}
-			finally
+
+			JvmCompiler.Loop loop = replace(ast);
+			if (loop != null)
 			{
-				scope = scope.getParent();
+				// continues from the next condition in compiled code, with the locals it accesses
+				Environment.Variable[] locals = new Environment.Variable[loop.getLocals().size()];
+				for (int i = 0; i < locals.length; i++)
+				{
+					locals[i] = lookupVariable(loop.getLocals().get(i));
+				}
+				Environment.PlcObject result = loop.run(locals);
+				if (result != null)
+				{
+					throw new Return(result);
+				}
+				break;
 			}
 		}
 
@@ -237,19 +468,13 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject>
 	{
 		//throw new UnsupportedOperationException(); //TODO
 		Environment.PlcObject leftObject = visit(ast.getLeft());
-		Environment.PlcObject rightObject = null;
 
 		/*
-		 * rightObject should only be initialized when it's not the 'AND' or 'OR' operator, in order to take into account
+		 * The right side should only be evaluated when it's not the 'AND' or 'OR' operator, in order to take into account
 		 * for short-circuiting. Otherwise, the tests might fail, as the right side should only be analyzed so long
 		 * as the left side is a viable option.
 		 */
 
-		if (!ast.getOperator().equals("AND") && !ast.getOperator().equals("OR"))
-		{
-			rightObject = visit(ast.getRight());
-		}
-
 		switch (ast.getOperator())
 		{
 			case "AND":
@@ -270,8 +495,31 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject>
 				{
 					return Environment.create(false);
 				}
+			default:
+				return binary(ast, leftObject, visit(ast.getRight()));
+		}
+	}
+
+	/**
+	 * Evaluates a binary expression other than {@code AND} and {@code OR} on
+	 * its evaluated operands, which the {@link ClosureCompiler} shares.
+	 */
+	static Environment.PlcObject binary(Ast.Expr.Binary ast, Environment.PlcObject leftObject, Environment.PlcObject rightObject)
+	{
+		Environment.PlcObject result = unboxed(ast, leftObject, rightObject);
+		if (result != null)
+		{
+			return result;
+		}
+
+		switch (ast.getOperator())
+		{
 			case "+":
-				if (leftObject.getValue() instanceof String || rightObject.getValue() instanceof String)
+				if (leftObject.isString() && rightObject.isString())
+				{
+					return leftObject.concat(rightObject);
+				}
+				else if (leftObject.isString() || rightObject.isString())
 				{
 					return Environment.create(requireType(String.class, leftObject) + requireType(String.class, rightObject));
 				}
@@ -362,6 +610,99 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject>
 		return Environment.NIL;
 	}
 
+	/**
+	 * Evaluates a binary expression on unboxed Integers or Decimals (see
+	 * {@link Environment.PlcObject#isLong()}) without boxing them, returning
+	 * null if the operands aren't unboxed or the result doesn't fit, in which
+	 * case the expression is evaluated on {@link BigInteger}s or {@link
+	 * BigDecimal}s instead. The overflow checks are kept even for arithmetic
+	 * marked by the {@link RangeAnalyzer}, as they only cost a branch.
+	 */
+	private static Environment.PlcObject unboxed(Ast.Expr.Binary ast, Environment.PlcObject leftObject, Environment.PlcObject rightObject)
+	{
+		if (leftObject.isLong() && rightObject.isLong())
+		{
+			long left = leftObject.getLong();
+			long right = rightObject.getLong();
+			long result;
+
+			switch (ast.getOperator())
+			{
+				case "+":
+					result = left + right;
+					return ((left ^ result) & (right ^ result)) >= 0 ? Environment.createInteger(result) : null;
+				case "-":
+					result = left - right;
+					return ((left ^ right) & (left ^ result)) >= 0 ? Environment.createInteger(result) : null;
+				case "*":
+					result = left * right;
+					return fitsLong(Math.multiplyHigh(left, right), result) ? Environment.createInteger(result) : null;
+				case "/":
+					return right != 0 && (left != Long.MIN_VALUE || right != -1) ? Environment.createInteger(left / right) : null;
+				case "==":
+					return Environment.create(left == right);
+				case "!=":
+					return Environment.create(left != right);
+				case "<":
+					return Environment.create(left < right);
+				case "<=":
+					return Environment.create(left <= right);
+				case ">":
+					return Environment.create(left > right);
+				case ">=":
+					return Environment.create(left >= right);
+				default:
+					return null;
+			}
+		}
+		else if (leftObject.isCompactDecimal() && rightObject.isCompactDecimal())
+		{
+			long left = leftObject.getUnscaled();
+			long right = rightObject.getUnscaled();
+			int scale = leftObject.getScale();
+			boolean sameScale = scale == rightObject.getScale();
+			long result;
+
+			switch (ast.getOperator())
+			{
+				case "+":
+					result = left + right;
+					return sameScale && ((left ^ result) & (right ^ result)) >= 0 ? Environment.createDecimal(result, scale) : null;
+				case "-":
+					result = left - right;
+					return sameScale && ((left ^ right) & (left ^ result)) >= 0 ? Environment.createDecimal(result, scale) : null;
+				case "*":
+					result = left * right;
+					long productScale = (long) scale + rightObject.getScale();
+					return fitsLong(Math.multiplyHigh(left, right), result) && productScale == (int) productScale ? Environment.createDecimal(result, (int) productScale) : null;
+				case "==":
+					return Environment.create(sameScale && left == right);
+				case "!=":
+					return Environment.create(!sameScale || left != right);
+				case "<":
+					return sameScale ? Environment.create(left < right) : null;
+				case "<=":
+					return sameScale ? Environment.create(left <= right) : null;
+				case ">":
+					return sameScale ? Environment.create(left > right) : null;
+				case ">=":
+					return sameScale ? Environment.create(left >= right) : null;
+				default:
+					return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns true if the 128-bit product with the given high and low words
+	 * fits in a {@code long}.
+	 */
+	private static boolean fitsLong(long high, long low)
+	{
+		return high == (low >> 63);
+	}
+
 	@Override
 	public Environment.PlcObject visit(Ast.Expr.Access ast)
 	{
@@ -372,7 +713,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject>
 		}
 		else
 		{
-			return scope.lookupVariable(ast.getName()).getValue();
+			return lookupVariable(ast).getValue();
 		}
 	}
 
@@ -380,28 +721,125 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject>
 	public Environment.PlcObject visit(Ast.Expr.Function ast)
 	{
 		//throw new UnsupportedOperationException(); //TODO
-		List<Environment.PlcObject> fnArguments = new ArrayList<>();
+		List<Ast.Expr> arguments = ast.getArguments();
 
-		for (Ast.Expr arg : ast.getArguments())
+		if (ast.getReceiver().isPresent())
+		{
+			// the receiver is evaluated after the arguments
+			Ast.Expr receiver = ast.getReceiver().get();
+			int selector = ast.getSelector() >= 0 ? ast.getSelector() : Selector.of(ast.getName(), arguments.size() + 1);
+			Environment.PlcObject first;
+			Environment.PlcObject second;
+			Environment.PlcObject third;
+
+			switch (arguments.size())
+			{
+				case 0:
+					return visit(receiver).callMethod(selector);
+				case 1:
+					first = visit(arguments.get(0));
+					return visit(receiver).callMethod(selector, first);
+				case 2:
+					first = visit(arguments.get(0));
+					second = visit(arguments.get(1));
+					return visit(receiver).callMethod(selector, first, second);
+				case 3:
+					first = visit(arguments.get(0));
+					second = visit(arguments.get(1));
+					third = visit(arguments.get(2));
+					return visit(receiver).callMethod(selector, first, second, third);
+				default:
+					Environment.PlcObject[] values = arguments(arguments, 1);
+					return visit(receiver).callMethod(selector, values);
+			}
+		}
+		else
 		{
-			fnArguments.add(visit(arg));
+			Environment.Function function = scope.lookupFunction(ast.getName(), arguments.size());
+
+			switch (arguments.size())
+			{
+				case 0:
+					return function.invoke();
+				case 1:
+					return function.invoke(visit(arguments.get(0)));
+				case 2:
+					return function.invoke(visit(arguments.get(0)), visit(arguments.get(1)));
+				case 3:
+					return function.invoke(visit(arguments.get(0)), visit(arguments.get(1)), visit(arguments.get(2)));
+				case 4:
+					return function.invoke(visit(arguments.get(0)), visit(arguments.get(1)), visit(arguments.get(2)), visit(arguments.get(3)));
+				default:
+					return function.invoke(arguments(arguments, 0));
+			}
 		}
+	}
 
-		if (ast.getReceiver().isPresent())
+	/**
+	 * Evaluates the arguments into an array, after {@code offset} elements
+	 * left for the receiver.
+	 */
+	private Environment.PlcObject[] arguments(List<Ast.Expr> arguments, int offset)
+	{
+		Environment.PlcObject[] values = new Environment.PlcObject[arguments.size() + offset];
+		for (int i = 0; i < arguments.size(); i++)
 		{
-			return visit(ast.getReceiver().get()).callMethod(ast.getName(), fnArguments);
+			values[i + offset] = visit(arguments.get(i));
 		}
-		else
+		return values;
+	}
+
+	private void statements(List<Ast.Stmt> statements)
+	{
+		for (int i = 0; i < statements.size(); i++)
 		{
-			return scope.lookupFunction(ast.getName(), ast.getArguments().size()).invoke(fnArguments);
+			visit(statements.get(i));
 		}
+	}
 
+	/**
+	 * Returns true if the statements declare a variable by name, which means
+	 * they need a scope of their own. Loops without one run their body in the
+	 * enclosing scope, and loops with one reuse a single scope that is cleared
+	 * after every iteration (as nothing can refer to the variables of a
+	 * previous iteration).
+	 */
+	private static boolean declaresVariables(List<Ast.Stmt> statements)
+	{
+		for (Ast.Stmt statement : statements)
+		{
+			if (statement instanceof Ast.Stmt.Declaration && ((Ast.Stmt.Declaration) statement).getSlot() < 0)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the variable accessed without a receiver, using the slot
+	 * resolved by the {@link Analyzer} if there is one.
+	 */
+	Environment.Variable lookupVariable(Ast.Expr.Access ast)
+	{
+		if (ast.getDepth() >= 0)
+		{
+			Environment.Variable variable = frame.lookup(ast.getDepth(), ast.getSlot());
+			if (variable == null)
+			{
+				// fields of a fork are only copied from the prepared globals once accessed
+				variable = globals.lookupVariable(ast.getName());
+				fields.define(ast.getSlot(), variable);
+			}
+			return variable;
+		}
+		return scope.lookupVariable(ast.getName());
 	}
 
 	/**
 	 * Helper function to ensure an object is of the appropriate type.
 	 */
-	private static <T> T requireType(Class<T> type, Environment.PlcObject object)
+	static <T> T requireType(Class<T> type, Environment.PlcObject object)
 	{
 		if (type.isInstance(object.getValue()))
 		{
@@ -413,6 +851,23 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject>
 		}
 	}
 
+	/**
+	 * Returns the value of a Boolean, which is usually one of the canonical
+	 * values, as used by the compiled engines for conditions.
+	 */
+	static boolean isTrue(Environment.PlcObject value)
+	{
+		if (value == Environment.TRUE)
+		{
+			return true;
+		}
+		else if (value == Environment.FALSE)
+		{
+			return false;
+		}
+		return requireType(Boolean.class, value);
+	}
+
 	/**
 	 * Exception class for returning values.
 	 */
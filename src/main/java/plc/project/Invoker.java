@@ -0,0 +1,278 @@
+package plc.project;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The implementation of an {@link Environment.Function}, which is called with
+ * the receiver (for methods) and arguments passed directly rather than in a
+ * list. Calls with up to four arguments go through the method of that arity,
+ * and other calls through {@link #invoke(Environment.PlcObject[])}.
+ * <p>
+ * Implementations override the methods for the arity they take, and every
+ * other method fails. {@link #ofList(java.util.function.Function)} adapts
+ * implementations taking a list, which see the arguments as a fixed-size view
+ * of an array.
+ */
+public abstract class Invoker
+{
+
+	private static final Environment.PlcObject[] NO_ARGUMENTS = new Environment.PlcObject[0];
+
+	public Environment.PlcObject invoke()
+	{
+		return invoke(NO_ARGUMENTS);
+	}
+
+	public Environment.PlcObject invoke(Environment.PlcObject first)
+	{
+		return invoke(new Environment.PlcObject[]{first});
+	}
+
+	public Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second)
+	{
+		return invoke(new Environment.PlcObject[]{first, second});
+	}
+
+	public Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third)
+	{
+		return invoke(new Environment.PlcObject[]{first, second, third});
+	}
+
+	public Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third, Environment.PlcObject fourth)
+	{
+		return invoke(new Environment.PlcObject[]{first, second, third, fourth});
+	}
+
+	/**
+	 * Calls the implementation with any number of arguments. The array is
+	 * owned by the implementation once it has been passed.
+	 */
+	public abstract Environment.PlcObject invoke(Environment.PlcObject[] arguments);
+
+	/**
+	 * Calls the implementation with the arguments in the list, using the
+	 * method for its arity.
+	 */
+	public Environment.PlcObject invoke(List<Environment.PlcObject> arguments)
+	{
+		switch (arguments.size())
+		{
+			case 0:
+				return invoke();
+			case 1:
+				return invoke(arguments.get(0));
+			case 2:
+				return invoke(arguments.get(0), arguments.get(1));
+			case 3:
+				return invoke(arguments.get(0), arguments.get(1), arguments.get(2));
+			case 4:
+				return invoke(arguments.get(0), arguments.get(1), arguments.get(2), arguments.get(3));
+			default:
+				return invoke(arguments.toArray(NO_ARGUMENTS));
+		}
+	}
+
+	static RuntimeException arityMismatch(int expected, int actual)
+	{
+		return new RuntimeException("Expected " + expected + " arguments, received " + actual + ".");
+	}
+
+	public static Invoker of(Arity0 function)
+	{
+		return new Invoker()
+		{
+			@Override
+			public Environment.PlcObject invoke()
+			{
+				return function.invoke();
+			}
+
+			@Override
+			public Environment.PlcObject invoke(Environment.PlcObject[] arguments)
+			{
+				if (arguments.length != 0)
+				{
+					throw arityMismatch(0, arguments.length);
+				}
+				return function.invoke();
+			}
+		};
+	}
+
+	public static Invoker of(Arity1 function)
+	{
+		return new Invoker()
+		{
+			@Override
+			public Environment.PlcObject invoke(Environment.PlcObject first)
+			{
+				return function.invoke(first);
+			}
+
+			@Override
+			public Environment.PlcObject invoke(Environment.PlcObject[] arguments)
+			{
+				if (arguments.length != 1)
+				{
+					throw arityMismatch(1, arguments.length);
+				}
+				return function.invoke(arguments[0]);
+			}
+		};
+	}
+
+	public static Invoker of(Arity2 function)
+	{
+		return new Invoker()
+		{
+			@Override
+			public Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second)
+			{
+				return function.invoke(first, second);
+			}
+
+			@Override
+			public Environment.PlcObject invoke(Environment.PlcObject[] arguments)
+			{
+				if (arguments.length != 2)
+				{
+					throw arityMismatch(2, arguments.length);
+				}
+				return function.invoke(arguments[0], arguments[1]);
+			}
+		};
+	}
+
+	public static Invoker of(Arity3 function)
+	{
+		return new Invoker()
+		{
+			@Override
+			public Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third)
+			{
+				return function.invoke(first, second, third);
+			}
+
+			@Override
+			public Environment.PlcObject invoke(Environment.PlcObject[] arguments)
+			{
+				if (arguments.length != 3)
+				{
+					throw arityMismatch(3, arguments.length);
+				}
+				return function.invoke(arguments[0], arguments[1], arguments[2]);
+			}
+		};
+	}
+
+	public static Invoker of(Arity4 function)
+	{
+		return new Invoker()
+		{
+			@Override
+			public Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third, Environment.PlcObject fourth)
+			{
+				return function.invoke(first, second, third, fourth);
+			}
+
+			@Override
+			public Environment.PlcObject invoke(Environment.PlcObject[] arguments)
+			{
+				if (arguments.length != 4)
+				{
+					throw arityMismatch(4, arguments.length);
+				}
+				return function.invoke(arguments[0], arguments[1], arguments[2], arguments[3]);
+			}
+		};
+	}
+
+	/**
+	 * Adapts an implementation taking an array of arguments, which is called
+	 * for every arity.
+	 */
+	public static Invoker variadic(ArityN function)
+	{
+		return new Invoker()
+		{
+			@Override
+			public Environment.PlcObject invoke(Environment.PlcObject[] arguments)
+			{
+				return function.invoke(arguments);
+			}
+		};
+	}
+
+	/**
+	 * Adapts an implementation taking a list of arguments, which is called
+	 * for every arity. Lists passed to {@link #invoke(List)} are passed on
+	 * as they are.
+	 */
+	public static Invoker ofList(java.util.function.Function<List<Environment.PlcObject>, Environment.PlcObject> function)
+	{
+		return new Invoker()
+		{
+			@Override
+			public Environment.PlcObject invoke(Environment.PlcObject[] arguments)
+			{
+				return function.apply(Arrays.asList(arguments));
+			}
+
+			@Override
+			public Environment.PlcObject invoke(List<Environment.PlcObject> arguments)
+			{
+				return function.apply(arguments);
+			}
+		};
+	}
+
+	@FunctionalInterface
+	public interface Arity0
+	{
+
+		Environment.PlcObject invoke();
+
+	}
+
+	@FunctionalInterface
+	public interface Arity1
+	{
+
+		Environment.PlcObject invoke(Environment.PlcObject first);
+
+	}
+
+	@FunctionalInterface
+	public interface Arity2
+	{
+
+		Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second);
+
+	}
+
+	@FunctionalInterface
+	public interface Arity3
+	{
+
+		Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third);
+
+	}
+
+	@FunctionalInterface
+	public interface Arity4
+	{
+
+		Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third, Environment.PlcObject fourth);
+
+	}
+
+	@FunctionalInterface
+	public interface ArityN
+	{
+
+		Environment.PlcObject invoke(Environment.PlcObject[] arguments);
+
+	}
+
+}
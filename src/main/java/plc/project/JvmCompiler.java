@@ -0,0 +1,1138 @@
+package plc.project;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles a source to a JVM class in memory, which is defined as a hidden
+ * class so that programs run as JIT-compiled code without generating and
+ * compiling Java source (compare the {@link Generator}). The class is written
+ * with the bundled {@link ClassFileWriter}, as the class file API isn't
+ * available before Java 22.
+ * <p>
+ * Every method becomes a static method taking and returning {@link
+ * Environment.PlcObject}s, with the semantics of the {@link Interpreter}:
+ * locals are JVM locals, fields are static fields, calls of methods are
+ * {@code invokestatic}s, and operators call the helpers at the end of this
+ * class, which the JIT inlines. Literals and the functions called are
+ * constants of the class, passed as its class data.
+ */
+public final class JvmCompiler implements Ast.Visitor<Void>
+{
+
+	private static final String CLASS = "plc/project/JvmProgram";
+	private static final String COMPILER = "plc/project/JvmCompiler";
+	private static final String INTERPRETER = "plc/project/Interpreter";
+	private static final String ENVIRONMENT = "plc/project/Environment";
+	private static final String OBJECT = "plc/project/Environment$PlcObject";
+	private static final String FUNCTION = "plc/project/Environment$Function";
+	private static final String VARIABLE = "plc/project/Environment$Variable";
+	private static final String OBJECT_TYPE = "L" + OBJECT + ";";
+	private static final String OBJECTS_TYPE = "[" + OBJECT_TYPE;
+	private static final String SCOPE_TYPE = "Lplc/project/Scope;";
+	private static final String BINARY = "(" + OBJECT_TYPE + OBJECT_TYPE + ")" + OBJECT_TYPE;
+
+	private final Scope globals;
+	private final Map<String, Ast.Method> methods = new HashMap<>();
+	private final Map<String, String> fields = new HashMap<>();
+
+	private ClassFileWriter writer;
+	private final List<Object> constants = new ArrayList<>();
+	private final Map<Object, Integer> constantIndices = new HashMap<>();
+
+	/**
+	 * The code of the method being compiled, and the slots of the locals
+	 * visible at the current point of compilation, innermost block first.
+	 */
+	private ClassFileWriter.Method method;
+	private final Deque<Map<String, Integer>> blocks = new ArrayDeque<>();
+	private int nextSlot;
+
+	/**
+	 * Where returns jump to when compiling a loop, after storing their value
+	 * in the slot, or null when compiling methods.
+	 */
+	private ClassFileWriter.Label exit;
+	private int result;
+
+	public JvmCompiler(Scope parent)
+	{
+		globals = new Scope(StandardLibrary.createScope(parent));
+		globals.defineFunction("print", 1, Invoker.of(value -> {
+			System.out.println(value.getValue());
+			return Environment.NIL;
+		}));
+	}
+
+	public Scope getScope()
+	{
+		return globals;
+	}
+
+	/**
+	 * Compiles and defines the class of the source.
+	 */
+	public Program compile(Ast.Source ast)
+	{
+		visit(ast);
+		MethodHandles.Lookup lookup = define();
+		try
+		{
+			Map<String, MethodHandle> handles = new HashMap<>();
+			for (Map.Entry<String, Ast.Method> entry : methods.entrySet())
+			{
+				Ast.Method method = entry.getValue();
+				handles.put(entry.getKey(), lookup.findStatic(lookup.lookupClass(), method.getName(), descriptor(method.getParameters().size())));
+			}
+			MethodHandle run = lookup.findStatic(lookup.lookupClass(), "$run", MethodType.methodType(Environment.PlcObject.class));
+			return new Program(lookup.lookupClass(), run, handles, writer.toByteArray());
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new RuntimeException("Unable to define the compiled class.", e);
+		}
+	}
+
+	/**
+	 * Compiles a single method into a class of its own, returning it as a
+	 * static method taking and returning {@link Environment.PlcObject}s.
+	 * Other methods and fields are those of the parent scope, such as the
+	 * globals of an {@link Interpreter}, and variables are resolved once
+	 * here so that the compiled method accesses them directly.
+	 */
+	public MethodHandle compile(Ast.Method ast)
+	{
+		writer = new ClassFileWriter(CLASS, "java/lang/Object");
+		methods.put(ast.getName() + "/" + ast.getParameters().size(), ast);
+		visit(ast);
+		initializer();
+		MethodHandles.Lookup lookup = define();
+		try
+		{
+			return lookup.findStatic(lookup.lookupClass(), ast.getName(), descriptor(ast.getParameters().size()));
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new RuntimeException("Unable to define the compiled class.", e);
+		}
+	}
+
+	/**
+	 * Compiles a WHILE loop into a class of its own for on-stack replacement,
+	 * starting from its condition. The given locals (see {@link
+	 * #freeVariables(Ast.Stmt.While)}) are copied into JVM locals when the
+	 * loop is entered and copied back when it is left, and other variables
+	 * are resolved in the parent scope like by {@link #compile(Ast.Method)}.
+	 */
+	public Loop compile(Ast.Stmt.While ast, List<Ast.Expr.Access> locals)
+	{
+		String variables = "[L" + VARIABLE + ";";
+		writer = new ClassFileWriter(CLASS, "java/lang/Object");
+		method = writer.addMethod(ClassFileWriter.ACC_STATIC, "loop", "(" + variables + ")" + OBJECT_TYPE);
+		blocks.clear();
+		blocks.push(new HashMap<>());
+		nextSlot = 1;
+
+		int first = nextSlot;
+		for (int i = 0; i < locals.size(); i++)
+		{
+			method.load(0);
+			method.pushInt(i);
+			method.op(ClassFileWriter.AALOAD, -1);
+			method.invokeVirtual(VARIABLE, "getValue", "()" + OBJECT_TYPE);
+			method.store(allocate(locals.get(i).getName()));
+		}
+		result = allocate(" result");
+		method.op(ClassFileWriter.ACONST_NULL, 1);
+		method.store(result);
+
+		exit = new ClassFileWriter.Label();
+		visit(ast);
+		method.mark(exit);
+		for (int i = 0; i < locals.size(); i++)
+		{
+			method.load(0);
+			method.pushInt(i);
+			method.op(ClassFileWriter.AALOAD, -1);
+			method.load(first + i);
+			method.invokeVirtual(VARIABLE, "setValue", "(" + OBJECT_TYPE + ")V");
+		}
+		method.load(result);
+		method.op(ClassFileWriter.ARETURN, -1);
+		exit = null;
+
+		initializer();
+		MethodHandles.Lookup lookup = define();
+		try
+		{
+			return new Loop(lookup.findStatic(lookup.lookupClass(), "loop", MethodType.methodType(Environment.PlcObject.class, Environment.Variable[].class)), locals);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new RuntimeException("Unable to define the compiled class.", e);
+		}
+	}
+
+	/**
+	 * Returns the accesses of the variables a loop uses without declaring
+	 * them, the first for every name, which are the variables it needs from
+	 * the method it is in (or fields and other globals).
+	 */
+	public static List<Ast.Expr.Access> freeVariables(Ast.Stmt.While ast)
+	{
+		Map<String, Ast.Expr.Access> free = new LinkedHashMap<>();
+		Deque<Set<String>> declared = new ArrayDeque<>();
+		declared.push(new HashSet<>());
+		freeVariables(ast, declared, free);
+		return new ArrayList<>(free.values());
+	}
+
+	private static void freeVariables(Ast ast, Deque<Set<String>> declared, Map<String, Ast.Expr.Access> free)
+	{
+		if (ast instanceof Ast.Stmt.Expression)
+		{
+			freeVariables(((Ast.Stmt.Expression) ast).getExpression(), declared, free);
+		}
+		else if (ast instanceof Ast.Stmt.Declaration)
+		{
+			Ast.Stmt.Declaration declaration = (Ast.Stmt.Declaration) ast;
+			declaration.getValue().ifPresent(value -> freeVariables(value, declared, free));
+			declared.peek().add(declaration.getName());
+		}
+		else if (ast instanceof Ast.Stmt.Assignment)
+		{
+			freeVariables(((Ast.Stmt.Assignment) ast).getValue(), declared, free);
+			freeVariables(((Ast.Stmt.Assignment) ast).getReceiver(), declared, free);
+		}
+		else if (ast instanceof Ast.Stmt.If)
+		{
+			Ast.Stmt.If statement = (Ast.Stmt.If) ast;
+			freeVariables(statement.getCondition(), declared, free);
+			freeVariables(statement.getThenStatements(), Collections.emptyList(), declared, free);
+			freeVariables(statement.getElseStatements(), Collections.emptyList(), declared, free);
+		}
+		else if (ast instanceof Ast.Stmt.For)
+		{
+			Ast.Stmt.For statement = (Ast.Stmt.For) ast;
+			freeVariables(statement.getValue(), declared, free);
+			freeVariables(statement.getStatements(), Collections.singletonList(statement.getName()), declared, free);
+		}
+		else if (ast instanceof Ast.Stmt.While)
+		{
+			Ast.Stmt.While statement = (Ast.Stmt.While) ast;
+			freeVariables(statement.getCondition(), declared, free);
+			freeVariables(statement.getStatements(), Collections.emptyList(), declared, free);
+		}
+		else if (ast instanceof Ast.Stmt.Return)
+		{
+			freeVariables(((Ast.Stmt.Return) ast).getValue(), declared, free);
+		}
+		else if (ast instanceof Ast.Expr.Group)
+		{
+			freeVariables(((Ast.Expr.Group) ast).getExpression(), declared, free);
+		}
+		else if (ast instanceof Ast.Expr.Binary)
+		{
+			freeVariables(((Ast.Expr.Binary) ast).getLeft(), declared, free);
+			freeVariables(((Ast.Expr.Binary) ast).getRight(), declared, free);
+		}
+		else if (ast instanceof Ast.Expr.Access)
+		{
+			Ast.Expr.Access access = (Ast.Expr.Access) ast;
+			if (access.getReceiver().isPresent())
+			{
+				freeVariables(access.getReceiver().get(), declared, free);
+			}
+			else if (declared.stream().noneMatch(names -> names.contains(access.getName())))
+			{
+				free.putIfAbsent(access.getName(), access);
+			}
+		}
+		else if (ast instanceof Ast.Expr.Function)
+		{
+			Ast.Expr.Function function = (Ast.Expr.Function) ast;
+			function.getArguments().forEach(argument -> freeVariables(argument, declared, free));
+			function.getReceiver().ifPresent(receiver -> freeVariables(receiver, declared, free));
+		}
+	}
+
+	private static void freeVariables(List<Ast.Stmt> statements, List<String> names, Deque<Set<String>> declared, Map<String, Ast.Expr.Access> free)
+	{
+		declared.push(new HashSet<>(names));
+		statements.forEach(statement -> freeVariables(statement, declared, free));
+		declared.pop();
+	}
+
+	private MethodHandles.Lookup define()
+	{
+		try
+		{
+			return MethodHandles.lookup().defineHiddenClassWithClassData(writer.toByteArray(), constants.toArray(), true);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new RuntimeException("Unable to define the compiled class.", e);
+		}
+	}
+
+	@Override
+	public Void visit(Ast.Source ast)
+	{
+		writer = new ClassFileWriter(CLASS, "java/lang/Object");
+		for (Ast.Method method : ast.getMethods())
+		{
+			String key = method.getName() + "/" + method.getParameters().size();
+			if (methods.containsKey(key))
+			{
+				throw new RuntimeException("The function " + key + " is already defined in this scope.");
+			}
+			methods.put(key, method);
+		}
+
+		// $run initializes the fields, then calls main
+		begin("$run", 0);
+		ast.getFields().forEach(this::visit);
+		call("main", Collections.emptyList());
+		method.op(ClassFileWriter.ARETURN, -1);
+
+		ast.getMethods().forEach(this::visit);
+		initializer();
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Field ast)
+	{
+		if (ast.getValue().isPresent())
+		{
+			visit(ast.getValue().get());
+		}
+		else
+		{
+			nil();
+		}
+
+		String name = "f$" + ast.getName();
+		writer.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC, name, OBJECT_TYPE);
+		method.putStatic(CLASS, name, OBJECT_TYPE);
+		fields.put(ast.getName(), name);
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Method ast)
+	{
+		begin(ast.getName(), ast.getParameters().size());
+		for (String parameter : ast.getParameters())
+		{
+			allocate(parameter);
+		}
+		block(ast.getStatements());
+		nil();
+		method.op(ClassFileWriter.ARETURN, -1);
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Stmt.Expression ast)
+	{
+		visit(ast.getExpression());
+		method.op(ClassFileWriter.POP, -1);
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Stmt.Declaration ast)
+	{
+		if (ast.getValue().isPresent())
+		{
+			visit(ast.getValue().get());
+		}
+		else
+		{
+			nil();
+		}
+		method.store(allocate(ast.getName()));
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Stmt.Assignment ast)
+	{
+		if (!(ast.getReceiver() instanceof Ast.Expr.Access))
+		{
+			return null;
+		}
+
+		Ast.Expr.Access access = (Ast.Expr.Access) ast.getReceiver();
+		if (access.getReceiver().isPresent())
+		{
+			visit(access.getReceiver().get());
+			visit(ast.getValue());
+			method.ldc(writer.string(access.getName()));
+			method.invokeStatic(COMPILER, "setField", "(" + OBJECT_TYPE + OBJECT_TYPE + "Ljava/lang/String;)V");
+			return null;
+		}
+
+		visit(ast.getValue());
+		Integer slot = lookupLocal(access.getName());
+		if (slot != null)
+		{
+			method.store(slot);
+		}
+		else if (fields.containsKey(access.getName()))
+		{
+			method.putStatic(CLASS, fields.get(access.getName()), OBJECT_TYPE);
+		}
+		else if (variable(access.getName()))
+		{
+			method.op(ClassFileWriter.SWAP, 0);
+			method.invokeVirtual(VARIABLE, "setValue", "(" + OBJECT_TYPE + ")V");
+		}
+		else
+		{
+			constant(globals);
+			method.ldc(writer.string(access.getName()));
+			method.invokeStatic(COMPILER, "assignVariable", "(" + OBJECT_TYPE + SCOPE_TYPE + "Ljava/lang/String;)V");
+		}
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Stmt.If ast)
+	{
+		ClassFileWriter.Label otherwise = new ClassFileWriter.Label();
+		ClassFileWriter.Label end = new ClassFileWriter.Label();
+
+		condition(ast.getCondition());
+		method.jump(ClassFileWriter.IFEQ, otherwise);
+		block(ast.getThenStatements());
+		method.jump(ClassFileWriter.GOTO, end);
+		method.mark(otherwise);
+		block(ast.getElseStatements());
+		method.mark(end);
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Stmt.For ast)
+	{
+		visit(ast.getValue());
+		method.invokeStatic(COMPILER, "iterator", "(" + OBJECT_TYPE + ")Ljava/util/Iterator;");
+
+		int enclosingSlot = nextSlot;
+		blocks.push(new HashMap<>());
+		try
+		{
+			int iterator = allocate(" iterator");
+			int slot = allocate(ast.getName());
+			method.store(iterator);
+
+			ClassFileWriter.Label start = new ClassFileWriter.Label();
+			ClassFileWriter.Label end = new ClassFileWriter.Label();
+			method.mark(start);
+			method.load(iterator);
+			method.invokeInterface("java/util/Iterator", "hasNext", "()Z");
+			method.jump(ClassFileWriter.IFEQ, end);
+			method.load(iterator);
+			method.invokeInterface("java/util/Iterator", "next", "()Ljava/lang/Object;");
+			method.typed(ClassFileWriter.CHECKCAST, OBJECT);
+			method.store(slot);
+			block(ast.getStatements());
+			method.jump(ClassFileWriter.GOTO, start);
+			method.mark(end);
+		}
+		finally
+		{
+			blocks.pop();
+			nextSlot = enclosingSlot;
+		}
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Stmt.While ast)
+	{
+		ClassFileWriter.Label start = new ClassFileWriter.Label();
+		ClassFileWriter.Label end = new ClassFileWriter.Label();
+
+		method.mark(start);
+		condition(ast.getCondition());
+		method.jump(ClassFileWriter.IFEQ, end);
+		block(ast.getStatements());
+		method.jump(ClassFileWriter.GOTO, start);
+		method.mark(end);
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Stmt.Return ast)
+	{
+		visit(ast.getValue());
+		if (exit != null)
+		{
+			method.store(result);
+			method.jump(ClassFileWriter.GOTO, exit);
+			return null;
+		}
+		method.op(ClassFileWriter.ARETURN, -1);
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Expr.Literal ast)
+	{
+		if (ast.getLiteral() == null)
+		{
+			nil();
+		}
+		else
+		{
+			constant(Environment.create(ast.getLiteral()));
+		}
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Expr.Group ast)
+	{
+		return visit(ast.getExpression());
+	}
+
+	@Override
+	public Void visit(Ast.Expr.Binary ast)
+	{
+		switch (ast.getOperator())
+		{
+			case "AND":
+			case "OR":
+			{
+				// short-circuits to the result, with both sides required to be Booleans
+				int test = ast.getOperator().equals("AND") ? ClassFileWriter.IFEQ : ClassFileWriter.IFNE;
+				ClassFileWriter.Label shortCircuit = new ClassFileWriter.Label();
+				ClassFileWriter.Label end = new ClassFileWriter.Label();
+				condition(ast.getLeft());
+				method.jump(test, shortCircuit);
+				condition(ast.getRight());
+				method.jump(test, shortCircuit);
+				method.getStatic(ENVIRONMENT, test == ClassFileWriter.IFEQ ? "TRUE" : "FALSE", OBJECT_TYPE);
+				method.jump(ClassFileWriter.GOTO, end);
+				method.mark(shortCircuit);
+				method.setDepth(method.getDepth() - 1);
+				method.getStatic(ENVIRONMENT, test == ClassFileWriter.IFEQ ? "FALSE" : "TRUE", OBJECT_TYPE);
+				method.mark(end);
+				return null;
+			}
+			case "+":
+				return binary(ast, "add");
+			case "-":
+				return binary(ast, "subtract");
+			case "*":
+				return binary(ast, "multiply");
+			case "/":
+				return binary(ast, "divide");
+			case "==":
+				return binary(ast, "equal");
+			case "!=":
+				return binary(ast, "notEqual");
+			case "<":
+				return binary(ast, "less");
+			case "<=":
+				return binary(ast, "lessOrEqual");
+			case ">":
+				return binary(ast, "greater");
+			case ">=":
+				return binary(ast, "greaterOrEqual");
+			default:
+				throw new RuntimeException("Unknown operator " + ast.getOperator() + ".");
+		}
+	}
+
+	private Void binary(Ast.Expr.Binary ast, String helper)
+	{
+		visit(ast.getLeft());
+		visit(ast.getRight());
+		method.invokeStatic(COMPILER, helper, BINARY);
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Expr.Access ast)
+	{
+		if (ast.getReceiver().isPresent())
+		{
+			visit(ast.getReceiver().get());
+			method.ldc(writer.string(ast.getName()));
+			method.invokeStatic(COMPILER, "getField", "(" + OBJECT_TYPE + "Ljava/lang/String;)" + OBJECT_TYPE);
+			return null;
+		}
+
+		Integer slot = lookupLocal(ast.getName());
+		if (slot != null)
+		{
+			method.load(slot);
+		}
+		else if (fields.containsKey(ast.getName()))
+		{
+			method.getStatic(CLASS, fields.get(ast.getName()), OBJECT_TYPE);
+		}
+		else if (variable(ast.getName()))
+		{
+			method.invokeVirtual(VARIABLE, "getValue", "()" + OBJECT_TYPE);
+		}
+		else
+		{
+			constant(globals);
+			method.ldc(writer.string(ast.getName()));
+			method.invokeStatic(COMPILER, "lookupVariable", "(" + SCOPE_TYPE + "Ljava/lang/String;)" + OBJECT_TYPE);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visit(Ast.Expr.Function ast)
+	{
+		if (!ast.getReceiver().isPresent())
+		{
+			call(ast.getName(), ast.getArguments());
+			return null;
+		}
+
+		// the receiver is evaluated after the arguments, which wait in locals
+		int arity = ast.getArguments().size();
+		int enclosingSlot = nextSlot;
+		blocks.push(new HashMap<>());
+		try
+		{
+			int first = nextSlot;
+			for (int i = 0; i < arity; i++)
+			{
+				visit(ast.getArguments().get(i));
+				method.store(allocate(" argument" + i));
+			}
+
+			visit(ast.getReceiver().get());
+			method.pushInt(ast.getSelector() >= 0 ? ast.getSelector() : Selector.of(ast.getName(), arity + 1));
+			if (arity <= 3)
+			{
+				for (int i = 0; i < arity; i++)
+				{
+					method.load(first + i);
+				}
+				method.invokeVirtual(OBJECT, "callMethod", "(I" + OBJECT_TYPE.repeat(arity) + ")" + OBJECT_TYPE);
+			}
+			else
+			{
+				method.pushInt(arity + 1);
+				method.typed(ClassFileWriter.ANEWARRAY, OBJECT);
+				for (int i = 0; i < arity; i++)
+				{
+					method.op(ClassFileWriter.DUP, 1);
+					method.pushInt(i + 1);
+					method.load(first + i);
+					method.op(ClassFileWriter.AASTORE, -3);
+				}
+				method.invokeVirtual(OBJECT, "callMethod", "(I" + OBJECTS_TYPE + ")" + OBJECT_TYPE);
+			}
+		}
+		finally
+		{
+			blocks.pop();
+			nextSlot = enclosingSlot;
+		}
+		return null;
+	}
+
+	/**
+	 * Emits a call of a function without a receiver, which is a method of the
+	 * source, a function of the globals, or (if neither is defined yet) one
+	 * looked up when it is called, failing like in the Interpreter.
+	 */
+	private void call(String name, List<Ast.Expr> arguments)
+	{
+		int arity = arguments.size();
+		if (methods.containsKey(name + "/" + arity))
+		{
+			arguments.forEach(this::visit);
+			method.invokeStatic(CLASS, name, descriptor(arity).toMethodDescriptorString());
+			return;
+		}
+
+		Environment.Function function = null;
+		try
+		{
+			function = globals.lookupFunction(name, arity);
+			constant(function);
+		}
+		catch (RuntimeException e)
+		{
+			constant(globals);
+			method.ldc(writer.string(name));
+		}
+
+		if (arity <= 4)
+		{
+			arguments.forEach(this::visit);
+		}
+		else
+		{
+			method.pushInt(arity);
+			method.typed(ClassFileWriter.ANEWARRAY, OBJECT);
+			for (int i = 0; i < arity; i++)
+			{
+				method.op(ClassFileWriter.DUP, 1);
+				method.pushInt(i);
+				visit(arguments.get(i));
+				method.op(ClassFileWriter.AASTORE, -3);
+			}
+		}
+
+		String parameters = arity <= 4 ? OBJECT_TYPE.repeat(arity) : OBJECTS_TYPE;
+		if (function != null)
+		{
+			method.invokeVirtual(FUNCTION, "invoke", "(" + parameters + ")" + OBJECT_TYPE);
+		}
+		else
+		{
+			method.invokeStatic(COMPILER, "invokeGlobal", "(" + SCOPE_TYPE + "Ljava/lang/String;" + parameters + ")" + OBJECT_TYPE);
+		}
+	}
+
+	/**
+	 * Pushes a variable of the globals as a constant, returning false if it
+	 * isn't defined yet (and is looked up by name when it is accessed).
+	 */
+	private boolean variable(String name)
+	{
+		Environment.Variable variable;
+		try
+		{
+			variable = globals.lookupVariable(name);
+		}
+		catch (RuntimeException e)
+		{
+			return false;
+		}
+		constant(variable);
+		return true;
+	}
+
+	/**
+	 * Emits an expression as an int which is 1 if it is TRUE.
+	 */
+	private void condition(Ast.Expr expr)
+	{
+		visit(expr);
+		method.invokeStatic(INTERPRETER, "isTrue", "(" + OBJECT_TYPE + ")Z");
+	}
+
+	private void nil()
+	{
+		method.getStatic(ENVIRONMENT, "NIL", OBJECT_TYPE);
+	}
+
+	/**
+	 * Pushes a constant, which is held by a static final field of the class
+	 * so that the JIT can treat it as a constant.
+	 */
+	private void constant(Object value)
+	{
+		Object key = value instanceof Environment.PlcObject ? Arrays.asList("literal", ((Environment.PlcObject) value).getValue()) : new IdentityKey(value);
+		Integer index = constantIndices.get(key);
+		if (index == null)
+		{
+			index = constants.size();
+			constants.add(value);
+			constantIndices.put(key, index);
+			writer.addField(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC | ClassFileWriter.ACC_FINAL, "c$" + index, constantType(value));
+		}
+		method.getStatic(CLASS, "c$" + index, constantType(value));
+	}
+
+	private static String constantType(Object value)
+	{
+		if (value instanceof Environment.PlcObject)
+		{
+			return OBJECT_TYPE;
+		}
+		return value instanceof Scope ? SCOPE_TYPE : value instanceof Environment.Variable ? "L" + VARIABLE + ";" : "L" + FUNCTION + ";";
+	}
+
+	/**
+	 * Compares constants other than literals by identity, as functions and
+	 * variables of different scopes can be equal.
+	 */
+	private static final class IdentityKey
+	{
+
+		private final Object value;
+
+		private IdentityKey(Object value)
+		{
+			this.value = value;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			return obj instanceof IdentityKey && ((IdentityKey) obj).value == value;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return System.identityHashCode(value);
+		}
+
+	}
+
+	/**
+	 * Writes the static initializer, which sets the fields of the constants
+	 * from the class data.
+	 */
+	private void initializer()
+	{
+		ClassFileWriter.Method clinit = writer.addMethod(ClassFileWriter.ACC_STATIC, "<clinit>", "()V");
+		clinit.invokeStatic("java/lang/invoke/MethodHandles", "lookup", "()Ljava/lang/invoke/MethodHandles$Lookup;");
+		clinit.ldc(writer.string("_"));
+		clinit.ldc(writer.classRef("[Ljava/lang/Object;"));
+		clinit.invokeStatic("java/lang/invoke/MethodHandles", "classData", "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Object;");
+		clinit.typed(ClassFileWriter.CHECKCAST, "[Ljava/lang/Object;");
+		clinit.store(0);
+		for (int i = 0; i < constants.size(); i++)
+		{
+			String type = constantType(constants.get(i));
+			clinit.load(0);
+			clinit.pushInt(i);
+			clinit.op(ClassFileWriter.AALOAD, -1);
+			clinit.typed(ClassFileWriter.CHECKCAST, type.substring(1, type.length() - 1));
+			clinit.putStatic(CLASS, "c$" + i, type);
+		}
+		clinit.op(ClassFileWriter.RETURN, 0);
+	}
+
+	/**
+	 * Starts a static method of the class, which only sees the fields and
+	 * globals.
+	 */
+	private void begin(String name, int arity)
+	{
+		method = writer.addMethod(ClassFileWriter.ACC_STATIC, name, descriptor(arity).toMethodDescriptorString());
+		blocks.clear();
+		blocks.push(new HashMap<>());
+		nextSlot = 0;
+	}
+
+	private static MethodType descriptor(int arity)
+	{
+		return MethodType.methodType(Environment.PlcObject.class, Collections.nCopies(arity, Environment.PlcObject.class));
+	}
+
+	private void block(List<Ast.Stmt> statements)
+	{
+		int enclosingSlot = nextSlot;
+		blocks.push(new HashMap<>());
+		try
+		{
+			statements.forEach(this::visit);
+		}
+		finally
+		{
+			blocks.pop();
+			nextSlot = enclosingSlot;
+		}
+	}
+
+	private int allocate(String name)
+	{
+		blocks.peek().put(name, nextSlot);
+		return nextSlot++;
+	}
+
+	private Integer lookupLocal(String name)
+	{
+		for (Map<String, Integer> block : blocks)
+		{
+			Integer slot = block.get(name);
+			if (slot != null)
+			{
+				return slot;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * A loop compiled for on-stack replacement, which is entered with the
+	 * variables of its locals.
+	 */
+	public static final class Loop
+	{
+
+		private final MethodHandle handle;
+		private final List<Ast.Expr.Access> locals;
+
+		private Loop(MethodHandle handle, List<Ast.Expr.Access> locals)
+		{
+			this.handle = handle;
+			this.locals = locals;
+		}
+
+		/**
+		 * Returns the accesses of the locals the loop is entered with, in
+		 * the order of the variables passed to {@link #run(Environment.Variable[])}.
+		 */
+		public List<Ast.Expr.Access> getLocals()
+		{
+			return locals;
+		}
+
+		/**
+		 * Runs the loop from its condition until it ends, assigning the
+		 * variables of its locals, and returns the value of a RETURN
+		 * statement in it, or null if the loop ended.
+		 */
+		public Environment.PlcObject run(Environment.Variable[] locals)
+		{
+			try
+			{
+				return (Environment.PlcObject) handle.invokeExact(locals);
+			}
+			catch (RuntimeException | Error e)
+			{
+				throw e;
+			}
+			catch (Throwable e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+
+	}
+
+	/**
+	 * A compiled source, whose class holds a static method for every method
+	 * of the source.
+	 */
+	public static final class Program
+	{
+
+		private final Class<?> type;
+		private final MethodHandle run;
+		private final Map<String, MethodHandle> methods;
+		private final byte[] bytes;
+
+		private Program(Class<?> type, MethodHandle run, Map<String, MethodHandle> methods, byte[] bytes)
+		{
+			this.type = type;
+			this.run = run;
+			this.methods = methods;
+			this.bytes = bytes;
+		}
+
+		public Class<?> getType()
+		{
+			return type;
+		}
+
+		/**
+		 * Returns the bytes of the class file, such as for inspecting it
+		 * with {@code javap}.
+		 */
+		public byte[] getBytes()
+		{
+			return bytes.clone();
+		}
+
+		/**
+		 * Returns the static method compiled from the method of the source
+		 * with the given name and arity, taking and returning {@link
+		 * Environment.PlcObject}s.
+		 */
+		public MethodHandle getMethod(String name, int arity)
+		{
+			MethodHandle method = methods.get(name + "/" + arity);
+			if (method == null)
+			{
+				throw new RuntimeException("The function " + name + "/" + arity + " is not defined in this scope.");
+			}
+			return method;
+		}
+
+		/**
+		 * Runs the program from the start, returning the result of {@code
+		 * main}.
+		 */
+		public Environment.PlcObject run()
+		{
+			try
+			{
+				return (Environment.PlcObject) run.invokeExact();
+			}
+			catch (RuntimeException | Error e)
+			{
+				throw e;
+			}
+			catch (Throwable e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+
+	}
+
+	/*
+	 * The helpers called by the compiled classes, which are in this package.
+	 */
+
+	private static final Ast.Expr.Binary ADD = new Ast.Expr.Binary("+", null, null);
+	private static final Ast.Expr.Binary SUBTRACT = new Ast.Expr.Binary("-", null, null);
+	private static final Ast.Expr.Binary MULTIPLY = new Ast.Expr.Binary("*", null, null);
+	private static final Ast.Expr.Binary DIVIDE = new Ast.Expr.Binary("/", null, null);
+	private static final Ast.Expr.Binary EQUAL = new Ast.Expr.Binary("==", null, null);
+	private static final Ast.Expr.Binary NOT_EQUAL = new Ast.Expr.Binary("!=", null, null);
+	private static final Ast.Expr.Binary LESS = new Ast.Expr.Binary("<", null, null);
+	private static final Ast.Expr.Binary LESS_OR_EQUAL = new Ast.Expr.Binary("<=", null, null);
+	private static final Ast.Expr.Binary GREATER = new Ast.Expr.Binary(">", null, null);
+	private static final Ast.Expr.Binary GREATER_OR_EQUAL = new Ast.Expr.Binary(">=", null, null);
+
+	static Environment.PlcObject add(Environment.PlcObject left, Environment.PlcObject right)
+	{
+		if (left.isLong() && right.isLong())
+		{
+			long l = left.getLong();
+			long r = right.getLong();
+			long result = l + r;
+			if (((l ^ result) & (r ^ result)) >= 0)
+			{
+				return Environment.createInteger(result);
+			}
+		}
+		return Interpreter.binary(ADD, left, right);
+	}
+
+	static Environment.PlcObject subtract(Environment.PlcObject left, Environment.PlcObject right)
+	{
+		if (left.isLong() && right.isLong())
+		{
+			long l = left.getLong();
+			long r = right.getLong();
+			long result = l - r;
+			if (((l ^ r) & (l ^ result)) >= 0)
+			{
+				return Environment.createInteger(result);
+			}
+		}
+		return Interpreter.binary(SUBTRACT, left, right);
+	}
+
+	static Environment.PlcObject multiply(Environment.PlcObject left, Environment.PlcObject right)
+	{
+		return Interpreter.binary(MULTIPLY, left, right);
+	}
+
+	static Environment.PlcObject divide(Environment.PlcObject left, Environment.PlcObject right)
+	{
+		return Interpreter.binary(DIVIDE, left, right);
+	}
+
+	static Environment.PlcObject equal(Environment.PlcObject left, Environment.PlcObject right)
+	{
+		return left.isLong() && right.isLong() ? Environment.create(left.getLong() == right.getLong()) : Interpreter.binary(EQUAL, left, right);
+	}
+
+	static Environment.PlcObject notEqual(Environment.PlcObject left, Environment.PlcObject right)
+	{
+		return left.isLong() && right.isLong() ? Environment.create(left.getLong() != right.getLong()) : Interpreter.binary(NOT_EQUAL, left, right);
+	}
+
+	static Environment.PlcObject less(Environment.PlcObject left, Environment.PlcObject right)
+	{
+		return left.isLong() && right.isLong() ? Environment.create(left.getLong() < right.getLong()) : Interpreter.binary(LESS, left, right);
+	}
+
+	static Environment.PlcObject lessOrEqual(Environment.PlcObject left, Environment.PlcObject right)
+	{
+		return left.isLong() && right.isLong() ? Environment.create(left.getLong() <= right.getLong()) : Interpreter.binary(LESS_OR_EQUAL, left, right);
+	}
+
+	static Environment.PlcObject greater(Environment.PlcObject left, Environment.PlcObject right)
+	{
+		return left.isLong() && right.isLong() ? Environment.create(left.getLong() > right.getLong()) : Interpreter.binary(GREATER, left, right);
+	}
+
+	static Environment.PlcObject greaterOrEqual(Environment.PlcObject left, Environment.PlcObject right)
+	{
+		return left.isLong() && right.isLong() ? Environment.create(left.getLong() >= right.getLong()) : Interpreter.binary(GREATER_OR_EQUAL, left, right);
+	}
+
+	static Iterator<?> iterator(Environment.PlcObject iterable)
+	{
+		Iterable<?> elements = Interpreter.requireType(Iterable.class, iterable);
+		return elements.iterator();
+	}
+
+	static Environment.PlcObject getField(Environment.PlcObject receiver, String name)
+	{
+		return receiver.getField(name).getValue();
+	}
+
+	static void setField(Environment.PlcObject receiver, Environment.PlcObject value, String name)
+	{
+		receiver.setField(name, value);
+	}
+
+	static Environment.PlcObject lookupVariable(Scope globals, String name)
+	{
+		return globals.lookupVariable(name).getValue();
+	}
+
+	static void assignVariable(Environment.PlcObject value, Scope globals, String name)
+	{
+		globals.lookupVariable(name).setValue(value);
+	}
+
+	static Environment.PlcObject invokeGlobal(Scope globals, String name)
+	{
+		return globals.lookupFunction(name, 0).invoke();
+	}
+
+	static Environment.PlcObject invokeGlobal(Scope globals, String name, Environment.PlcObject first)
+	{
+		return globals.lookupFunction(name, 1).invoke(first);
+	}
+
+	static Environment.PlcObject invokeGlobal(Scope globals, String name, Environment.PlcObject first, Environment.PlcObject second)
+	{
+		return globals.lookupFunction(name, 2).invoke(first, second);
+	}
+
+	static Environment.PlcObject invokeGlobal(Scope globals, String name, Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third)
+	{
+		return globals.lookupFunction(name, 3).invoke(first, second, third);
+	}
+
+	static Environment.PlcObject invokeGlobal(Scope globals, String name, Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third, Environment.PlcObject fourth)
+	{
+		return globals.lookupFunction(name, 4).invoke(first, second, third, fourth);
+	}
+
+	static Environment.PlcObject invokeGlobal(Scope globals, String name, Environment.PlcObject[] arguments)
+	{
+		return globals.lookupFunction(name, arguments.length).invoke(arguments);
+	}
+
+}
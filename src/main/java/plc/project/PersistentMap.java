@@ -0,0 +1,291 @@
+package plc.project;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable hash array mapped trie. Adding an entry returns a new map
+ * sharing all but the path to that entry with the original map, so old
+ * versions stay valid and can be read concurrently without locking.
+ */
+final class PersistentMap<K, V>
+{
+
+	private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, 0);
+
+	private final Node<K, V> root;
+	private final int size;
+
+	private PersistentMap(Node<K, V> root, int size)
+	{
+		this.root = root;
+		this.size = size;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <K, V> PersistentMap<K, V> empty()
+	{
+		return (PersistentMap<K, V>) EMPTY;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the value of the key, or null if it isn't in this map.
+	 */
+	V get(K key)
+	{
+		return root == null ? null : root.get(key, hash(key), 0);
+	}
+
+	/**
+	 * Returns a map with the key set to the value, replacing any previous
+	 * value.
+	 */
+	PersistentMap<K, V> put(K key, V value)
+	{
+		int hash = hash(key);
+		if (root == null)
+		{
+			return new PersistentMap<>(new Leaf<>(hash, key, value), 1);
+		}
+		boolean[] added = new boolean[1];
+		Node<K, V> updated = root.put(key, value, hash, 0, added);
+		return updated == root ? this : new PersistentMap<>(updated, added[0] ? size + 1 : size);
+	}
+
+	void forEach(BiConsumer<? super K, ? super V> action)
+	{
+		if (root != null)
+		{
+			root.forEach(action);
+		}
+	}
+
+	private static int hash(Object key)
+	{
+		int hash = key.hashCode();
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Returns an array of the elements, as arrays of a generic type like
+	 * {@code Node<K, V>} can't be created with {@code new}.
+	 */
+	@SafeVarargs
+	@SuppressWarnings("varargs")
+	private static <T> T[] array(T... elements)
+	{
+		return elements;
+	}
+
+	private interface Node<K, V>
+	{
+
+		V get(K key, int hash, int shift);
+
+		Node<K, V> put(K key, V value, int hash, int shift, boolean[] added);
+
+		void forEach(BiConsumer<? super K, ? super V> action);
+
+	}
+
+	private static final class Leaf<K, V> implements Node<K, V>
+	{
+
+		private final int hash;
+		private final K key;
+		private final V value;
+
+		private Leaf(int hash, K key, V value)
+		{
+			this.hash = hash;
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public V get(K key, int hash, int shift)
+		{
+			return hash == this.hash && key.equals(this.key) ? value : null;
+		}
+
+		@Override
+		public Node<K, V> put(K key, V value, int hash, int shift, boolean[] added)
+		{
+			if (hash == this.hash && key.equals(this.key))
+			{
+				return value == this.value ? this : new Leaf<>(hash, key, value);
+			}
+
+			added[0] = true;
+			Leaf<K, V> leaf = new Leaf<>(hash, key, value);
+
+			if (hash == this.hash)
+			{
+				return new Collision<>(hash, array(this, leaf));
+			}
+			return Branch.merge(this, this.hash, leaf, hash, shift);
+		}
+
+		@Override
+		public void forEach(BiConsumer<? super K, ? super V> action)
+		{
+			action.accept(key, value);
+		}
+
+	}
+
+	/**
+	 * Entries whose keys have the same hash, which are searched linearly.
+	 */
+	private static final class Collision<K, V> implements Node<K, V>
+	{
+
+		private final int hash;
+		private final Leaf<K, V>[] leaves;
+
+		private Collision(int hash, Leaf<K, V>[] leaves)
+		{
+			this.hash = hash;
+			this.leaves = leaves;
+		}
+
+		@Override
+		public V get(K key, int hash, int shift)
+		{
+			for (Leaf<K, V> leaf : leaves)
+			{
+				if (key.equals(leaf.key))
+				{
+					return leaf.value;
+				}
+			}
+			return null;
+		}
+
+		@Override
+		public Node<K, V> put(K key, V value, int hash, int shift, boolean[] added)
+		{
+			if (hash != this.hash)
+			{
+				added[0] = true;
+				return Branch.merge(this, this.hash, new Leaf<>(hash, key, value), hash, shift);
+			}
+
+			for (int i = 0; i < leaves.length; i++)
+			{
+				if (key.equals(leaves[i].key))
+				{
+					Leaf<K, V>[] updated = leaves.clone();
+					updated[i] = new Leaf<>(hash, key, value);
+					return new Collision<>(hash, updated);
+				}
+			}
+
+			added[0] = true;
+			Leaf<K, V>[] updated = Arrays.copyOf(leaves, leaves.length + 1);
+			updated[leaves.length] = new Leaf<>(hash, key, value);
+			return new Collision<>(hash, updated);
+		}
+
+		@Override
+		public void forEach(BiConsumer<? super K, ? super V> action)
+		{
+			for (Leaf<K, V> leaf : leaves)
+			{
+				action.accept(leaf.key, leaf.value);
+			}
+		}
+
+	}
+
+	/**
+	 * A node indexed by five bits of the hash at its depth, which only stores
+	 * the children that are present.
+	 */
+	private static final class Branch<K, V> implements Node<K, V>
+	{
+
+		private final int bitmap;
+		private final Node<K, V>[] children;
+
+		private Branch(int bitmap, Node<K, V>[] children)
+		{
+			this.bitmap = bitmap;
+			this.children = children;
+		}
+
+		/**
+		 * Creates the node holding two nodes whose hashes are different.
+		 */
+		private static <K, V> Node<K, V> merge(Node<K, V> first, int firstHash, Node<K, V> second, int secondHash, int shift)
+		{
+			int firstIndex = (firstHash >>> shift) & 31;
+			int secondIndex = (secondHash >>> shift) & 31;
+
+			if (firstIndex == secondIndex)
+			{
+				return new Branch<>(1 << firstIndex, array(merge(first, firstHash, second, secondHash, shift + 5)));
+			}
+			else if (firstIndex < secondIndex)
+			{
+				return new Branch<>((1 << firstIndex) | (1 << secondIndex), array(first, second));
+			}
+			else
+			{
+				return new Branch<>((1 << firstIndex) | (1 << secondIndex), array(second, first));
+			}
+		}
+
+		@Override
+		public V get(K key, int hash, int shift)
+		{
+			int bit = 1 << ((hash >>> shift) & 31);
+			if ((bitmap & bit) == 0)
+			{
+				return null;
+			}
+			return children[Integer.bitCount(bitmap & (bit - 1))].get(key, hash, shift + 5);
+		}
+
+		@Override
+		public Node<K, V> put(K key, V value, int hash, int shift, boolean[] added)
+		{
+			int bit = 1 << ((hash >>> shift) & 31);
+			int position = Integer.bitCount(bitmap & (bit - 1));
+
+			if ((bitmap & bit) == 0)
+			{
+				added[0] = true;
+				Node<K, V>[] updated = Arrays.copyOf(children, children.length + 1);
+				System.arraycopy(children, position, updated, position + 1, children.length - position);
+				updated[position] = new Leaf<>(hash, key, value);
+				return new Branch<>(bitmap | bit, updated);
+			}
+
+			Node<K, V> child = children[position].put(key, value, hash, shift + 5, added);
+			if (child == children[position])
+			{
+				return this;
+			}
+			Node<K, V>[] updated = children.clone();
+			updated[position] = child;
+			return new Branch<>(bitmap, updated);
+		}
+
+		@Override
+		public void forEach(BiConsumer<? super K, ? super V> action)
+		{
+			for (Node<K, V> child : children)
+			{
+				child.forEach(action);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,119 @@
+package plc.project;
+
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+/**
+ * An immutable scope backed by {@link PersistentMap}s, which can be shared
+ * between threads and forked into any number of independent {@link Scope}s.
+ * <p>
+ * Forking is constant time. A fork copies a variable the first time it is
+ * looked up, so assignments in one fork are never seen by the persistent
+ * scope or other forks, and functions are passed through a binder the first
+ * time they are looked up, which allows functions with state (such as the
+ * methods defined by an {@link Interpreter}) to be rebound to each fork. The
+ * parent of a persistent scope is shared by all forks and should not be
+ * modified while they are in use.
+ */
+public final class PersistentScope
+{
+
+	private final Scope parent;
+	private final PersistentMap<String, Environment.Variable> variables;
+	private final PersistentMap<String, Environment.Function[]> functions;
+
+	public PersistentScope(Scope parent)
+	{
+		this(parent, PersistentMap.empty(), PersistentMap.empty());
+	}
+
+	private PersistentScope(Scope parent, PersistentMap<String, Environment.Variable> variables, PersistentMap<String, Environment.Function[]> functions)
+	{
+		this.parent = parent;
+		this.variables = variables;
+		this.functions = functions;
+	}
+
+	/**
+	 * Returns a persistent copy of the variables and functions defined
+	 * directly in the scope, with the same parent.
+	 */
+	public static PersistentScope of(Scope scope)
+	{
+		PersistentScope[] result = {new PersistentScope(scope.getParent())};
+		scope.forEachVariable(variable -> result[0] = result[0].defineVariable(variable.getName(), variable.getJvmName(), variable.getType(), variable.getValue()));
+		scope.forEachFunction(function -> result[0] = result[0].defineFunction(function));
+		return result[0];
+	}
+
+	public Scope getParent()
+	{
+		return parent;
+	}
+
+	public PersistentScope defineVariable(String name, String jvmName, Environment.Type type, Environment.PlcObject value)
+	{
+		if (variables.get(name) != null)
+		{
+			throw new RuntimeException("The variable " + name + " is already defined in this scope.");
+		}
+		return new PersistentScope(parent, variables.put(name, new Environment.Variable(name, jvmName, type, value)), functions);
+	}
+
+	public PersistentScope defineFunction(Environment.Function function)
+	{
+		int arity = function.getParameterTypes().size();
+		Environment.Function[] overloads = functions.get(function.getName());
+		if (overloads != null && arity < overloads.length && overloads[arity] != null)
+		{
+			throw new RuntimeException("The function " + function.getName() + "/" + arity + " is already defined in this scope.");
+		}
+		overloads = overloads == null ? new Environment.Function[arity + 1] : Arrays.copyOf(overloads, Math.max(overloads.length, arity + 1));
+		overloads[arity] = function;
+		return new PersistentScope(parent, variables, functions.put(function.getName(), overloads));
+	}
+
+	/**
+	 * Returns a new scope with the definitions of this scope, see {@link
+	 * PersistentScope}.
+	 */
+	public Scope fork()
+	{
+		return fork(UnaryOperator.identity());
+	}
+
+	public Scope fork(UnaryOperator<Environment.Function> binder)
+	{
+		return new Scope(this, binder);
+	}
+
+	/**
+	 * Returns the variable with the given name, which must not be modified,
+	 * or null if it isn't defined in this scope.
+	 */
+	Environment.Variable getVariable(String name)
+	{
+		return variables.get(name);
+	}
+
+	/**
+	 * Returns the function with the given name and arity, or null if it isn't
+	 * defined in this scope.
+	 */
+	Environment.Function getFunction(String name, int arity)
+	{
+		Environment.Function[] overloads = functions.get(name);
+		return overloads != null && arity >= 0 && arity < overloads.length ? overloads[arity] : null;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "PersistentScope{" +
+				"parent=" + parent +
+				", variables=" + variables.size() +
+				", functions=" + functions.size() +
+				'}';
+	}
+
+}
@@ -0,0 +1,686 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes the range of values of Integer expressions in an analyzed AST and
+ * marks every Integer {@link Ast.Expr.Binary} that provably stays within the
+ * range of an {@code int} with {@link Ast.Expr.Binary#setOverflowSafe(boolean)},
+ * so execution backends can use primitive arithmetic for it.
+ * <p>
+ * The analysis is an interval analysis over the statements of each method.
+ * Local variables are tracked through declarations and assignments and are
+ * narrowed by comparisons against literals or other variables in {@code IF}
+ * and {@code WHILE} conditions. Loops are analyzed to a fixed point, widening
+ * growing bounds first to the {@code int} range and then to unbounded. Fields,
+ * parameters, function results and loop variables are unbounded, as Integers
+ * are, and the values of fields are forgotten after every call. An expression
+ * is only marked if both of its operands are proven to be {@code int}s too.
+ */
+public final class RangeAnalyzer implements Ast.Visitor<RangeAnalyzer.Range>
+{
+
+	private static final int WIDENING_DELAY = 3;
+
+	/**
+	 * The range of each tracked variable, or {@code null} if the code being
+	 * analyzed is unreachable.
+	 */
+	private Map<Environment.Variable, Range> variables = new IdentityHashMap<>();
+	private final Set<Environment.Variable> locals = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Map<Ast.Expr.Binary, Boolean> results = new IdentityHashMap<>();
+
+	@Override
+	public Range visit(Ast.Source ast)
+	{
+		ast.getFields().forEach(this::visit);
+		ast.getMethods().forEach(this::visit);
+		return null;
+	}
+
+	@Override
+	public Range visit(Ast.Field ast)
+	{
+		variables = new IdentityHashMap<>();
+		ast.getValue().ifPresent(this::visit);
+		annotate();
+		return null;
+	}
+
+	@Override
+	public Range visit(Ast.Method ast)
+	{
+		variables = new IdentityHashMap<>();
+		locals.clear();
+		statements(ast.getStatements());
+		annotate();
+		return null;
+	}
+
+	@Override
+	public Range visit(Ast.Stmt.Expression ast)
+	{
+		visit(ast.getExpression());
+		return null;
+	}
+
+	@Override
+	public Range visit(Ast.Stmt.Declaration ast)
+	{
+		Range range = ast.getValue().isPresent() ? visit(ast.getValue().get()) : null;
+		locals.add(ast.getVariable());
+
+		if (ast.getVariable().getType() == Environment.Type.INTEGER)
+		{
+			variables.put(ast.getVariable(), range != null ? range : Range.UNBOUNDED);
+		}
+		return null;
+	}
+
+	@Override
+	public Range visit(Ast.Stmt.Assignment ast)
+	{
+		Range range = visit(ast.getValue());
+		Ast.Expr.Access receiver = (Ast.Expr.Access) ast.getReceiver();
+
+		if (receiver.getReceiver().isPresent())
+		{
+			visit(receiver.getReceiver().get());
+		}
+		else if (variables != null && receiver.getVariable().getType() == Environment.Type.INTEGER)
+		{
+			variables.put(receiver.getVariable(), range != null ? range : Range.UNBOUNDED);
+		}
+		return null;
+	}
+
+	@Override
+	public Range visit(Ast.Stmt.If ast)
+	{
+		visit(ast.getCondition());
+		Map<Environment.Variable, Range> entry = variables;
+
+		variables = refine(entry, ast.getCondition(), true);
+		statements(ast.getThenStatements());
+		Map<Environment.Variable, Range> then = variables;
+
+		variables = refine(entry, ast.getCondition(), false);
+		statements(ast.getElseStatements());
+
+		variables = join(then, variables);
+		return null;
+	}
+
+	@Override
+	public Range visit(Ast.Stmt.For ast)
+	{
+		visit(ast.getValue());
+		loop(null, ast.getStatements());
+		return null;
+	}
+
+	@Override
+	public Range visit(Ast.Stmt.While ast)
+	{
+		loop(ast.getCondition(), ast.getStatements());
+		return null;
+	}
+
+	@Override
+	public Range visit(Ast.Stmt.Return ast)
+	{
+		visit(ast.getValue());
+		variables = null;
+		return null;
+	}
+
+	@Override
+	public Range visit(Ast.Expr.Literal ast)
+	{
+		if (ast.getLiteral() instanceof BigInteger)
+		{
+			return Range.of((BigInteger) ast.getLiteral());
+		}
+		return null;
+	}
+
+	@Override
+	public Range visit(Ast.Expr.Group ast)
+	{
+		return visit(ast.getExpression());
+	}
+
+	@Override
+	public Range visit(Ast.Expr.Binary ast)
+	{
+		Range left = visit(ast.getLeft());
+		Range right = visit(ast.getRight());
+
+		if (ast.getType() != Environment.Type.INTEGER || left == null || right == null)
+		{
+			return null;
+		}
+
+		Range result;
+		switch (ast.getOperator())
+		{
+			case "+":
+				result = new Range(Range.add(left.min, right.min, false), Range.add(left.max, right.max, true));
+				break;
+			case "-":
+				result = new Range(Range.add(left.min, Range.negate(right.max), false), Range.add(left.max, Range.negate(right.min), true));
+				break;
+			case "*":
+				result = Range.multiply(left, right);
+				break;
+			case "/":
+				result = Range.divide(left, right);
+				break;
+			default:
+				return null;
+		}
+
+		if (variables != null)
+		{
+			results.merge(ast, left.isInt() && right.isInt() && result.isInt(), Boolean::logicalAnd);
+		}
+		return result;
+	}
+
+	@Override
+	public Range visit(Ast.Expr.Access ast)
+	{
+		if (ast.getReceiver().isPresent())
+		{
+			visit(ast.getReceiver().get());
+		}
+		else if (variables != null && variables.containsKey(ast.getVariable()))
+		{
+			return variables.get(ast.getVariable());
+		}
+		return ast.getType() == Environment.Type.INTEGER ? Range.UNBOUNDED : null;
+	}
+
+	@Override
+	public Range visit(Ast.Expr.Function ast)
+	{
+		ast.getReceiver().ifPresent(this::visit);
+		ast.getArguments().forEach(this::visit);
+
+		if (variables != null)
+		{
+			variables.keySet().retainAll(locals);
+		}
+		return ast.getType() == Environment.Type.INTEGER ? Range.UNBOUNDED : null;
+	}
+
+	private void statements(List<Ast.Stmt> statements)
+	{
+		for (Ast.Stmt statement : statements)
+		{
+			if (variables == null)
+			{
+				return;
+			}
+			visit(statement);
+		}
+	}
+
+	/**
+	 * Analyzes a loop with the given condition (or none, for {@code FOR}) to a
+	 * fixed point, leaving the variables as they are when the loop exits. Once
+	 * widening has reached a fixed point, one more iteration narrows the
+	 * widened bounds back to those the body can actually produce.
+	 */
+	private void loop(Ast.Expr condition, List<Ast.Stmt> statements)
+	{
+		if (variables == null)
+		{
+			return;
+		}
+
+		Map<Environment.Variable, Range> entry = variables;
+		Map<Environment.Variable, Range> head = entry;
+
+		for (int iteration = 0; ; iteration++)
+		{
+			iteration(condition, statements, head);
+
+			Map<Environment.Variable, Range> next = join(head, join(entry, variables));
+			if (iteration >= WIDENING_DELAY)
+			{
+				next = widen(head, next);
+			}
+			if (same(next, head))
+			{
+				break;
+			}
+			head = next;
+		}
+
+		if (iteration(condition, statements, head) != null)
+		{
+			Map<Environment.Variable, Range> narrowed = join(entry, variables);
+			if (narrowed.size() == head.size())
+			{
+				head = narrowed;
+			}
+		}
+
+		variables = condition != null ? refine(head, condition, false) : head;
+	}
+
+	/**
+	 * Analyzes a single iteration of a loop starting from {@code head}, which
+	 * also records the annotations for that iteration, and returns the
+	 * variables at the end of the body.
+	 */
+	private Map<Environment.Variable, Range> iteration(Ast.Expr condition, List<Ast.Stmt> statements, Map<Environment.Variable, Range> head)
+	{
+		variables = new IdentityHashMap<>(head);
+		if (condition != null)
+		{
+			visit(condition);
+			variables = refine(head, condition, true);
+		}
+		statements(statements);
+		return variables;
+	}
+
+	/**
+	 * Returns the variables narrowed by the knowledge that {@code condition}
+	 * evaluated to {@code value}, or null if that is impossible.
+	 */
+	private Map<Environment.Variable, Range> refine(Map<Environment.Variable, Range> variables, Ast.Expr condition, boolean value)
+	{
+		if (variables == null)
+		{
+			return null;
+		}
+		variables = new IdentityHashMap<>(variables);
+
+		while (condition instanceof Ast.Expr.Group)
+		{
+			condition = ((Ast.Expr.Group) condition).getExpression();
+		}
+
+		if (condition instanceof Ast.Expr.Literal && condition.getType() == Environment.Type.BOOLEAN)
+		{
+			return ((Ast.Expr.Literal) condition).getLiteral().equals(value) ? variables : null;
+		}
+		else if (!(condition instanceof Ast.Expr.Binary))
+		{
+			return variables;
+		}
+
+		Ast.Expr.Binary binary = (Ast.Expr.Binary) condition;
+		if ((binary.getOperator().equals("AND") && value) || (binary.getOperator().equals("OR") && !value))
+		{
+			return refine(refine(variables, binary.getLeft(), value), binary.getRight(), value);
+		}
+
+		String operator = value ? binary.getOperator() : negate(binary.getOperator());
+		if (operator == null)
+		{
+			return variables;
+		}
+
+		variables = narrow(variables, binary.getLeft(), operator, binary.getRight());
+		return variables == null ? null : narrow(variables, binary.getRight(), mirror(operator), binary.getLeft());
+	}
+
+	/**
+	 * Narrows the range of {@code left}, if it is a tracked variable, by the
+	 * knowledge that {@code left operator right} holds.
+	 */
+	private Map<Environment.Variable, Range> narrow(Map<Environment.Variable, Range> variables, Ast.Expr left, String operator, Ast.Expr right)
+	{
+		if (!(left instanceof Ast.Expr.Access) || ((Ast.Expr.Access) left).getReceiver().isPresent() || left.getType() != Environment.Type.INTEGER)
+		{
+			return variables;
+		}
+
+		Range bound = bound(variables, right);
+		if (bound == null)
+		{
+			return variables;
+		}
+
+		Environment.Variable variable = ((Ast.Expr.Access) left).getVariable();
+		Range range = variables.getOrDefault(variable, Range.UNBOUNDED);
+
+		switch (operator)
+		{
+			case "<":
+				range = new Range(range.min, Math.min(range.max, Range.add(bound.max, -1, true)));
+				break;
+			case "<=":
+				range = new Range(range.min, Math.min(range.max, bound.max));
+				break;
+			case ">":
+				range = new Range(Math.max(range.min, Range.add(bound.min, 1, false)), range.max);
+				break;
+			case ">=":
+				range = new Range(Math.max(range.min, bound.min), range.max);
+				break;
+			case "==":
+				range = new Range(Math.max(range.min, bound.min), Math.min(range.max, bound.max));
+				break;
+			default:
+				return variables;
+		}
+
+		if (range.min > range.max)
+		{
+			return null;
+		}
+
+		variables.put(variable, range);
+		return variables;
+	}
+
+	/**
+	 * Returns the range of a literal or variable used as a bound in a
+	 * condition, without annotating anything.
+	 */
+	private static Range bound(Map<Environment.Variable, Range> variables, Ast.Expr expression)
+	{
+		if (expression instanceof Ast.Expr.Literal && ((Ast.Expr.Literal) expression).getLiteral() instanceof BigInteger)
+		{
+			return Range.of((BigInteger) ((Ast.Expr.Literal) expression).getLiteral());
+		}
+		else if (expression instanceof Ast.Expr.Access && !((Ast.Expr.Access) expression).getReceiver().isPresent() && expression.getType() == Environment.Type.INTEGER)
+		{
+			return variables.getOrDefault(((Ast.Expr.Access) expression).getVariable(), Range.UNBOUNDED);
+		}
+		return null;
+	}
+
+	private static String negate(String operator)
+	{
+		switch (operator)
+		{
+			case "<":
+				return ">=";
+			case "<=":
+				return ">";
+			case ">":
+				return "<=";
+			case ">=":
+				return "<";
+			case "==":
+				return "!=";
+			case "!=":
+				return "==";
+			default:
+				return null;
+		}
+	}
+
+	private static String mirror(String operator)
+	{
+		switch (operator)
+		{
+			case "<":
+				return ">";
+			case "<=":
+				return ">=";
+			case ">":
+				return "<";
+			case ">=":
+				return "<=";
+			default:
+				return operator;
+		}
+	}
+
+	/**
+	 * Returns the ranges that hold after either of two paths, where a null map
+	 * is an unreachable path and an untracked variable can be any value.
+	 */
+	private static Map<Environment.Variable, Range> join(Map<Environment.Variable, Range> first, Map<Environment.Variable, Range> second)
+	{
+		if (first == null || second == null)
+		{
+			return first == null ? second : first;
+		}
+
+		Map<Environment.Variable, Range> joined = new IdentityHashMap<>();
+		for (Map.Entry<Environment.Variable, Range> entry : first.entrySet())
+		{
+			Range other = second.get(entry.getKey());
+			if (other != null)
+			{
+				joined.put(entry.getKey(), new Range(Math.min(entry.getValue().min, other.min), Math.max(entry.getValue().max, other.max)));
+			}
+		}
+		return joined;
+	}
+
+	/**
+	 * Compares two sets of ranges by value, as {@link IdentityHashMap#equals}
+	 * compares the ranges by identity.
+	 */
+	private static boolean same(Map<Environment.Variable, Range> first, Map<Environment.Variable, Range> second)
+	{
+		if (first.size() != second.size())
+		{
+			return false;
+		}
+		for (Map.Entry<Environment.Variable, Range> entry : first.entrySet())
+		{
+			if (!entry.getValue().equals(second.get(entry.getKey())))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Map<Environment.Variable, Range> widen(Map<Environment.Variable, Range> previous, Map<Environment.Variable, Range> next)
+	{
+		Map<Environment.Variable, Range> widened = new IdentityHashMap<>();
+		for (Map.Entry<Environment.Variable, Range> entry : next.entrySet())
+		{
+			Range old = previous.get(entry.getKey());
+			Range range = entry.getValue();
+			if (old != null)
+			{
+				long min = range.min < old.min ? (old.min > Integer.MIN_VALUE ? Integer.MIN_VALUE : Long.MIN_VALUE) : range.min;
+				long max = range.max > old.max ? (old.max < Integer.MAX_VALUE ? Integer.MAX_VALUE : Long.MAX_VALUE) : range.max;
+				range = new Range(Math.min(min, range.min), Math.max(max, range.max));
+			}
+			widened.put(entry.getKey(), range);
+		}
+		return widened;
+	}
+
+	/**
+	 * Sets the annotations of the binary expressions visited since the last
+	 * call, which are only safe if they were safe on every visit.
+	 */
+	private void annotate()
+	{
+		results.forEach(Ast.Expr.Binary::setOverflowSafe);
+		results.clear();
+	}
+
+	/**
+	 * An inclusive range of integers, where a bound of {@link Long#MIN_VALUE}
+	 * or {@link Long#MAX_VALUE} is unbounded in that direction. Arithmetic
+	 * keeps unbounded bounds unbounded (other than multiplying by zero), and
+	 * bounds that overflow saturate to unbounded.
+	 */
+	public static final class Range
+	{
+
+		static final Range UNBOUNDED = new Range(Long.MIN_VALUE, Long.MAX_VALUE);
+
+		private final long min;
+		private final long max;
+
+		public Range(long min, long max)
+		{
+			this.min = min;
+			this.max = max;
+		}
+
+		public long getMin()
+		{
+			return min;
+		}
+
+		public long getMax()
+		{
+			return max;
+		}
+
+		/**
+		 * Returns true if every value in this range fits in an {@code int}.
+		 */
+		public boolean isInt()
+		{
+			return min >= Integer.MIN_VALUE && max <= Integer.MAX_VALUE;
+		}
+
+		static Range of(BigInteger value)
+		{
+			long clamped = value.bitLength() < 64 ? value.longValue() : (value.signum() < 0 ? Long.MIN_VALUE : Long.MAX_VALUE);
+			return new Range(clamped, clamped);
+		}
+
+		/**
+		 * Adds two bounds, where adding unbounded bounds of opposite signs is
+		 * unbounded in the direction of the bound being computed.
+		 */
+		static long add(long left, long right, boolean upper)
+		{
+			boolean negative = left == Long.MIN_VALUE || right == Long.MIN_VALUE;
+			boolean positive = left == Long.MAX_VALUE || right == Long.MAX_VALUE;
+			if (negative || positive)
+			{
+				return negative && positive ? (upper ? Long.MAX_VALUE : Long.MIN_VALUE) : negative ? Long.MIN_VALUE : Long.MAX_VALUE;
+			}
+
+			long result = left + right;
+			if (((left ^ result) & (right ^ result)) < 0)
+			{
+				return left < 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+			}
+			return result;
+		}
+
+		static long negate(long value)
+		{
+			return value == Long.MIN_VALUE ? Long.MAX_VALUE : value == Long.MAX_VALUE ? Long.MIN_VALUE : -value;
+		}
+
+		static long multiply(long left, long right)
+		{
+			if (left == 0 || right == 0)
+			{
+				return 0;
+			}
+			if (isUnbounded(left) || isUnbounded(right))
+			{
+				return (left < 0) == (right < 0) ? Long.MAX_VALUE : Long.MIN_VALUE;
+			}
+			long high = Math.multiplyHigh(left, right);
+			long low = left * right;
+			if ((high == 0 && low >= 0) || (high == -1 && low < 0))
+			{
+				return low;
+			}
+			return (left < 0) == (right < 0) ? Long.MAX_VALUE : Long.MIN_VALUE;
+		}
+
+		static Range multiply(Range left, Range right)
+		{
+			long a = multiply(left.min, right.min);
+			long b = multiply(left.min, right.max);
+			long c = multiply(left.max, right.min);
+			long d = multiply(left.max, right.max);
+			return new Range(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)));
+		}
+
+		/**
+		 * Returns the range of truncating division, ignoring a divisor of zero
+		 * as that is an error rather than an overflow.
+		 */
+		static Range divide(Range left, Range right)
+		{
+			List<Long> divisors = new ArrayList<>();
+			if (right.min <= -1)
+			{
+				divisors.add(right.min);
+				divisors.add(Math.min(right.max, -1));
+			}
+			if (right.max >= 1)
+			{
+				divisors.add(Math.max(right.min, 1));
+				divisors.add(right.max);
+			}
+			if (divisors.isEmpty())
+			{
+				return new Range(0, 0);
+			}
+
+			long min = Long.MAX_VALUE;
+			long max = Long.MIN_VALUE;
+			for (long divisor : divisors)
+			{
+				for (long dividend : new long[]{left.min, left.max})
+				{
+					long quotient;
+					if (isUnbounded(dividend))
+					{
+						quotient = (dividend < 0) == (divisor < 0) ? Long.MAX_VALUE : Long.MIN_VALUE;
+					}
+					else
+					{
+						quotient = isUnbounded(divisor) ? 0 : dividend / divisor;
+					}
+					min = Math.min(min, quotient);
+					max = Math.max(max, quotient);
+				}
+			}
+			return new Range(min, max);
+		}
+
+		private static boolean isUnbounded(long bound)
+		{
+			return bound == Long.MIN_VALUE || bound == Long.MAX_VALUE;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			return obj instanceof Range &&
+					min == ((Range) obj).min &&
+					max == ((Range) obj).max;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Long.hashCode(min) * 31 + Long.hashCode(max);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Range{" +
+					"min=" + min +
+					", max=" + max +
+					'}';
+		}
+
+	}
+
+}
@@ -0,0 +1,93 @@
+package plc.project;
+
+/**
+ * A string built by concatenation, which the {@link Interpreter} uses for
+ * long results of {@code +} so that building a string in a loop ({@code s =
+ * s + x;}) takes amortized constant time per concatenation instead of copying
+ * the whole string every time.
+ * <p>
+ * A rope is a prefix of a builder that may be shared with longer ropes. The
+ * newest rope of a builder appends to it in place, while older ropes (which
+ * are still valid, as they only see their prefix) copy their prefix into a
+ * new builder first. The flat {@link String} is only created when it's
+ * needed, such as for comparisons, printing or method calls, and is cached.
+ */
+final class Rope
+{
+
+	/**
+	 * The length from which concatenations create ropes, below which copying
+	 * is cheaper than creating a builder.
+	 */
+	static final int THRESHOLD = 1024;
+
+	private final StringBuilder builder;
+	private final int length;
+	private String string;
+
+	private Rope(StringBuilder builder, int length)
+	{
+		this.builder = builder;
+		this.length = length;
+	}
+
+	/**
+	 * Returns the concatenation of a string or rope and a string, which is a
+	 * rope if the left side is one or the result is long enough.
+	 */
+	static Object concat(Object left, String right)
+	{
+		if (left instanceof Rope)
+		{
+			return ((Rope) left).append(right);
+		}
+
+		String string = (String) left;
+		int length = string.length() + right.length();
+		if (length < THRESHOLD)
+		{
+			return string.concat(right);
+		}
+
+		StringBuilder builder = new StringBuilder(2 * length);
+		builder.append(string).append(right);
+		return new Rope(builder, length);
+	}
+
+	private Rope append(String suffix)
+	{
+		StringBuilder builder = this.builder;
+		synchronized (builder)
+		{
+			if (builder.length() == length)
+			{
+				builder.append(suffix);
+				return new Rope(builder, builder.length());
+			}
+		}
+
+		StringBuilder copy = new StringBuilder(2 * (length + suffix.length()));
+		synchronized (builder)
+		{
+			copy.append(builder, 0, length);
+		}
+		copy.append(suffix);
+		return new Rope(copy, copy.length());
+	}
+
+	@Override
+	public String toString()
+	{
+		String string = this.string;
+		if (string == null)
+		{
+			synchronized (builder)
+			{
+				string = builder.substring(0, length);
+			}
+			this.string = string;
+		}
+		return string;
+	}
+
+}
@@ -1,42 +1,108 @@
 package plc.project;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
+/**
+ * A scope of variables and functions, with a parent scope that is searched
+ * for anything not defined in this scope.
+ * <p>
+ * A concurrent scope may be used by multiple threads at once, such as the
+ * globals shared by interpreters running on different threads. Definitions
+ * are atomic (if two threads define the same name, exactly one of them
+ * fails) and visible to every thread once they complete, and the values of
+ * {@link Environment.Variable}s are always published safely. Updates that
+ * read a variable and then assign it, such as {@code x = x + 1}, are not
+ * atomic. Only the maps of this scope are concurrent, so its parent should
+ * either be concurrent as well or not be modified while it is shared.
+ */
 public final class Scope {
 
+    /**
+     * Counts the changes to the functions of scopes marked by {@link
+     * #markTypeScope()}, which method tables are built at so that they can
+     * tell when they are stale.
+     */
+    private static final AtomicInteger TYPE_FUNCTIONS = new AtomicInteger();
+
     private final Scope parent;
-    private final Map<String, Environment.Variable> variables = new HashMap<>();
-    private final Map<String, Environment.Function> functions = new HashMap<>();
+    private final boolean concurrent;
+    private final Map<String, Environment.Variable> variables;
+    /**
+     * Functions by name, then indexed by arity, so lookups don't need to build
+     * a {@code name/arity} key (or allocate at all). Arrays are replaced
+     * rather than modified once they are in the map.
+     */
+    private final Map<String, Environment.Function[]> functions;
+
+    /**
+     * The persistent scope this scope was forked from, if any, whose
+     * definitions are copied into this scope as they are looked up.
+     */
+    private final PersistentScope base;
+    private final UnaryOperator<Environment.Function> binder;
+    private volatile boolean typeScope = false;
 
     public Scope(Scope parent) {
+        this(parent, false);
+    }
+
+    public Scope(Scope parent, boolean concurrent) {
         this.parent = parent;
+        this.concurrent = concurrent;
+        this.variables = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
+        this.functions = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
+        this.base = null;
+        this.binder = null;
+    }
+
+    Scope(PersistentScope base, UnaryOperator<Environment.Function> binder) {
+        this.parent = base.getParent();
+        this.concurrent = false;
+        this.variables = new HashMap<>();
+        this.functions = new HashMap<>();
+        this.base = base;
+        this.binder = binder;
     }
 
     public Scope getParent() {
         return parent;
     }
 
+    public boolean isConcurrent() {
+        return concurrent;
+    }
+
     public void defineVariable(String name, Environment.PlcObject value) {
         defineVariable(name, name, Environment.Type.ANY, value);
     }
 
     public Environment.Variable defineVariable(String name, String jvmName, Environment.Type type, Environment.PlcObject value) {
-        if (variables.containsKey(name)) {
+        Environment.Variable variable = new Environment.Variable(name, jvmName, type, value);
+        if ((base != null && base.getVariable(name) != null) || variables.putIfAbsent(name, variable) != null) {
             throw new RuntimeException("The variable " + name + " is already defined in this scope.");
-        } else {
-            Environment.Variable variable = new Environment.Variable(name, jvmName, type, value);
-            variables.put(variable.getName(), variable);
-            return variables.get(name);
         }
+        return variable;
     }
 
     public Environment.Variable lookupVariable(String name) {
-        if (variables.containsKey(name)) {
-            return variables.get(name);
+        Environment.Variable variable = variables.get(name);
+        if (variable != null) {
+            return variable;
+        } else if (base != null && base.getVariable(name) != null) {
+            Environment.Variable original = base.getVariable(name);
+            variable = new Environment.Variable(name, original.getJvmName(), original.getType(), original.getValue());
+            variables.put(name, variable);
+            return variable;
         } else if (parent != null) {
             return parent.lookupVariable(name);
         } else {
@@ -52,19 +118,75 @@ public final class Scope {
         defineFunction(name, name, parameterTypes, Environment.Type.ANY, function);
     }
 
+    public void defineFunction(String name, int arity, Invoker function) {
+        defineFunction(name, name, new ArrayList<>(Collections.nCopies(arity, Environment.Type.ANY)), Environment.Type.ANY, function);
+    }
+
     public Environment.Function defineFunction(String name, String jvmName, List<Environment.Type> parameterTypes, Environment.Type returnType, java.util.function.Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
-        if (functions.containsKey(name + "/" + parameterTypes.size())) {
+        return defineFunction(name, jvmName, parameterTypes, returnType, Invoker.ofList(function));
+    }
+
+    /**
+     * Defines a function whose implementation takes its arguments directly,
+     * see {@link Invoker}.
+     */
+    public Environment.Function defineFunction(String name, String jvmName, List<Environment.Type> parameterTypes, Environment.Type returnType, Invoker function) {
+        if (base != null && base.getFunction(name, parameterTypes.size()) != null) {
             throw new RuntimeException("The function " + name + "/" + parameterTypes.size() + " is already defined in this scope.");
-        } else {
-            Environment.Function func = new Environment.Function(name, jvmName, parameterTypes, returnType, function);
-            functions.put(func.getName() + "/" + func.getParameterTypes().size(), func);
-            return func;
         }
+        Environment.Function func = new Environment.Function(name, jvmName, parameterTypes, returnType, function);
+        putFunction(func);
+        if (typeScope) {
+            TYPE_FUNCTIONS.incrementAndGet();
+        }
+        return func;
+    }
+
+    /**
+     * Marks this scope and its parents as scopes of a registered type, whose
+     * method table (see {@link Environment.Type#getMethod(int)}) is rebuilt
+     * once functions are defined in them.
+     */
+    void markTypeScope() {
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            scope.typeScope = true;
+        }
+    }
+
+    /**
+     * Returns the number of changes to the functions of scopes of registered
+     * types so far.
+     */
+    static int getTypeFunctions() {
+        return TYPE_FUNCTIONS.get();
+    }
+
+    /**
+     * Adds the function to this scope, atomically for a concurrent scope.
+     */
+    private void putFunction(Environment.Function function) {
+        int arity = function.getParameterTypes().size();
+        functions.compute(function.getName(), (name, overloads) -> {
+            if (overloads == null) {
+                overloads = new Environment.Function[arity + 1];
+            } else if (arity < overloads.length && overloads[arity] != null) {
+                throw new RuntimeException("The function " + name + "/" + arity + " is already defined in this scope.");
+            } else {
+                overloads = Arrays.copyOf(overloads, Math.max(overloads.length, arity + 1));
+            }
+            overloads[arity] = function;
+            return overloads;
+        });
     }
 
     public Environment.Function lookupFunction(String name, int arity) {
-        if (functions.containsKey(name + "/" + arity)) {
-            return functions.get(name + "/" + arity);
+        Environment.Function[] overloads = functions.get(name);
+        if (overloads != null && arity >= 0 && arity < overloads.length && overloads[arity] != null) {
+            return overloads[arity];
+        } else if (base != null && base.getFunction(name, arity) != null) {
+            Environment.Function function = binder.apply(base.getFunction(name, arity));
+            putFunction(function);
+            return function;
         } else if (parent != null) {
             return parent.lookupFunction(name, arity);
         } else {
@@ -72,12 +194,60 @@ public final class Scope {
         }
     }
 
+    /**
+     * Removes every variable and function defined directly in this scope,
+     * allowing it to be reused.
+     */
+    void clear() {
+        variables.clear();
+        functions.clear();
+        if (typeScope) {
+            TYPE_FUNCTIONS.incrementAndGet();
+        }
+    }
+
+    /**
+     * Calls {@code action} with every variable defined directly in this scope,
+     * excluding its parents (and, for a fork, variables that haven't been
+     * copied yet).
+     */
+    void forEachVariable(Consumer<Environment.Variable> action) {
+        variables.values().forEach(action);
+    }
+
+    /**
+     * Calls {@code action} with every function defined directly in this scope,
+     * excluding its parents (and, for a fork, functions that haven't been
+     * bound yet).
+     */
+    void forEachFunction(Consumer<Environment.Function> action) {
+        functions.values().forEach(overloads -> {
+            for (Environment.Function function : overloads) {
+                if (function != null) {
+                    action.accept(function);
+                }
+            }
+        });
+    }
+
+    private List<String> functionKeys() {
+        List<String> keys = new ArrayList<>();
+        functions.forEach((name, overloads) -> {
+            for (int arity = 0; arity < overloads.length; arity++) {
+                if (overloads[arity] != null) {
+                    keys.add(name + "/" + arity);
+                }
+            }
+        });
+        return keys;
+    }
+
     @Override
     public String toString() {
         return "Scope{" +
                 "parent=" + parent +
                 ", variables=" + variables.keySet() +
-                ", functions=" + functions.keySet() +
+                ", functions=" + functionKeys() +
                 '}';
     }
 
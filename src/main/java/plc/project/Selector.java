@@ -0,0 +1,76 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns method selectors, a name and an arity (including the receiver), as
+ * dense ids that index the method tables of {@link Environment.Type}s. The
+ * same selector always has the same id, and ids are never reused.
+ * <p>
+ * Looking up the id of a selector that has been interned before doesn't
+ * allocate or lock, so it's cheap enough to do for every call.
+ */
+public final class Selector
+{
+
+	/**
+	 * Ids by name and arity, offset by one so that 0 is an absent arity.
+	 * Arrays are replaced rather than modified once they have been published.
+	 */
+	private static final ConcurrentHashMap<String, int[]> IDS = new ConcurrentHashMap<>();
+	private static final List<String> NAMES = new ArrayList<>();
+	private static final List<Integer> ARITIES = new ArrayList<>();
+
+	private Selector()
+	{
+	}
+
+	public static int of(String name, int arity)
+	{
+		int[] ids = IDS.get(name);
+		if (ids != null && arity < ids.length && ids[arity] != 0)
+		{
+			return ids[arity] - 1;
+		}
+		return intern(name, arity);
+	}
+
+	private static synchronized int intern(String name, int arity)
+	{
+		int[] ids = IDS.getOrDefault(name, new int[0]);
+		if (arity < ids.length && ids[arity] != 0)
+		{
+			return ids[arity] - 1;
+		}
+
+		ids = Arrays.copyOf(ids, Math.max(ids.length, arity + 1));
+		NAMES.add(name);
+		ARITIES.add(arity);
+		ids[arity] = NAMES.size();
+		IDS.put(name, ids);
+		return ids[arity] - 1;
+	}
+
+	/**
+	 * Returns the number of selectors interned so far, which is one more than
+	 * the largest id.
+	 */
+	public static synchronized int count()
+	{
+		return NAMES.size();
+	}
+
+	public static synchronized String getName(int selector)
+	{
+		return NAMES.get(selector);
+	}
+
+	public static synchronized int getArity(int selector)
+	{
+		return ARITIES.get(selector);
+	}
+
+}
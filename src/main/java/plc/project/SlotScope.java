@@ -0,0 +1,69 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * A scope whose variables are stored in an array and addressed by the
+ * (depth, slot) pairs the {@link Analyzer} resolves for every variable, so
+ * that looking up a variable neither hashes its name nor walks a chain of
+ * {@link Scope}s.
+ * <p>
+ * Every call of an analyzed method has its own frame for its parameters and
+ * locals, whose parent is the frame of the fields. Variables declared in
+ * different blocks of a method may share a slot if their blocks don't
+ * overlap.
+ */
+public final class SlotScope
+{
+
+	private final SlotScope parent;
+	private Environment.Variable[] slots;
+
+	public SlotScope(SlotScope parent, int size)
+	{
+		this.parent = parent;
+		this.slots = new Environment.Variable[size];
+	}
+
+	public SlotScope getParent()
+	{
+		return parent;
+	}
+
+	/**
+	 * Defines the variable in the given slot of this frame, replacing any
+	 * variable previously in that slot and growing the frame if needed.
+	 */
+	public void define(int slot, Environment.Variable variable)
+	{
+		if (slot >= slots.length)
+		{
+			slots = Arrays.copyOf(slots, Math.max(slot + 1, slots.length * 2));
+		}
+		slots[slot] = variable;
+	}
+
+	/**
+	 * Returns the variable in the given slot of the frame {@code depth}
+	 * parents up, or null if that slot hasn't been defined.
+	 */
+	public Environment.Variable lookup(int depth, int slot)
+	{
+		SlotScope scope = this;
+		for (int i = 0; i < depth; i++)
+		{
+			scope = scope.parent;
+		}
+		return slot < scope.slots.length ? scope.slots[slot] : null;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "SlotScope{" +
+				"parent=" + parent +
+				", size=" + slots.length +
+				'}';
+	}
+
+}
@@ -0,0 +1,345 @@
+package plc.project;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiles the {@code Main} class emitted by the {@link Generator} with the
+ * system Java compiler in this process, keeping the source and class files in
+ * memory, and loads it with a class loader of its own.
+ * <p>
+ * Compiled class files are cached in a directory, under the SHA-256 hash of
+ * the source and the version of Java, so that running an unchanged program
+ * again loads the cached classes without compiling.
+ * <p>
+ * This is not an equivalent of the {@link Interpreter}, as the generated code
+ * follows the semantics of Java rather than those of the language. Integers
+ * are {@code int}s which wrap on overflow (multiplying 3 by 1000000 twice is
+ * 2112827392 rather than 3000000000000), and Decimals are {@code double}s
+ * (so {@code 1.0 / 3.0} is 0.3333333333333333 rather than 0.3). Programs are
+ * only run the same way as by the Interpreter if their Integers stay within
+ * the range of an {@code int} and they don't divide Decimals. Sources the
+ * {@link Generator} can't emit, such as method calls with arguments on a
+ * built-in type like {@code "hello".at(1)} or ranges used other than as the
+ * value of a FOR loop, are rejected.
+ */
+public final class SourceCompiler
+{
+
+	private static final String CLASS_NAME = "Main";
+
+	private final Path cache;
+	private int compilations = 0;
+	private int cacheHits = 0;
+
+	/**
+	 * Creates a compiler caching class files in the given directory, which
+	 * is created when needed.
+	 */
+	public SourceCompiler(Path cache)
+	{
+		this.cache = cache;
+	}
+
+	/**
+	 * Returns the number of sources compiled by javac, rather than loaded
+	 * from the cache.
+	 */
+	public int getCompilations()
+	{
+		return compilations;
+	}
+
+	public int getCacheHits()
+	{
+		return cacheHits;
+	}
+
+	/**
+	 * Returns the Java source generated for an analyzed source, throwing if
+	 * the {@link Generator} can't emit part of it.
+	 */
+	public static String generate(Ast.Source ast)
+	{
+		StringWriter writer = new StringWriter();
+		PrintWriter printer = new PrintWriter(writer);
+		try
+		{
+			new Generator(printer).visit(ast);
+		}
+		catch (RuntimeException e)
+		{
+			throw new RuntimeException("Unable to generate Java for the source: " + e.getMessage(), e);
+		}
+		printer.flush();
+		return writer.toString();
+	}
+
+	/**
+	 * Generates, compiles, and runs an analyzed source, returning the result
+	 * of {@code main} (which the generated class would pass to {@code
+	 * System.exit}).
+	 */
+	public int run(Ast.Source ast)
+	{
+		Class<?> type = load(generate(ast));
+		try
+		{
+			Method main = type.getDeclaredMethod("main");
+			main.setAccessible(true);
+			Object instance = type.getDeclaredConstructor().newInstance();
+			return (Integer) main.invoke(instance);
+		}
+		catch (InvocationTargetException e)
+		{
+			if (e.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new RuntimeException("Unable to run the generated class.", e);
+		}
+	}
+
+	/**
+	 * Returns the {@code Main} class of a generated source, compiling it only
+	 * if it isn't in the cache.
+	 */
+	public Class<?> load(String source)
+	{
+		Path directory = cache.resolve(hash(source));
+		Map<String, byte[]> classes = read(directory);
+		if (classes != null)
+		{
+			cacheHits++;
+		}
+		else
+		{
+			classes = compile(source);
+			compilations++;
+			write(directory, classes);
+		}
+
+		try
+		{
+			return new MemoryClassLoader(classes).loadClass(CLASS_NAME);
+		}
+		catch (ClassNotFoundException e)
+		{
+			throw new RuntimeException("The generated source doesn't declare " + CLASS_NAME + ".", e);
+		}
+	}
+
+	/**
+	 * Compiles a source with javac, returning the class files by binary name.
+	 */
+	private static Map<String, byte[]> compile(String source)
+	{
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null)
+		{
+			throw new RuntimeException("No Java compiler is available, which requires running on a JDK.");
+		}
+
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+		Map<String, ByteArrayOutputStream> outputs = new HashMap<>();
+		try (MemoryFileManager files = new MemoryFileManager(compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8), outputs))
+		{
+			JavaFileObject input = new SimpleJavaFileObject(URI.create("string:///" + CLASS_NAME + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE)
+			{
+				@Override
+				public CharSequence getCharContent(boolean ignoreEncodingErrors)
+				{
+					return source;
+				}
+			};
+			if (!compiler.getTask(null, files, diagnostics, null, null, Collections.singletonList(input)).call())
+			{
+				StringBuilder message = new StringBuilder("Unable to compile the generated source:");
+				for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics())
+				{
+					message.append(System.lineSeparator()).append(CLASS_NAME).append(".java:").append(diagnostic.getLineNumber()).append(": ").append(diagnostic.getMessage(null));
+				}
+				throw new RuntimeException(message.toString());
+			}
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+
+		Map<String, byte[]> classes = new HashMap<>();
+		outputs.forEach((name, output) -> classes.put(name, output.toByteArray()));
+		return classes;
+	}
+
+	/**
+	 * Reads the class files cached in a directory, or returns null if it
+	 * doesn't exist.
+	 */
+	private static Map<String, byte[]> read(Path directory)
+	{
+		if (!Files.isDirectory(directory))
+		{
+			return null;
+		}
+		Map<String, byte[]> classes = new HashMap<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.class"))
+		{
+			for (Path file : files)
+			{
+				String name = file.getFileName().toString();
+				classes.put(name.substring(0, name.length() - ".class".length()), Files.readAllBytes(file));
+			}
+		}
+		catch (IOException e)
+		{
+			return null;
+		}
+		return classes.containsKey(CLASS_NAME) ? classes : null;
+	}
+
+	/**
+	 * Caches class files in a directory, which is written under a temporary
+	 * name and then moved so that concurrent runs never see part of it. A
+	 * failure to cache is ignored, as it only costs compiling again.
+	 */
+	private static void write(Path directory, Map<String, byte[]> classes)
+	{
+		try
+		{
+			Files.createDirectories(directory.getParent());
+			Path temporary = Files.createTempDirectory(directory.getParent(), directory.getFileName() + ".");
+			for (Map.Entry<String, byte[]> entry : classes.entrySet())
+			{
+				Files.write(temporary.resolve(entry.getKey() + ".class"), entry.getValue());
+			}
+			try
+			{
+				Files.move(temporary, directory, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (FileAlreadyExistsException | AtomicMoveNotSupportedException e)
+			{
+				for (String name : classes.keySet())
+				{
+					Files.deleteIfExists(temporary.resolve(name + ".class"));
+				}
+				Files.deleteIfExists(temporary);
+			}
+		}
+		catch (IOException ignored)
+		{
+		}
+	}
+
+	private static String hash(String source)
+	{
+		try
+		{
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(Runtime.version().toString().getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			StringBuilder builder = new StringBuilder();
+			for (byte b : digest.digest(source.getBytes(StandardCharsets.UTF_8)))
+			{
+				builder.append(String.format("%02x", b));
+			}
+			return builder.toString();
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Keeps the class files written by javac in memory.
+	 */
+	private static final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager>
+	{
+
+		private final Map<String, ByteArrayOutputStream> outputs;
+
+		private MemoryFileManager(StandardJavaFileManager files, Map<String, ByteArrayOutputStream> outputs)
+		{
+			super(files);
+			this.outputs = outputs;
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling)
+		{
+			return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind)
+			{
+				@Override
+				public OutputStream openOutputStream()
+				{
+					ByteArrayOutputStream output = new ByteArrayOutputStream();
+					outputs.put(className, output);
+					return output;
+				}
+			};
+		}
+
+	}
+
+	/**
+	 * Defines the classes of one compiled source, delegating others to the
+	 * loader of this class.
+	 */
+	private static final class MemoryClassLoader extends ClassLoader
+	{
+
+		private final Map<String, byte[]> classes;
+
+		private MemoryClassLoader(Map<String, byte[]> classes)
+		{
+			super(SourceCompiler.class.getClassLoader());
+			this.classes = classes;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException
+		{
+			byte[] bytes = classes.get(name);
+			if (bytes == null)
+			{
+				throw new ClassNotFoundException(name);
+			}
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+
+	}
+
+}
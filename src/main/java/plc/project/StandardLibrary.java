@@ -0,0 +1,384 @@
+package plc.project;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The methods of the built-in types and the global functions available to
+ * every program, each implemented by the JVM member named by its jvmName
+ * (which is also what the {@link Generator} emits for it).
+ * <p>
+ * Members are resolved to {@link MethodHandle}s once, when they are defined,
+ * and adapted to take and return {@link Environment.PlcObject}s: Integers are
+ * converted to {@code int}s or {@code long}s (failing if they don't fit),
+ * Decimals to {@code double}s, and other values are unboxed and cast to the
+ * parameter type. Calls then go through {@link MethodHandle#invokeExact} with
+ * no reflection or lookups.
+ */
+public final class StandardLibrary
+{
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodHandle GET_VALUE;
+	private static final MethodHandle CREATE;
+	private static final MethodHandle CREATE_BOOLEAN;
+	private static final MethodHandle CREATE_INTEGER;
+
+	static
+	{
+		try
+		{
+			GET_VALUE = LOOKUP.findVirtual(Environment.PlcObject.class, "getValue", MethodType.methodType(Object.class));
+			CREATE = LOOKUP.findStatic(Environment.class, "create", MethodType.methodType(Environment.PlcObject.class, Object.class));
+			CREATE_BOOLEAN = LOOKUP.findStatic(Environment.class, "create", MethodType.methodType(Environment.PlcObject.class, boolean.class));
+			CREATE_INTEGER = LOOKUP.findStatic(Environment.class, "createInteger", MethodType.methodType(Environment.PlcObject.class, long.class));
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private StandardLibrary()
+	{
+	}
+
+	/**
+	 * Defines the methods (and the fields, which are read through methods of
+	 * the same name) of the built-in types. Called once by {@link Environment}
+	 * before the built-in types are registered.
+	 */
+	static void defineMethods()
+	{
+		Environment.Type any = Environment.Type.ANY;
+
+		method(any, "stringify", "toString", Arrays.asList(any), Environment.Type.STRING, Object.class, String.class);
+		method(Environment.Type.COMPARABLE, "compare", "compareTo", Arrays.asList(any, Environment.Type.COMPARABLE), Environment.Type.INTEGER, Comparable.class, int.class, Object.class);
+		method(Environment.Type.INTEGER, "compare", "compareTo", Arrays.asList(any, Environment.Type.INTEGER), Environment.Type.INTEGER, BigInteger.class, int.class, BigInteger.class);
+		method(Environment.Type.DECIMAL, "compare", "compareTo", Arrays.asList(any, Environment.Type.DECIMAL), Environment.Type.INTEGER, BigDecimal.class, int.class, BigDecimal.class);
+		method(Environment.Type.CHARACTER, "compare", "compareTo", Arrays.asList(any, Environment.Type.CHARACTER), Environment.Type.INTEGER, Character.class, int.class, Character.class);
+
+		Environment.Type string = Environment.Type.STRING;
+		string.getScope().defineVariable("length", "length()", Environment.Type.INTEGER, Environment.NIL);
+		method(string, "length", "length", Arrays.asList(any), Environment.Type.INTEGER, String.class, int.class);
+		method(string, "compare", "compareTo", Arrays.asList(any, string), Environment.Type.INTEGER, String.class, int.class, String.class);
+		method(string, "slice", "substring", Arrays.asList(any, Environment.Type.INTEGER, Environment.Type.INTEGER), string, String.class, String.class, int.class, int.class);
+		method(string, "at", "charAt", Arrays.asList(any, Environment.Type.INTEGER), Environment.Type.CHARACTER, String.class, char.class, int.class);
+		method(string, "indexOf", "indexOf", Arrays.asList(any, string), Environment.Type.INTEGER, String.class, int.class, String.class);
+		method(string, "contains", "contains", Arrays.asList(any, string), Environment.Type.BOOLEAN, String.class, boolean.class, CharSequence.class);
+		method(string, "upper", "toUpperCase", Arrays.asList(any), string, String.class, String.class);
+		method(string, "lower", "toLowerCase", Arrays.asList(any), string, String.class, String.class);
+	}
+
+	/**
+	 * Returns a new scope defining the global functions for math and
+	 * conversions, which engines use as the parent of their globals so that
+	 * methods of a source with the same name shadow them.
+	 */
+	public static Scope createScope(Scope parent)
+	{
+		Scope scope = new Scope(parent);
+		defineFunctions(scope);
+		return scope;
+	}
+
+	private static void defineFunctions(Scope scope)
+	{
+		Environment.Type integer = Environment.Type.INTEGER;
+		Environment.Type decimal = Environment.Type.DECIMAL;
+
+		function(scope, "abs", "Math.abs", Arrays.asList(integer), integer, long.class, long.class);
+		function(scope, "min", "Math.min", Arrays.asList(integer, integer), integer, long.class, long.class, long.class);
+		function(scope, "max", "Math.max", Arrays.asList(integer, integer), integer, long.class, long.class, long.class);
+		function(scope, "sqrt", "Math.sqrt", Arrays.asList(decimal), decimal, double.class, double.class);
+		function(scope, "pow", "Math.pow", Arrays.asList(decimal, decimal), decimal, double.class, double.class, double.class);
+		function(scope, "parseInteger", "Integer.parseInt", Arrays.asList(Environment.Type.STRING), integer, int.class, String.class);
+		function(scope, "parseDecimal", "Double.parseDouble", Arrays.asList(Environment.Type.STRING), decimal, double.class, String.class);
+		range(scope, Arrays.asList(integer, integer), long.class, long.class);
+		range(scope, Arrays.asList(integer, integer, integer), long.class, long.class, long.class);
+	}
+
+	/**
+	 * Defines {@code range}, which creates an {@link IntegerRange}. Its
+	 * jvmName isn't a JVM member, as the {@link Generator} translates FOR
+	 * loops over ranges to counted loops instead.
+	 */
+	private static void range(Scope scope, List<Environment.Type> parameterTypes, Class<?>... jvmParameterTypes)
+	{
+		try
+		{
+			MethodHandle target = LOOKUP.findStatic(IntegerRange.class, "of", MethodType.methodType(IntegerRange.class, jvmParameterTypes));
+			scope.defineFunction("range", "range", parameterTypes, Environment.Type.INTEGER_ITERABLE, bind(target));
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new RuntimeException("Unable to bind IntegerRange.of.", e);
+		}
+	}
+
+	private static void method(Environment.Type type, String name, String jvmName, List<Environment.Type> parameterTypes, Environment.Type returnType, Class<?> receiver, Class<?> jvmReturnType, Class<?>... jvmParameterTypes)
+	{
+		try
+		{
+			MethodHandle target = LOOKUP.findVirtual(receiver, jvmName, MethodType.methodType(jvmReturnType, jvmParameterTypes));
+			type.getScope().defineFunction(name, jvmName, parameterTypes, returnType, bind(target));
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new RuntimeException("Unable to bind " + receiver.getSimpleName() + "." + jvmName + ".", e);
+		}
+	}
+
+	/**
+	 * Defines a function implemented by the static method named by {@code
+	 * jvmName}, which is qualified by its class (in {@code java.lang} unless
+	 * the class name has a package).
+	 */
+	private static void function(Scope scope, String name, String jvmName, List<Environment.Type> parameterTypes, Environment.Type returnType, Class<?> jvmReturnType, Class<?>... jvmParameterTypes)
+	{
+		int separator = jvmName.lastIndexOf('.');
+		String className = jvmName.substring(0, separator);
+		try
+		{
+			Class<?> owner = Class.forName(className.contains(".") ? className : "java.lang." + className);
+			MethodHandle target = LOOKUP.findStatic(owner, jvmName.substring(separator + 1), MethodType.methodType(jvmReturnType, jvmParameterTypes));
+			scope.defineFunction(name, jvmName, parameterTypes, returnType, bind(target));
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new RuntimeException("Unable to bind " + jvmName + ".", e);
+		}
+	}
+
+	/**
+	 * Adapts the method handle to an implementation of a function, which
+	 * takes the receiver (if any) followed by the arguments.
+	 */
+	public static Invoker bind(MethodHandle target)
+	{
+		MethodType type = target.type();
+		MethodHandle[] converters = new MethodHandle[type.parameterCount()];
+		for (int i = 0; i < converters.length; i++)
+		{
+			converters[i] = fromObject(type.parameterType(i));
+		}
+
+		MethodHandle handle = MethodHandles.filterArguments(target, 0, converters);
+		if (type.returnType() == void.class)
+		{
+			handle = MethodHandles.filterReturnValue(handle, MethodHandles.constant(Environment.PlcObject.class, Environment.NIL));
+		}
+		else
+		{
+			handle = MethodHandles.filterReturnValue(handle, toObject(type.returnType()));
+		}
+		return new Native(handle, handle.asSpreader(Environment.PlcObject[].class, converters.length));
+	}
+
+	/**
+	 * Returns a handle converting an object to the given JVM type, where other
+	 * types than numbers are unboxed (for {@code char} and {@code boolean})
+	 * or cast from the value.
+	 */
+	private static MethodHandle fromObject(Class<?> type)
+	{
+		String converter;
+		if (type == int.class)
+		{
+			converter = "toInt";
+		}
+		else if (type == long.class)
+		{
+			converter = "toLong";
+		}
+		else if (type == double.class)
+		{
+			converter = "toDouble";
+		}
+		else
+		{
+			return GET_VALUE.asType(MethodType.methodType(type, Environment.PlcObject.class));
+		}
+
+		try
+		{
+			return LOOKUP.findStatic(StandardLibrary.class, converter, MethodType.methodType(type, Environment.PlcObject.class));
+		}
+		catch (ReflectiveOperationException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns a handle converting a value of the given JVM type to an object.
+	 */
+	private static MethodHandle toObject(Class<?> type)
+	{
+		if (type == int.class || type == long.class)
+		{
+			return CREATE_INTEGER.asType(MethodType.methodType(Environment.PlcObject.class, type));
+		}
+		else if (type == boolean.class)
+		{
+			return CREATE_BOOLEAN;
+		}
+		else if (type == double.class)
+		{
+			try
+			{
+				return LOOKUP.findStatic(StandardLibrary.class, "fromDouble", MethodType.methodType(Environment.PlcObject.class, double.class));
+			}
+			catch (ReflectiveOperationException e)
+			{
+				throw new IllegalStateException(e);
+			}
+		}
+		return CREATE.asType(MethodType.methodType(Environment.PlcObject.class, type));
+	}
+
+	private static int toInt(Environment.PlcObject object)
+	{
+		return object.isLong() ? Math.toIntExact(object.getLong()) : ((BigInteger) object.getValue()).intValueExact();
+	}
+
+	private static long toLong(Environment.PlcObject object)
+	{
+		return object.isLong() ? object.getLong() : ((BigInteger) object.getValue()).longValueExact();
+	}
+
+	private static double toDouble(Environment.PlcObject object)
+	{
+		return ((BigDecimal) object.getValue()).doubleValue();
+	}
+
+	private static Environment.PlcObject fromDouble(double value)
+	{
+		return Environment.create(BigDecimal.valueOf(value));
+	}
+
+	/**
+	 * A function implemented by a method handle taking its arguments as
+	 * objects, which is invoked directly for calls with its arity and through
+	 * a spreader for calls with an array.
+	 */
+	private static final class Native extends Invoker
+	{
+
+		private final MethodHandle handle;
+		private final MethodHandle spreader;
+		private final int arity;
+
+		private Native(MethodHandle handle, MethodHandle spreader)
+		{
+			this.handle = handle;
+			this.spreader = spreader;
+			this.arity = handle.type().parameterCount();
+		}
+
+		@Override
+		public Environment.PlcObject invoke()
+		{
+			if (arity != 0)
+			{
+				return super.invoke();
+			}
+			try
+			{
+				return (Environment.PlcObject) handle.invokeExact();
+			}
+			catch (Throwable e)
+			{
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public Environment.PlcObject invoke(Environment.PlcObject first)
+		{
+			if (arity != 1)
+			{
+				return super.invoke(first);
+			}
+			try
+			{
+				return (Environment.PlcObject) handle.invokeExact(first);
+			}
+			catch (Throwable e)
+			{
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second)
+		{
+			if (arity != 2)
+			{
+				return super.invoke(first, second);
+			}
+			try
+			{
+				return (Environment.PlcObject) handle.invokeExact(first, second);
+			}
+			catch (Throwable e)
+			{
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third)
+		{
+			if (arity != 3)
+			{
+				return super.invoke(first, second, third);
+			}
+			try
+			{
+				return (Environment.PlcObject) handle.invokeExact(first, second, third);
+			}
+			catch (Throwable e)
+			{
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public Environment.PlcObject invoke(Environment.PlcObject[] arguments)
+		{
+			if (arguments.length != arity)
+			{
+				throw arityMismatch(arity, arguments.length);
+			}
+			try
+			{
+				return (Environment.PlcObject) spreader.invokeExact(arguments);
+			}
+			catch (Throwable e)
+			{
+				throw rethrow(e);
+			}
+		}
+
+		private static RuntimeException rethrow(Throwable e)
+		{
+			if (e instanceof RuntimeException)
+			{
+				return (RuntimeException) e;
+			}
+			else if (e instanceof Error)
+			{
+				throw (Error) e;
+			}
+			return new RuntimeException(e);
+		}
+
+	}
+
+}
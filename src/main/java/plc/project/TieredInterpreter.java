@@ -0,0 +1,541 @@
+package plc.project;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link Interpreter} which starts every method interpreted, and compiles
+ * methods that become hot to JVM bytecode with the {@link JvmCompiler}, so
+ * that short programs start immediately while long running ones end up in
+ * compiled code.
+ * <p>
+ * Every method has a {@link Profile} counting its interpreted calls and loop
+ * iterations (back-edges). Once their sum reaches the threshold, the method
+ * is compiled by the executor, which defaults to a background thread, and the
+ * implementation of its {@link Environment.Function} is then swapped to the
+ * compiled method atomically. Calls already being interpreted finish
+ * interpreted, and later calls (including those from compiled methods) run
+ * the compiled code.
+ * <p>
+ * WHILE loops are also counted by a {@link LoopProfile}, and once a loop
+ * reaches the threshold it is compiled on its own, so that a method which is
+ * only called once (such as {@code main}) can continue a long running loop in
+ * compiled code. After the next iteration once the loop is compiled, its
+ * locals are transferred to the compiled loop (on-stack replacement), which
+ * runs until the loop ends and copies them back, and the method continues in
+ * the interpreter.
+ */
+public final class TieredInterpreter extends Interpreter
+{
+
+	public static final int DEFAULT_THRESHOLD = 1000;
+
+	private static final ExecutorService COMPILER = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "plc-compiler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public enum Tier
+	{
+		INTERPRETED,
+		COMPILING,
+		COMPILED,
+		/**
+		 * The method couldn't be compiled, and stays interpreted.
+		 */
+		FAILED
+	}
+
+	private final Scope globals;
+	private final int threshold;
+	private final Executor executor;
+	private final Map<Ast.Method, Profile> profiles = new IdentityHashMap<>();
+	private final Map<Ast.Stmt.While, LoopProfile> loops = new IdentityHashMap<>();
+	private final AtomicInteger compilations = new AtomicInteger();
+
+	public TieredInterpreter(Scope parent)
+	{
+		this(parent, DEFAULT_THRESHOLD, COMPILER);
+	}
+
+	/**
+	 * Creates an interpreter compiling methods with the executor once their
+	 * calls and back-edges reach the threshold, where an executor running
+	 * tasks in the calling thread compiles them synchronously.
+	 */
+	public TieredInterpreter(Scope parent, int threshold, Executor executor)
+	{
+		super(parent);
+		if (threshold < 1)
+		{
+			throw new IllegalArgumentException("The threshold must be positive.");
+		}
+		this.globals = getScope();
+		this.threshold = threshold;
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns the profile of the method with the given name and arity.
+	 */
+	public Profile getProfile(String name, int arity)
+	{
+		for (Profile profile : profiles.values())
+		{
+			if (profile.method.getName().equals(name) && profile.method.getParameters().size() == arity)
+			{
+				return profile;
+			}
+		}
+		throw new RuntimeException("The function " + name + "/" + arity + " is not defined in this scope.");
+	}
+
+	public List<Profile> getProfiles()
+	{
+		return new ArrayList<>(profiles.values());
+	}
+
+	/**
+	 * Returns the profiles of the WHILE loops run so far.
+	 */
+	public List<LoopProfile> getLoopProfiles()
+	{
+		return new ArrayList<>(loops.values());
+	}
+
+	/**
+	 * Returns the number of methods and loops compiled successfully.
+	 */
+	public int getCompilations()
+	{
+		return compilations.get();
+	}
+
+	@Override
+	Invoker implement(Ast.Method ast, Invoker interpreted)
+	{
+		Profile profile = new Profile(ast);
+		profiles.put(ast, profile);
+		return new TieredInvoker(profile, interpreted);
+	}
+
+	@Override
+	void backEdge(Ast.Method method)
+	{
+		if (method != null)
+		{
+			Profile profile = profiles.get(method);
+			if (profile != null)
+			{
+				profile.backEdges++;
+				profile.count();
+			}
+		}
+	}
+
+	@Override
+	JvmCompiler.Loop replace(Ast.Stmt.While ast)
+	{
+		LoopProfile profile = loops.computeIfAbsent(ast, LoopProfile::new);
+		JvmCompiler.Loop loop = profile.compiled;
+		if (loop != null)
+		{
+			profile.entries++;
+			return loop;
+		}
+
+		profile.backEdges++;
+		if (profile.tier == Tier.INTERPRETED && profile.backEdges >= threshold)
+		{
+			// fields are accessed through the globals, and locals are copied into the compiled loop
+			List<Ast.Expr.Access> locals = new ArrayList<>();
+			try
+			{
+				for (Ast.Expr.Access access : JvmCompiler.freeVariables(ast))
+				{
+					if (lookupVariable(access) != lookupGlobal(access.getName()))
+					{
+						locals.add(access);
+					}
+				}
+			}
+			catch (RuntimeException e)
+			{
+				profile.tier = Tier.FAILED;
+				return null;
+			}
+			profile.tier = Tier.COMPILING;
+			executor.execute(() -> profile.compile(locals));
+		}
+		return null;
+	}
+
+	private Environment.Variable lookupGlobal(String name)
+	{
+		try
+		{
+			return globals.lookupVariable(name);
+		}
+		catch (RuntimeException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * The counters and tier of a method, where the counters only count while
+	 * the method is interpreted.
+	 */
+	public final class Profile
+	{
+
+		private final Ast.Method method;
+		private volatile Tier tier = Tier.INTERPRETED;
+		private int invocations = 0;
+		private int backEdges = 0;
+		private TieredInvoker invoker;
+
+		private Profile(Ast.Method method)
+		{
+			this.method = method;
+		}
+
+		public Ast.Method getMethod()
+		{
+			return method;
+		}
+
+		public Tier getTier()
+		{
+			return tier;
+		}
+
+		public int getInvocations()
+		{
+			return invocations;
+		}
+
+		public int getBackEdges()
+		{
+			return backEdges;
+		}
+
+		private void count()
+		{
+			if (tier == Tier.INTERPRETED && invocations + backEdges >= threshold)
+			{
+				tier = Tier.COMPILING;
+				executor.execute(this::compile);
+			}
+		}
+
+		private void compile()
+		{
+			try
+			{
+				MethodHandle handle = new JvmCompiler(globals).compile(method);
+				invoker.target = new CompiledInvoker(handle, method.getParameters().size());
+				compilations.incrementAndGet();
+				tier = Tier.COMPILED;
+			}
+			catch (RuntimeException | LinkageError e)
+			{
+				tier = Tier.FAILED;
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return method.getName() + "/" + method.getParameters().size() + " " + tier + " (" + invocations + " calls, " + backEdges + " back-edges)";
+		}
+
+	}
+
+	/**
+	 * The counters and tier of a WHILE loop, where back-edges are counted
+	 * until the loop is compiled, and entries are the times the interpreter
+	 * continued in the compiled loop.
+	 */
+	public final class LoopProfile
+	{
+
+		private final Ast.Stmt.While loop;
+		private volatile Tier tier = Tier.INTERPRETED;
+		private volatile JvmCompiler.Loop compiled;
+		private int backEdges = 0;
+		private int entries = 0;
+
+		private LoopProfile(Ast.Stmt.While loop)
+		{
+			this.loop = loop;
+		}
+
+		public Ast.Stmt.While getLoop()
+		{
+			return loop;
+		}
+
+		public Tier getTier()
+		{
+			return tier;
+		}
+
+		public int getBackEdges()
+		{
+			return backEdges;
+		}
+
+		public int getEntries()
+		{
+			return entries;
+		}
+
+		private void compile(List<Ast.Expr.Access> locals)
+		{
+			try
+			{
+				compiled = new JvmCompiler(globals).compile(loop, locals);
+				compilations.incrementAndGet();
+				tier = Tier.COMPILED;
+			}
+			catch (RuntimeException | LinkageError e)
+			{
+				tier = Tier.FAILED;
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return "WHILE " + tier + " (" + backEdges + " back-edges, " + entries + " entries)";
+		}
+
+	}
+
+	/**
+	 * The implementation of a method's function, which calls the current tier
+	 * through a volatile field so that swapping it is atomic.
+	 */
+	private static final class TieredInvoker extends Invoker
+	{
+
+		private volatile Invoker target;
+
+		private TieredInvoker(Profile profile, Invoker interpreted)
+		{
+			profile.invoker = this;
+			target = new Invoker()
+			{
+
+				@Override
+				public Environment.PlcObject invoke()
+				{
+					profile.invocations++;
+					profile.count();
+					return interpreted.invoke();
+				}
+
+				@Override
+				public Environment.PlcObject invoke(Environment.PlcObject first)
+				{
+					profile.invocations++;
+					profile.count();
+					return interpreted.invoke(first);
+				}
+
+				@Override
+				public Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second)
+				{
+					profile.invocations++;
+					profile.count();
+					return interpreted.invoke(first, second);
+				}
+
+				@Override
+				public Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third)
+				{
+					profile.invocations++;
+					profile.count();
+					return interpreted.invoke(first, second, third);
+				}
+
+				@Override
+				public Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third, Environment.PlcObject fourth)
+				{
+					profile.invocations++;
+					profile.count();
+					return interpreted.invoke(first, second, third, fourth);
+				}
+
+				@Override
+				public Environment.PlcObject invoke(Environment.PlcObject[] arguments)
+				{
+					profile.invocations++;
+					profile.count();
+					return interpreted.invoke(arguments);
+				}
+
+			};
+		}
+
+		@Override
+		public Environment.PlcObject invoke()
+		{
+			return target.invoke();
+		}
+
+		@Override
+		public Environment.PlcObject invoke(Environment.PlcObject first)
+		{
+			return target.invoke(first);
+		}
+
+		@Override
+		public Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second)
+		{
+			return target.invoke(first, second);
+		}
+
+		@Override
+		public Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third)
+		{
+			return target.invoke(first, second, third);
+		}
+
+		@Override
+		public Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third, Environment.PlcObject fourth)
+		{
+			return target.invoke(first, second, third, fourth);
+		}
+
+		@Override
+		public Environment.PlcObject invoke(Environment.PlcObject[] arguments)
+		{
+			return target.invoke(arguments);
+		}
+
+	}
+
+	/**
+	 * Calls a method compiled by the {@link JvmCompiler}, whose handle takes
+	 * exactly {@code arity} arguments.
+	 */
+	private static final class CompiledInvoker extends Invoker
+	{
+
+		private final MethodHandle handle;
+		private final int arity;
+
+		private CompiledInvoker(MethodHandle handle, int arity)
+		{
+			this.handle = handle;
+			this.arity = arity;
+		}
+
+		@Override
+		public Environment.PlcObject invoke()
+		{
+			try
+			{
+				return (Environment.PlcObject) handle.invokeExact();
+			}
+			catch (Throwable e)
+			{
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public Environment.PlcObject invoke(Environment.PlcObject first)
+		{
+			try
+			{
+				return (Environment.PlcObject) handle.invokeExact(first);
+			}
+			catch (Throwable e)
+			{
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second)
+		{
+			try
+			{
+				return (Environment.PlcObject) handle.invokeExact(first, second);
+			}
+			catch (Throwable e)
+			{
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third)
+		{
+			try
+			{
+				return (Environment.PlcObject) handle.invokeExact(first, second, third);
+			}
+			catch (Throwable e)
+			{
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public Environment.PlcObject invoke(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third, Environment.PlcObject fourth)
+		{
+			try
+			{
+				return (Environment.PlcObject) handle.invokeExact(first, second, third, fourth);
+			}
+			catch (Throwable e)
+			{
+				throw rethrow(e);
+			}
+		}
+
+		@Override
+		public Environment.PlcObject invoke(Environment.PlcObject[] arguments)
+		{
+			if (arguments.length != arity)
+			{
+				throw arityMismatch(arity, arguments.length);
+			}
+			try
+			{
+				return (Environment.PlcObject) handle.invokeWithArguments((Object[]) arguments);
+			}
+			catch (Throwable e)
+			{
+				throw rethrow(e);
+			}
+		}
+
+		private static RuntimeException rethrow(Throwable e)
+		{
+			if (e instanceof RuntimeException)
+			{
+				return (RuntimeException) e;
+			}
+			if (e instanceof Error)
+			{
+				throw (Error) e;
+			}
+			return new RuntimeException(e);
+		}
+
+	}
+
+}
@@ -0,0 +1,115 @@
+package plc.project;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The subtype relation between registered types, stored as a bit matrix
+ * indexed by ids assigned densely to the types of this lattice, so that the
+ * matrix only grows with the types of one registry and assignability checks
+ * are two identity lookups and a bit test.
+ * <p>
+ * A type is a subtype of every type whose scope is an ancestor of its own
+ * scope (which is how {@code Integer} inherits from {@code Comparable}), and
+ * every type is a subtype of {@code Any}. Lattices are immutable; {@link
+ * TypeRegistry#register(Environment.Type)} builds a new one.
+ */
+final class TypeLattice
+{
+
+	private final Map<Environment.Type, Integer> ids = new IdentityHashMap<>();
+	private final long[][] supertypes;
+
+	TypeLattice(Collection<Environment.Type> types)
+	{
+		Map<Scope, Environment.Type> owners = new IdentityHashMap<>();
+
+		for (Environment.Type type : types)
+		{
+			owners.put(type.getScope(), type);
+			ids.put(type, ids.size());
+		}
+
+		int size = ids.size();
+		supertypes = new long[size][];
+
+		for (Environment.Type type : types)
+		{
+			long[] row = new long[(size + 63) >>> 6];
+
+			for (Scope scope = type.getScope(); scope != null; scope = scope.getParent())
+			{
+				Environment.Type owner = owners.get(scope);
+				if (owner != null)
+				{
+					set(row, id(owner));
+				}
+			}
+
+			set(row, id(Environment.Type.ANY));
+			supertypes[id(type)] = row;
+		}
+	}
+
+	/**
+	 * Returns true if {@code type} is assignable to {@code target}.
+	 */
+	boolean isSubtype(Environment.Type type, Environment.Type target)
+	{
+		if (type == target || target == Environment.Type.ANY)
+		{
+			return true;
+		}
+
+		int row = id(type);
+		int column = id(target);
+
+		if (row >= 0 && column >= 0)
+		{
+			return (supertypes[row][column >>> 6] & (1L << column)) != 0;
+		}
+
+		return isSubtypeByScope(type, target);
+	}
+
+	/**
+	 * Fallback for types that were never registered, which walks the scope
+	 * chain directly and also treats types with the same name as identical.
+	 */
+	private static boolean isSubtypeByScope(Environment.Type type, Environment.Type target)
+	{
+		if (type.getName().equals(target.getName()))
+		{
+			return true;
+		}
+
+		for (Scope scope = type.getScope(); scope != null; scope = scope.getParent())
+		{
+			if (scope == target.getScope())
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the id of a type in this lattice, or -1 if it isn't in it.
+	 */
+	private int id(Environment.Type type)
+	{
+		Integer id = ids.get(type);
+		return id != null ? id : -1;
+	}
+
+	private static void set(long[] row, int id)
+	{
+		if (id >= 0)
+		{
+			row[id >>> 6] |= 1L << id;
+		}
+	}
+
+}
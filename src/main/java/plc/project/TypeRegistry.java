@@ -0,0 +1,113 @@
+package plc.project;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The types known to one runtime, which the {@link Analyzer} resolves type
+ * names and subtyping against (the engines then use the types it resolved).
+ * Independent registries can register different types with the same name, so
+ * several programs with their own types can be compiled in one JVM.
+ * <p>
+ * Registries are copy-on-write: registering a type publishes a new immutable
+ * snapshot of the types and their {@link TypeLattice}, so lookups never lock
+ * and always see a consistent set of types, while registrations are
+ * serialized. A {@link #copy()} shares the current snapshot and is then
+ * extended independently.
+ */
+public final class TypeRegistry
+{
+
+	private static final Snapshot EMPTY = new Snapshot(Collections.emptyMap());
+
+	private volatile Snapshot snapshot;
+
+	/**
+	 * Creates an empty registry, see {@link Environment#createTypes()} for a
+	 * registry with the built-in types.
+	 */
+	public TypeRegistry()
+	{
+		this(EMPTY);
+	}
+
+	private TypeRegistry(Snapshot snapshot)
+	{
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Returns a registry with the types currently registered in this one.
+	 */
+	public TypeRegistry copy()
+	{
+		return new TypeRegistry(snapshot);
+	}
+
+	public boolean contains(String name)
+	{
+		return snapshot.types.containsKey(name);
+	}
+
+	public Environment.Type get(String name)
+	{
+		Environment.Type type = snapshot.types.get(name);
+		if (type == null)
+		{
+			throw new RuntimeException("Unknown type " + name + ".");
+		}
+		return type;
+	}
+
+	/**
+	 * Registers the type, which prepares it for dispatch (see {@link
+	 * Environment.Type#getMethod(int)}) the first time it is registered in
+	 * any registry.
+	 */
+	public synchronized void register(Environment.Type type)
+	{
+		Snapshot current = snapshot;
+		if (current.types.containsKey(type.getName()))
+		{
+			throw new IllegalArgumentException("Duplicate registration of type " + type.getName() + ".");
+		}
+		type.prepare();
+
+		Map<String, Environment.Type> types = new HashMap<>(current.types);
+		types.put(type.getName(), type);
+		snapshot = new Snapshot(Collections.unmodifiableMap(types));
+	}
+
+	/**
+	 * Returns true if a value of {@code type} can be assigned to {@code target},
+	 * answered from the lattice of the registered types.
+	 */
+	public boolean isSubtype(Environment.Type type, Environment.Type target)
+	{
+		return snapshot.lattice.isSubtype(type, target);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "TypeRegistry{" +
+				"types=" + snapshot.types.keySet() +
+				'}';
+	}
+
+	private static final class Snapshot
+	{
+
+		private final Map<String, Environment.Type> types;
+		private final TypeLattice lattice;
+
+		private Snapshot(Map<String, Environment.Type> types)
+		{
+			this.types = types;
+			this.lattice = new TypeLattice(types.values());
+		}
+
+	}
+
+}
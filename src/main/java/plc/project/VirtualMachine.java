@@ -0,0 +1,415 @@
+package plc.project;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Executes a {@link Bytecode.Program} in a single dispatch loop. The locals
+ * of every frame and their operands share one stack, where the arguments of
+ * a call become the first locals of the callee, and calls between compiled
+ * functions don't recurse on the Java stack.
+ * <p>
+ * A machine holds the fields of one execution of the program, so it may
+ * only be used by one thread at a time.
+ */
+public final class VirtualMachine
+{
+
+	/**
+	 * The expressions passed to {@link Interpreter#binary} for the untyped
+	 * operators (and the typed ones, once their operands don't fit a long),
+	 * by opcode.
+	 */
+	private static final Ast.Expr.Binary[] OPERATORS = new Ast.Expr.Binary[Bytecode.IGE + 1];
+
+	static
+	{
+		String[] operators = {"+", "-", "*", "/", "==", "!=", "<", "<=", ">", ">="};
+		for (int i = 0; i < operators.length; i++)
+		{
+			OPERATORS[Bytecode.ADD + i] = new Ast.Expr.Binary(operators[i], null, null);
+			OPERATORS[Bytecode.IADD + i] = OPERATORS[Bytecode.ADD + i];
+		}
+	}
+
+	private final Bytecode.Program program;
+	private final Environment.PlcObject[] fields;
+
+	private Object[] stack = new Object[256];
+
+	/**
+	 * The functions, return offsets and bases of the callers of the current
+	 * frame.
+	 */
+	private Bytecode.Function[] callers = new Bytecode.Function[16];
+	private int[] returns = new int[16];
+	private int[] bases = new int[16];
+
+	public VirtualMachine(Bytecode.Program program)
+	{
+		this.program = program;
+		this.fields = new Environment.PlcObject[program.getFieldCount()];
+	}
+
+	/**
+	 * Runs the program from the start, returning the result of {@code main}.
+	 */
+	public Environment.PlcObject run()
+	{
+		return execute(program.getEntry());
+	}
+
+	private Environment.PlcObject execute(Bytecode.Function entry)
+	{
+		Bytecode.Function function = entry;
+		int[] code = function.code;
+		Object[] constants = function.constants;
+		int pc = 0;
+		int base = 0;
+		int sp = function.maxLocals;
+		int frames = 0;
+		Object[] stack = reserve(0, function);
+
+		while (true)
+		{
+			int opcode = code[pc++];
+			switch (opcode)
+			{
+				case Bytecode.CONST:
+					stack[sp++] = constants[code[pc++]];
+					break;
+				case Bytecode.LOAD:
+					stack[sp++] = stack[base + code[pc++]];
+					break;
+				case Bytecode.STORE:
+					stack[base + code[pc++]] = stack[--sp];
+					break;
+				case Bytecode.LOAD_FIELD:
+					stack[sp++] = fields[code[pc++]];
+					break;
+				case Bytecode.STORE_FIELD:
+					fields[code[pc++]] = (Environment.PlcObject) stack[--sp];
+					break;
+				case Bytecode.LOAD_GLOBAL:
+					stack[sp++] = program.getGlobals().lookupVariable((String) constants[code[pc++]]).getValue();
+					break;
+				case Bytecode.STORE_GLOBAL:
+					program.getGlobals().lookupVariable((String) constants[code[pc++]]).setValue((Environment.PlcObject) stack[--sp]);
+					break;
+				case Bytecode.GET_FIELD:
+					stack[sp - 1] = ((Environment.PlcObject) stack[sp - 1]).getField((String) constants[code[pc++]]).getValue();
+					break;
+				case Bytecode.SET_FIELD:
+				{
+					Environment.PlcObject value = (Environment.PlcObject) stack[--sp];
+					((Environment.PlcObject) stack[--sp]).setField((String) constants[code[pc++]], value);
+					break;
+				}
+				case Bytecode.POP:
+					stack[--sp] = null;
+					break;
+				case Bytecode.IADD:
+				{
+					Environment.PlcObject right = (Environment.PlcObject) stack[--sp];
+					Environment.PlcObject left = (Environment.PlcObject) stack[sp - 1];
+					if (left.isLong() && right.isLong())
+					{
+						long l = left.getLong();
+						long r = right.getLong();
+						long result = l + r;
+						if (((l ^ result) & (r ^ result)) >= 0)
+						{
+							stack[sp - 1] = Environment.createInteger(result);
+							break;
+						}
+					}
+					stack[sp - 1] = Interpreter.binary(OPERATORS[opcode], left, right);
+					break;
+				}
+				case Bytecode.ISUB:
+				{
+					Environment.PlcObject right = (Environment.PlcObject) stack[--sp];
+					Environment.PlcObject left = (Environment.PlcObject) stack[sp - 1];
+					if (left.isLong() && right.isLong())
+					{
+						long l = left.getLong();
+						long r = right.getLong();
+						long result = l - r;
+						if (((l ^ r) & (l ^ result)) >= 0)
+						{
+							stack[sp - 1] = Environment.createInteger(result);
+							break;
+						}
+					}
+					stack[sp - 1] = Interpreter.binary(OPERATORS[opcode], left, right);
+					break;
+				}
+				case Bytecode.ILT:
+				case Bytecode.ILE:
+				case Bytecode.IGT:
+				case Bytecode.IGE:
+				case Bytecode.IEQ:
+				case Bytecode.INE:
+				{
+					Environment.PlcObject right = (Environment.PlcObject) stack[--sp];
+					Environment.PlcObject left = (Environment.PlcObject) stack[sp - 1];
+					if (left.isLong() && right.isLong())
+					{
+						stack[sp - 1] = Environment.create(compare(opcode, left.getLong(), right.getLong()));
+						break;
+					}
+					stack[sp - 1] = Interpreter.binary(OPERATORS[opcode], left, right);
+					break;
+				}
+				case Bytecode.ADD:
+				case Bytecode.SUB:
+				case Bytecode.MUL:
+				case Bytecode.DIV:
+				case Bytecode.EQ:
+				case Bytecode.NE:
+				case Bytecode.LT:
+				case Bytecode.LE:
+				case Bytecode.GT:
+				case Bytecode.GE:
+				case Bytecode.IMUL:
+				case Bytecode.IDIV:
+				{
+					Environment.PlcObject right = (Environment.PlcObject) stack[--sp];
+					stack[sp - 1] = Interpreter.binary(OPERATORS[opcode], (Environment.PlcObject) stack[sp - 1], right);
+					break;
+				}
+				case Bytecode.JUMP:
+					pc = code[pc];
+					break;
+				case Bytecode.JUMP_FALSE:
+					pc = !Interpreter.isTrue((Environment.PlcObject) stack[--sp]) ? code[pc] : pc + 1;
+					break;
+				case Bytecode.JUMP_TRUE:
+					pc = Interpreter.isTrue((Environment.PlcObject) stack[--sp]) ? code[pc] : pc + 1;
+					break;
+				case Bytecode.CALL:
+				{
+					Bytecode.Function callee = (Bytecode.Function) constants[code[pc++]];
+					int arity = code[pc++];
+					if (frames == callers.length)
+					{
+						callers = Arrays.copyOf(callers, frames * 2);
+						returns = Arrays.copyOf(returns, frames * 2);
+						bases = Arrays.copyOf(bases, frames * 2);
+					}
+					callers[frames] = function;
+					returns[frames] = pc;
+					bases[frames] = base;
+					frames++;
+
+					base = sp - arity;
+					stack = reserve(base, callee);
+					sp = base + callee.maxLocals;
+					function = callee;
+					code = callee.code;
+					constants = callee.constants;
+					pc = 0;
+					break;
+				}
+				case Bytecode.INVOKE:
+				{
+					Environment.Function callee = (Environment.Function) constants[code[pc++]];
+					sp = invoke(callee, code[pc++], stack, sp);
+					break;
+				}
+				case Bytecode.INVOKE_GLOBAL:
+				{
+					String name = (String) constants[code[pc++]];
+					int arity = code[pc++];
+					sp = invoke(program.getGlobals().lookupFunction(name, arity), arity, stack, sp);
+					break;
+				}
+				case Bytecode.INVOKE_METHOD:
+				{
+					int selector = code[pc++];
+					int arity = code[pc++];
+					Environment.PlcObject receiver = (Environment.PlcObject) stack[--sp];
+					Environment.PlcObject result;
+					switch (arity)
+					{
+						case 0:
+							result = receiver.callMethod(selector);
+							break;
+						case 1:
+							result = receiver.callMethod(selector, (Environment.PlcObject) stack[sp - 1]);
+							break;
+						case 2:
+							result = receiver.callMethod(selector, (Environment.PlcObject) stack[sp - 2], (Environment.PlcObject) stack[sp - 1]);
+							break;
+						default:
+							Environment.PlcObject[] arguments = new Environment.PlcObject[arity + 1];
+							System.arraycopy(stack, sp - arity, arguments, 1, arity);
+							result = receiver.callMethod(selector, arguments);
+							break;
+					}
+					sp -= arity;
+					stack[sp++] = result;
+					break;
+				}
+				case Bytecode.RETURN:
+				{
+					Object result = stack[--sp];
+					if (frames == 0)
+					{
+						Arrays.fill(stack, 0, sp, null);
+						return (Environment.PlcObject) result;
+					}
+					// releases the frame, whose base is where the caller pushed the arguments
+					Arrays.fill(stack, base, sp, null);
+					sp = base;
+					stack[sp++] = result;
+
+					frames--;
+					function = callers[frames];
+					callers[frames] = null;
+					pc = returns[frames];
+					base = bases[frames];
+					code = function.code;
+					constants = function.constants;
+					break;
+				}
+				case Bytecode.ITER:
+					stack[base + code[pc++]] = new Cursor((Environment.PlcObject) stack[--sp]);
+					break;
+				case Bytecode.NEXT:
+				{
+					Environment.PlcObject element = ((Cursor) stack[base + code[pc]]).next();
+					if (element == null)
+					{
+						pc = code[pc + 2];
+					}
+					else
+					{
+						stack[base + code[pc + 1]] = element;
+						pc += 3;
+					}
+					break;
+				}
+				default:
+					throw new IllegalStateException("Unknown opcode " + opcode + ".");
+			}
+		}
+	}
+
+	/**
+	 * Returns the stack, grown if needed to hold a frame of the function at
+	 * the given base.
+	 */
+	private Object[] reserve(int base, Bytecode.Function function)
+	{
+		int size = base + function.maxLocals + function.maxStack;
+		if (size > stack.length)
+		{
+			stack = Arrays.copyOf(stack, Math.max(size, stack.length * 2));
+		}
+		return stack;
+	}
+
+	/**
+	 * Calls the function with the arguments on top of the stack, replacing
+	 * them with its result and returning the new top.
+	 */
+	private static int invoke(Environment.Function function, int arity, Object[] stack, int sp)
+	{
+		Environment.PlcObject result;
+		switch (arity)
+		{
+			case 0:
+				result = function.invoke();
+				break;
+			case 1:
+				result = function.invoke((Environment.PlcObject) stack[sp - 1]);
+				break;
+			case 2:
+				result = function.invoke((Environment.PlcObject) stack[sp - 2], (Environment.PlcObject) stack[sp - 1]);
+				break;
+			case 3:
+				result = function.invoke((Environment.PlcObject) stack[sp - 3], (Environment.PlcObject) stack[sp - 2], (Environment.PlcObject) stack[sp - 1]);
+				break;
+			default:
+				Environment.PlcObject[] arguments = new Environment.PlcObject[arity];
+				System.arraycopy(stack, sp - arity, arguments, 0, arity);
+				result = function.getInvoker().invoke(arguments);
+				break;
+		}
+		sp -= arity;
+		stack[sp++] = result;
+		return sp;
+	}
+
+	private static boolean compare(int opcode, long left, long right)
+	{
+		switch (opcode)
+		{
+			case Bytecode.ILT:
+				return left < right;
+			case Bytecode.ILE:
+				return left <= right;
+			case Bytecode.IGT:
+				return left > right;
+			case Bytecode.IGE:
+				return left >= right;
+			case Bytecode.IEQ:
+				return left == right;
+			default:
+				return left != right;
+		}
+	}
+
+	/**
+	 * The state of a FOR loop, which counts through {@link IntegerRange}s
+	 * with a primitive like the Interpreter.
+	 */
+	private static final class Cursor
+	{
+
+		private final Iterator<?> iterator;
+		private long remaining;
+		private long next;
+		private final long step;
+
+		private Cursor(Environment.PlcObject iterable)
+		{
+			if (iterable.getValue() instanceof IntegerRange)
+			{
+				IntegerRange range = (IntegerRange) iterable.getValue();
+				iterator = null;
+				remaining = range.size();
+				next = range.getStart();
+				step = range.getStep();
+			}
+			else
+			{
+				Iterable<?> elements = Interpreter.requireType(Iterable.class, iterable);
+				iterator = elements.iterator();
+				step = 0;
+			}
+		}
+
+		/**
+		 * Returns the next element, or null at the end.
+		 */
+		private Environment.PlcObject next()
+		{
+			if (iterator != null)
+			{
+				return iterator.hasNext() ? (Environment.PlcObject) iterator.next() : null;
+			}
+			else if (remaining == 0)
+			{
+				return null;
+			}
+			remaining--;
+			Environment.PlcObject element = Environment.createInteger(next);
+			next += step;
+			return element;
+		}
+
+	}
+
+}
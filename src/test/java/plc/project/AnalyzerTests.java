@@ -1,13 +1,17 @@
 package plc.project;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
@@ -26,6 +30,8 @@ public final class AnalyzerTests
 		scope.defineFunction("method", "method", Arrays.asList(Environment.Type.ANY), Environment.Type.INTEGER, args -> Environment.NIL);
 	}));
 
+	private static final Environment.Type COMPARABLE_TYPE = init(new Environment.Type("ComparableType", "ComparableType", new Scope(Environment.Type.COMPARABLE.getScope())), Environment::registerType);
+
 	@ParameterizedTest(name = "{0}")
 	@MethodSource
 	public void testSource(String test, Ast.Source ast, Ast.Source expected)
@@ -66,6 +72,46 @@ public final class AnalyzerTests
 								)
 						),
 						null
+				),
+				// DEF one(): Integer DO RETURN 1; END DEF main(): Integer DO RETURN one(); END
+				Arguments.of("Multiple Methods",
+						new Ast.Source(
+								Arrays.asList(),
+								Arrays.asList(
+										new Ast.Method("one", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+												new Ast.Stmt.Return(new Ast.Expr.Literal(BigInteger.ONE)))
+										),
+										new Ast.Method("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+												new Ast.Stmt.Return(new Ast.Expr.Function(Optional.empty(), "one", Arrays.asList())))
+										)
+								)
+						),
+						new Ast.Source(
+								Arrays.asList(),
+								Arrays.asList(
+										init(new Ast.Method("one", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+												new Ast.Stmt.Return(init(new Ast.Expr.Literal(BigInteger.ONE), ast -> ast.setType(Environment.Type.INTEGER))))
+										), ast -> ast.setFunction(new Environment.Function("one", "one", Arrays.asList(), Environment.Type.INTEGER, args -> Environment.NIL))),
+										init(new Ast.Method("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+												new Ast.Stmt.Return(init(new Ast.Expr.Function(Optional.empty(), "one", Arrays.asList()), ast -> ast.setFunction(new Environment.Function("one", "one", Arrays.asList(), Environment.Type.INTEGER, args -> Environment.NIL)))))
+										), ast -> ast.setFunction(new Environment.Function("main", "main", Arrays.asList(), Environment.Type.INTEGER, args -> Environment.NIL)))
+								)
+						)
+				),
+				// DEF main(): Integer DO RETURN later(); END DEF later(): Integer DO RETURN 1; END
+				Arguments.of("Call to Later Method",
+						new Ast.Source(
+								Arrays.asList(),
+								Arrays.asList(
+										new Ast.Method("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+												new Ast.Stmt.Return(new Ast.Expr.Function(Optional.empty(), "later", Arrays.asList())))
+										),
+										new Ast.Method("later", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+												new Ast.Stmt.Return(new Ast.Expr.Literal(BigInteger.ONE)))
+										)
+								)
+						),
+						null
 				)
 		);
 	}
@@ -423,6 +469,75 @@ public final class AnalyzerTests
 		);
 	}
 
+	@Test
+	public void testUpdate()
+	{
+		// LET x: Integer = 1;
+		// DEF f(): Integer DO RETURN x; END
+		// DEF main(): Integer DO RETURN f(); END
+		List<Ast.Method> methods = new ArrayList<>(Arrays.asList(
+				new Ast.Method("f", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+						new Ast.Stmt.Return(new Ast.Expr.Access(Optional.empty(), "x"))
+				)),
+				new Ast.Method("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+						new Ast.Stmt.Return(new Ast.Expr.Function(Optional.empty(), "f", Arrays.asList()))
+				))
+		));
+		Ast.Source source = new Ast.Source(Arrays.asList(
+				new Ast.Field("x", "Integer", Optional.of(new Ast.Expr.Literal(BigInteger.ONE)))
+		), methods);
+		Analyzer analyzer = new Analyzer(new Scope(null));
+		analyzer.visit(source);
+		Assertions.assertEquals(new HashSet<>(Arrays.asList("x")), analyzer.getDependencies().get("f/0"));
+		Assertions.assertEquals(new HashSet<>(Arrays.asList("f/0")), analyzer.getDependencies().get("main/0"));
+
+		// DEF f(): Integer DO RETURN 2; END
+		methods.set(0, new Ast.Method("f", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+				new Ast.Stmt.Return(new Ast.Expr.Literal(BigInteger.TWO))
+		)));
+		Assertions.assertEquals(new HashSet<>(Arrays.asList("f/0")), analyzer.update(source));
+		Assertions.assertEquals(new HashSet<>(), analyzer.getDependencies().get("f/0"));
+
+		// DEF f(): Decimal DO RETURN 2.0; END
+		methods.set(0, new Ast.Method("f", Arrays.asList(), Arrays.asList(), Optional.of("Decimal"), Arrays.asList(
+				new Ast.Stmt.Return(new Ast.Expr.Literal(new BigDecimal("2.0")))
+		)));
+		Assertions.assertThrows(RuntimeException.class, () -> analyzer.update(source));
+	}
+
+	@Test
+	public void testAddresses()
+	{
+		// LET x: Integer = 1;
+		// DEF main(): Integer DO
+		//     LET y = x;
+		//     IF TRUE DO LET z = y; END
+		//     LET w = y;
+		//     RETURN w;
+		// END
+		Ast.Expr.Access x = new Ast.Expr.Access(Optional.empty(), "x");
+		Ast.Expr.Access y = new Ast.Expr.Access(Optional.empty(), "y");
+		Ast.Expr.Access w = new Ast.Expr.Access(Optional.empty(), "w");
+		Ast.Stmt.Declaration z = new Ast.Stmt.Declaration("z", Optional.of(new Ast.Expr.Access(Optional.empty(), "y")));
+		Ast.Stmt.Declaration declaration = new Ast.Stmt.Declaration("w", Optional.of(y));
+		Ast.Method main = new Ast.Method("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+				new Ast.Stmt.Declaration("y", Optional.of(x)),
+				new Ast.Stmt.If(new Ast.Expr.Literal(true), Arrays.asList(z), Arrays.asList()),
+				declaration,
+				new Ast.Stmt.Return(w)
+		));
+		new Analyzer(new Scope(null)).visit(new Ast.Source(Arrays.asList(
+				new Ast.Field("x", "Integer", Optional.of(new Ast.Expr.Literal(BigInteger.ONE)))
+		), Arrays.asList(main)));
+
+		Assertions.assertEquals(Arrays.asList(1, 0), Arrays.asList(x.getDepth(), x.getSlot()));
+		Assertions.assertEquals(Arrays.asList(0, 0), Arrays.asList(y.getDepth(), y.getSlot()));
+		Assertions.assertEquals(1, z.getSlot());
+		Assertions.assertEquals(1, declaration.getSlot());
+		Assertions.assertEquals(Arrays.asList(0, 1), Arrays.asList(w.getDepth(), w.getSlot()));
+		Assertions.assertEquals(2, main.getFrameSize());
+	}
+
 	@ParameterizedTest(name = "{0}")
 	@MethodSource
 	public void testRequireAssignable(String test, Environment.Type target, Environment.Type type, boolean success)
@@ -444,7 +559,11 @@ public final class AnalyzerTests
 				Arguments.of("Integer to Decimal", Environment.Type.DECIMAL, Environment.Type.INTEGER, false),
 				Arguments.of("Integer to Comparable", Environment.Type.COMPARABLE, Environment.Type.INTEGER, true),
 				Arguments.of("Integer to Any", Environment.Type.ANY, Environment.Type.INTEGER, true),
-				Arguments.of("Any to Integer", Environment.Type.INTEGER, Environment.Type.ANY, false)
+				Arguments.of("Any to Integer", Environment.Type.INTEGER, Environment.Type.ANY, false),
+				Arguments.of("Nil to Comparable", Environment.Type.COMPARABLE, Environment.Type.NIL, false),
+				Arguments.of("Registered Type to Comparable", Environment.Type.COMPARABLE, COMPARABLE_TYPE, true),
+				Arguments.of("Registered Type to String", Environment.Type.STRING, COMPARABLE_TYPE, false),
+				Arguments.of("Unregistered Type to Any", Environment.Type.ANY, OBJECT_TYPE, true)
 		);
 	}
 
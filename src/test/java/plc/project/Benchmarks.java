@@ -0,0 +1,110 @@
+package plc.project;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.function.IntSupplier;
+
+/**
+ * Helpers for the microbenchmarks in this package, which are run through
+ * their {@code main} methods rather than as tests. Each benchmark is warmed
+ * up before it is measured, and reports both the time and the number of bytes
+ * allocated per operation.
+ */
+final class Benchmarks
+{
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Prevents the JIT from eliminating the benchmarked work.
+	 */
+	private static volatile int sink;
+
+	private Benchmarks()
+	{
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread so far.
+	 */
+	static long allocatedBytes()
+	{
+		return THREADS.getCurrentThreadAllocatedBytes();
+	}
+
+	/**
+	 * Runs {@code operation} {@code iterations} times after warming it up,
+	 * printing the average time and allocation of each operation.
+	 */
+	static void run(String name, int iterations, IntSupplier operation)
+	{
+		for (int i = 0; i < iterations; i++)
+		{
+			sink += operation.getAsInt();
+		}
+
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+
+		for (int i = 0; i < iterations; i++)
+		{
+			sink += operation.getAsInt();
+		}
+
+		long time = System.nanoTime() - start;
+		bytes = allocatedBytes() - bytes;
+
+		System.out.printf("%-40s %10.2f ns/op %10.2f B/op%n", name, (double) time / iterations, (double) bytes / iterations);
+	}
+
+	/**
+	 * Runs {@code operation} {@code iterations} times on each of {@code
+	 * threads} threads at once after warming it up, printing the throughput
+	 * of all threads together.
+	 */
+	static void runConcurrently(String name, int threads, int iterations, IntSupplier operation) throws Exception
+	{
+		CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+		List<Thread> workers = new ArrayList<>();
+
+		for (int i = 0; i < threads; i++)
+		{
+			Thread worker = new Thread(() -> {
+				try
+				{
+					for (int j = 0; j < iterations; j++)
+					{
+						sink += operation.getAsInt();
+					}
+					barrier.await();
+					for (int j = 0; j < iterations; j++)
+					{
+						sink += operation.getAsInt();
+					}
+					barrier.await();
+				}
+				catch (Exception e)
+				{
+					throw new RuntimeException(e);
+				}
+			});
+			workers.add(worker);
+			worker.start();
+		}
+
+		barrier.await();
+		long start = System.nanoTime();
+		barrier.await();
+		long time = System.nanoTime() - start;
+
+		for (Thread worker : workers)
+		{
+			worker.join();
+		}
+
+		System.out.printf("%-40s %10.2f ns/op %10.2f Mops/s%n", name + " (" + threads + " threads)", (double) time / iterations, (long) iterations * threads * 1000.0 / time);
+	}
+
+}
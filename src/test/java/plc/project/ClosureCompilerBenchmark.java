@@ -0,0 +1,48 @@
+package plc.project;
+
+/**
+ * Measures programs dominated by loops and by recursion run by the {@link
+ * Interpreter}, which dispatches every node through {@link
+ * Ast.Visitor#visit(Ast)}, compared to the same programs compiled once by the
+ * {@link ClosureCompiler}, compiled to {@link Bytecode} for the {@link
+ * VirtualMachine}, and compiled to JVM classes by the {@link JvmCompiler},
+ * either ahead of time or once hot in the {@link TieredInterpreter}.
+ */
+public final class ClosureCompilerBenchmark
+{
+
+	private static final String LOOP = "DEF main(): Integer DO LET total = 0; LET i = 0; " +
+			"WHILE i < 1000 DO IF i < 500 DO total = total + i; ELSE total = total - 1; END i = i + 1; END " +
+			"RETURN total; END";
+
+	private static final String RECURSION = "DEF fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END " +
+			"DEF main(): Integer DO RETURN fib(15); END";
+
+	public static void main(String[] args)
+	{
+		run("loop", LOOP, 20_000);
+		run("recursion", RECURSION, 5_000);
+	}
+
+	private static void run(String name, String input, int iterations)
+	{
+		Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+		new Analyzer(new Scope(null)).visit(ast);
+
+		Interpreter interpreter = new Interpreter(new Scope(null));
+		interpreter.visit(ast);
+		ClosureCompiler compiler = new ClosureCompiler(new Scope(null));
+		ClosureCompiler.Node program = compiler.visit(ast);
+		VirtualMachine machine = new VirtualMachine(new BytecodeCompiler(new Scope(null)).compile(ast));
+		JvmCompiler.Program jvm = new JvmCompiler(new Scope(null)).compile(ast);
+		TieredInterpreter tiered = new TieredInterpreter(new Scope(null));
+		tiered.visit(ast);
+
+		Benchmarks.run(name + " (interpreter)", iterations, () -> interpreter.execute().hashCode());
+		Benchmarks.run(name + " (closures)", iterations, () -> compiler.execute(program).hashCode());
+		Benchmarks.run(name + " (bytecode)", iterations, () -> machine.run().hashCode());
+		Benchmarks.run(name + " (jvm)", iterations, () -> jvm.run().hashCode());
+		Benchmarks.run(name + " (tiered)", iterations, () -> tiered.execute().hashCode());
+	}
+
+}
@@ -0,0 +1,116 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public class ClosureCompilerTests
+{
+
+	@ParameterizedTest
+	@MethodSource
+	public void testProgram(String test, String input, Object expected)
+	{
+		Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+		new Analyzer(new Scope(null)).visit(ast);
+
+		ClosureCompiler compiler = new ClosureCompiler(new Scope(null));
+		ClosureCompiler.Node program = compiler.visit(ast);
+		Assertions.assertEquals(expected, compiler.execute(program).getValue());
+		Assertions.assertEquals(expected, compiler.execute(program).getValue(), "Executing the program again.");
+		Assertions.assertEquals(new Interpreter(new Scope(null)).visit(ast).getValue(), expected, "The Interpreter disagrees.");
+	}
+
+	private static Stream<Arguments> testProgram()
+	{
+		return Stream.of(
+				Arguments.of("Recursion",
+						"DEF fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END " +
+						"DEF main(): Integer DO RETURN fib(15); END",
+						BigInteger.valueOf(610)
+				),
+				Arguments.of("Call",
+						"DEF twice(n: Integer): Integer DO RETURN n * 2; END " +
+						"DEF main(): Integer DO RETURN twice(21); END",
+						BigInteger.valueOf(42)
+				),
+				Arguments.of("Shadowed Library Function",
+						"DEF abs(x: Integer): Integer DO RETURN x; END " +
+						"DEF main(): Integer DO RETURN abs(-1) + max(1, 2); END",
+						BigInteger.valueOf(1)
+				),
+				Arguments.of("Fields",
+						"LET x: Integer = 1; LET y: Integer = x + 1; " +
+						"DEF inc(): Integer DO x = x + y; RETURN x; END " +
+						"DEF main(): Integer DO inc(); RETURN inc(); END",
+						BigInteger.valueOf(5)
+				),
+				Arguments.of("Loops",
+						"DEF main(): Integer DO LET total = 0; LET i = 0; " +
+						"WHILE i < 10 DO LET a = i; total = total + a; i = i + 1; END " +
+						"FOR j IN range(0, 5) DO LET b = j * j; total = total + b; END " +
+						"RETURN total; END",
+						BigInteger.valueOf(75)
+				),
+				Arguments.of("Return From Loop",
+						"DEF find(n: Integer): Integer DO FOR i IN range(0, 100) DO IF i * i >= n DO RETURN i; END END RETURN -1; END " +
+						"DEF main(): Integer DO RETURN find(50); END",
+						BigInteger.valueOf(8)
+				),
+				Arguments.of("Shadowing",
+						"LET x: Integer = 1; " +
+						"DEF main(): Integer DO LET y = x; IF TRUE DO LET x = 10; y = y + x; END RETURN y + x; END",
+						BigInteger.valueOf(12)
+				),
+				Arguments.of("Overflow",
+						"DEF main(): Integer DO LET x = 2147483647; LET i = 0; WHILE i < 3 DO x = x * x; i = i + 1; END RETURN x.compare(0); END",
+						BigInteger.ONE
+				),
+				Arguments.of("Short Circuit",
+						"DEF fail(): Boolean DO RETURN 1 / 0 == 0; END " +
+						"DEF main(): Integer DO IF FALSE AND fail() DO RETURN 1; END IF TRUE OR fail() DO RETURN 2; END RETURN 3; END",
+						BigInteger.valueOf(2)
+				),
+				Arguments.of("Strings",
+						"DEF main(): Integer DO LET s = \"\"; FOR i IN range(0, 3) DO s = s + \"ab\"; END RETURN s.length + s.indexOf(\"b\"); END",
+						BigInteger.valueOf(7)
+				),
+				Arguments.of("Decimals",
+						"DEF main(): Integer DO LET d = 0.5; RETURN (d * 3.0 + 0.25).compare(1.75); END",
+						BigInteger.ZERO
+				)
+		);
+	}
+
+	@Test
+	public void testUnanalyzed()
+	{
+		Scope scope = new Scope(null);
+		scope.defineVariable("variable", Environment.create(BigInteger.TEN));
+		ClosureCompiler compiler = new ClosureCompiler(scope);
+
+		Ast.Expr expression = new Ast.Expr.Binary("+",
+				new Ast.Expr.Access(Optional.empty(), "variable"),
+				new Ast.Expr.Group(new Ast.Expr.Literal(new BigDecimal("1.5")))
+		);
+		Assertions.assertThrows(RuntimeException.class, () -> compiler.execute(compiler.visit(expression)));
+
+		Ast.Source source = new Ast.Source(
+				Arrays.asList(new Ast.Field("x", Optional.of(new Ast.Expr.Literal(BigInteger.ONE)))),
+				Arrays.asList(new Ast.Method("main", Arrays.asList(), Arrays.asList(
+						new Ast.Stmt.Assignment(new Ast.Expr.Access(Optional.empty(), "variable"), new Ast.Expr.Access(Optional.empty(), "x"))
+				)))
+		);
+		Assertions.assertEquals(Environment.NIL, compiler.execute(compiler.visit(source)));
+		Assertions.assertEquals(BigInteger.ONE, scope.lookupVariable("variable").getValue().getValue());
+	}
+
+}
@@ -0,0 +1,64 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures reading and assigning global variables through a concurrent
+ * {@link Scope} shared by several threads, compared to a regular scope used by
+ * a single thread, as done by interpreters accessing shared globals.
+ */
+public final class ConcurrentScopeBenchmark
+{
+
+	private static final int VARIABLES = 64;
+	private static final int ITERATIONS = 5_000_000;
+
+	public static void main(String[] args) throws Exception
+	{
+		Scope scope = createGlobals(new Scope(null, false));
+		Benchmarks.runConcurrently("Scope", 1, ITERATIONS, () -> access(scope));
+
+		Scope concurrent = createGlobals(new Scope(null, true));
+		for (int threads = 1; threads <= 8; threads *= 2)
+		{
+			Benchmarks.runConcurrently("Scope (concurrent)", threads, ITERATIONS, () -> access(concurrent));
+		}
+	}
+
+	private static Scope createGlobals(Scope scope)
+	{
+		for (int i = 0; i < VARIABLES; i++)
+		{
+			scope.defineVariable("variable" + i, Environment.create(BigInteger.valueOf(i)));
+		}
+		return new Scope(scope);
+	}
+
+	/**
+	 * Reads a random variable from the parent of the scope, and assigns one in
+	 * sixteen of them.
+	 */
+	private static int access(Scope scope)
+	{
+		int random = ThreadLocalRandom.current().nextInt();
+		Environment.Variable variable = scope.lookupVariable(NAMES[random & (VARIABLES - 1)]);
+		Environment.PlcObject value = variable.getValue();
+		if ((random & 0xF0) == 0)
+		{
+			variable.setValue(value);
+		}
+		return value.hashCode();
+	}
+
+	private static final String[] NAMES = new String[VARIABLES];
+
+	static
+	{
+		for (int i = 0; i < VARIABLES; i++)
+		{
+			NAMES[i] = "variable" + i;
+		}
+	}
+
+}
@@ -0,0 +1,64 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class ConstantFolderTests
+{
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource
+	void testFold(String test, String input, Object expected)
+	{
+		Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+		new Analyzer(new Scope(null)).visit(ast);
+		Ast.Source folded = new ConstantFolder().visit(ast);
+
+		List<Ast.Stmt> statements = folded.getMethods().get(0).getStatements();
+		Ast.Expr value = ((Ast.Stmt.Return) statements.get(statements.size() - 1)).getValue();
+
+		if (expected != null)
+		{
+			Assertions.assertTrue(value instanceof Ast.Expr.Literal, value.toString());
+			Assertions.assertEquals(expected, ((Ast.Expr.Literal) value).getLiteral());
+		}
+		else
+		{
+			Assertions.assertFalse(value instanceof Ast.Expr.Literal, value.toString());
+		}
+	}
+
+	private static Stream<Arguments> testFold()
+	{
+		return Stream.of(
+				Arguments.of("Integer Arithmetic", program("", "Integer", "", "1 + 2 * 3"), BigInteger.valueOf(7)),
+				Arguments.of("Grouping", program("", "Integer", "", "(1 + 2) * 3"), BigInteger.valueOf(9)),
+				Arguments.of("Decimal Multiplication", program("", "Decimal", "", "1.5 * 2.0"), new BigDecimal("3.00")),
+				Arguments.of("Decimal Division", program("", "Decimal", "", "1.0 / 3.0"), null),
+				Arguments.of("String Concatenation", program("", "String", "", "\"a\" + \"b\""), "ab"),
+				Arguments.of("Comparison", program("", "Boolean", "", "1 < 2 AND 2 < 1"), false),
+				Arguments.of("Constant Field", program("LET x: Integer = 4;", "Integer", "", "x * 2"), BigInteger.valueOf(8)),
+				Arguments.of("Assigned Field", program("LET x: Integer = 4;", "Integer", "x = 5;", "x * 2"), null),
+				Arguments.of("Shadowed Field", program("LET x: Integer = 4;", "Integer", "LET x = 5; x = 6;", "x * 2"), null),
+				Arguments.of("Integer Overflow", program("", "Integer", "", "2147483647 + 1"), null),
+				Arguments.of("Division by Zero", program("", "Integer", "", "1 / 0"), null)
+		);
+	}
+
+	/**
+	 * Creates a program with a method {@code f} returning {@code expression}
+	 * after running {@code statements}, followed by an empty {@code main}.
+	 */
+	private static String program(String fields, String type, String statements, String expression)
+	{
+		return fields + " DEF f(): " + type + " DO " + statements + " RETURN " + expression + "; END DEF main(): Integer DO RETURN 0; END";
+	}
+
+}
@@ -0,0 +1,68 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class DeadCodeEliminatorTests
+{
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource
+	void testEliminate(String test, String input, List<String> methods, int statements, int removed)
+	{
+		Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+		new Analyzer(new Scope(null)).visit(ast);
+		DeadCodeEliminator eliminator = new DeadCodeEliminator();
+		Ast.Source optimized = eliminator.visit(new ConstantFolder().visit(ast));
+
+		Assertions.assertEquals(methods, optimized.getMethods().stream().map(Ast.Method::getName).collect(Collectors.toList()));
+		Assertions.assertEquals(statements, optimized.getMethods().get(optimized.getMethods().size() - 1).getStatements().size());
+		Assertions.assertEquals(removed, eliminator.getRemoved().size());
+	}
+
+	private static Stream<Arguments> testEliminate()
+	{
+		return Stream.of(
+				Arguments.of("After Return",
+						"DEF main(): Integer DO RETURN 0; print(1); print(2); END",
+						Arrays.asList("main"), 1, 2
+				),
+				Arguments.of("If False",
+						"DEF main(): Integer DO IF 1 > 2 DO print(1); END RETURN 0; END",
+						Arrays.asList("main"), 1, 1
+				),
+				Arguments.of("If True Inlined",
+						"DEF main(): Integer DO IF TRUE DO print(1); ELSE print(2); END RETURN 0; END",
+						Arrays.asList("main"), 2, 1
+				),
+				Arguments.of("If True With Declaration",
+						"DEF main(): Integer DO IF TRUE DO LET x = 1; print(x); END RETURN 0; END",
+						Arrays.asList("main"), 2, 0
+				),
+				Arguments.of("Returning Branch",
+						"DEF main(): Integer DO IF TRUE DO RETURN 1; END RETURN 0; END",
+						Arrays.asList("main"), 1, 1
+				),
+				Arguments.of("While False",
+						"DEF main(): Integer DO WHILE FALSE DO print(1); END RETURN 0; END",
+						Arrays.asList("main"), 1, 1
+				),
+				Arguments.of("While True",
+						"DEF main(): Integer DO WHILE TRUE DO RETURN 1; END RETURN 0; END",
+						Arrays.asList("main"), 1, 1
+				),
+				Arguments.of("Unreachable Method",
+						"DEF unused() DO print(1); END DEF used(): Integer DO RETURN 0; END DEF main(): Integer DO RETURN used(); END",
+						Arrays.asList("used", "main"), 1, 1
+				)
+		);
+	}
+
+}
@@ -0,0 +1,118 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+public class EnvironmentTests
+{
+
+	@Test
+	public void testSelectors()
+	{
+		Assertions.assertEquals(Selector.of("selector", 2), Selector.of("selector", 2));
+		Assertions.assertNotEquals(Selector.of("selector", 2), Selector.of("selector", 1));
+		Assertions.assertEquals("selector", Selector.getName(Selector.of("selector", 1)));
+		Assertions.assertEquals(1, Selector.getArity(Selector.of("selector", 1)));
+	}
+
+	@Test
+	public void testMethodTable()
+	{
+		Environment.Type integer = Environment.getType("Integer");
+		Environment.Type comparable = Environment.getType("Comparable");
+
+		Assertions.assertSame(integer.getScope().lookupFunction("compare", 2), integer.getMethod("compare", 1));
+		Assertions.assertNotSame(comparable.getMethod("compare", 1), integer.getMethod("compare", 1));
+		Assertions.assertSame(Environment.Type.ANY.getScope().lookupFunction("stringify", 1), integer.getMethod(Selector.of("stringify", 1)));
+		Assertions.assertThrows(RuntimeException.class, () -> integer.getMethod("slice", 2));
+	}
+
+	@Test
+	public void testMethodDefinedAfterRegistration()
+	{
+		Scope baseScope = new Scope(Environment.Type.ANY.getScope());
+		baseScope.defineFunction("describe", "describe", Arrays.asList(Environment.Type.ANY), Environment.Type.STRING, args -> Environment.create("base"));
+		Environment.Type base = new Environment.Type("LateBase", "LateBase", baseScope);
+		Environment.Type derived = new Environment.Type("LateDerived", "LateDerived", new Scope(baseScope));
+
+		TypeRegistry types = Environment.createTypes();
+		types.register(base);
+		types.register(derived);
+		Assertions.assertEquals("base", derived.getMethod("describe", 0).invoke(Environment.NIL).getValue());
+
+		derived.getScope().defineFunction("describe", "describe", Arrays.asList(Environment.Type.ANY), Environment.Type.STRING, args -> Environment.create("derived"));
+		Assertions.assertEquals("derived", derived.getMethod("describe", 0).invoke(Environment.NIL).getValue());
+		Assertions.assertEquals("base", base.getMethod("describe", 0).invoke(Environment.NIL).getValue());
+
+		baseScope.defineFunction("measure", "measure", Arrays.asList(Environment.Type.ANY), Environment.Type.INTEGER, args -> Environment.create(BigInteger.ONE));
+		Assertions.assertSame(baseScope.lookupFunction("measure", 1), derived.getMethod("measure", 0));
+	}
+
+	@Test
+	public void testUnboxedValues()
+	{
+		Environment.PlcObject integer = Environment.create(BigInteger.valueOf(42));
+		Assertions.assertTrue(integer.isLong());
+		Assertions.assertEquals(42, integer.getLong());
+		Assertions.assertEquals(BigInteger.valueOf(42), integer.getValue());
+		Assertions.assertFalse(Environment.create(BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE)).isLong());
+
+		Environment.PlcObject decimal = Environment.create(new BigDecimal("1.50"));
+		Assertions.assertTrue(decimal.isCompactDecimal());
+		Assertions.assertEquals(150, decimal.getUnscaled());
+		Assertions.assertEquals(2, decimal.getScale());
+		Assertions.assertEquals(new BigDecimal("1.50"), decimal.getValue());
+		Assertions.assertEquals(new BigDecimal("-0.005"), Environment.createDecimal(-5, 3).getValue());
+
+		Assertions.assertSame(Environment.create(true), Environment.create(true));
+		Assertions.assertSame(Environment.create(false), Environment.create(1 > 2));
+	}
+
+	@Test
+	public void testCanonicalValues()
+	{
+		Assertions.assertSame(Environment.FALSE, Environment.create(Boolean.FALSE));
+		Assertions.assertSame(Environment.createInteger(1), Environment.create(BigInteger.ONE));
+		Assertions.assertSame(Environment.create('a'), Environment.create('a'));
+		Assertions.assertNotSame(Environment.createInteger(1 << 20), Environment.createInteger(1 << 20));
+		Assertions.assertEquals(BigInteger.valueOf(-128), Environment.createInteger(-128).getValue());
+		Assertions.assertEquals('a', Environment.create('a').getValue());
+		Assertions.assertThrows(RuntimeException.class, () -> Environment.create(BigInteger.TEN).getField("field"));
+		Assertions.assertSame(Environment.Type.STRING, Environment.create("string").getType());
+
+		int iterations = 100_000;
+		long sum = 0;
+		for (int i = 0; i < iterations; i++)
+		{
+			sum += Environment.createInteger(i & 1023).getLong();
+		}
+
+		long bytes = Benchmarks.allocatedBytes();
+		for (int i = 0; i < iterations; i++)
+		{
+			sum += Environment.createInteger(i & 1023).getLong() + (Environment.create(i % 3 == 0).getValue() == Boolean.TRUE ? 1 : 0);
+		}
+		bytes = Benchmarks.allocatedBytes() - bytes;
+
+		Assertions.assertTrue(sum > 0);
+		Assertions.assertTrue(bytes < iterations, "Allocated " + bytes + " bytes for " + iterations + " values.");
+	}
+
+	@Test
+	public void testCallMethod()
+	{
+		Scope scope = new Scope(Environment.Type.ANY.getScope());
+		scope.defineFunction("describe", "describe", Arrays.asList(Environment.Type.ANY), Environment.Type.STRING, args -> Environment.create("described " + args.get(0).getValue()));
+		Environment.Type type = new Environment.Type("DescribedType", "DescribedType", scope);
+		Environment.registerType(type);
+
+		Environment.PlcObject object = new Environment.PlcObject(type, new Scope(null), "object");
+		Assertions.assertEquals("described object", object.callMethod("describe", Arrays.asList()).getValue());
+		Assertions.assertEquals("described object", object.callMethod(Selector.of("describe", 1), Arrays.asList()).getValue());
+	}
+
+}
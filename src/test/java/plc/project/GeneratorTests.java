@@ -1,6 +1,7 @@
 package plc.project;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -10,6 +11,8 @@ import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
@@ -190,6 +193,96 @@ public class GeneratorTests
 		);
 	}
 
+	@ParameterizedTest(name = "{0}")
+	@MethodSource
+	void testForStatement(String test, Ast.Stmt.For ast, String expected)
+	{
+		test(ast, expected);
+	}
+
+	private static Stream<Arguments> testForStatement()
+	{
+		return Stream.of(
+				Arguments.of("Range",
+						// FOR i IN range(0, 10) DO END
+						new Ast.Stmt.For("i", range(integer(0), integer(10)), Arrays.asList()),
+						String.join(System.lineSeparator(),
+								"for (int i$ = 0; i$ < 10; i$++) {",
+								"    int i = i$;",
+								"}"
+						)
+				),
+				Arguments.of("Negative Step",
+						// FOR i IN range(10, 0, -2) DO END
+						new Ast.Stmt.For("i", range(integer(10), integer(0), integer(-2)), Arrays.asList()),
+						String.join(System.lineSeparator(),
+								"for (int i$ = 10; i$ > 0; i$ += -2) {",
+								"    int i = i$;",
+								"}"
+						)
+				),
+				Arguments.of("Assigned Variable",
+						// FOR i IN range(0, 10) DO i = i + 5; END
+						new Ast.Stmt.For("i", range(integer(0), integer(10)), Arrays.asList(
+								new Ast.Stmt.Assignment(variable("i"), init(new Ast.Expr.Binary("+", variable("i"), integer(5)), ast -> ast.setType(Environment.Type.INTEGER)))
+						)),
+						String.join(System.lineSeparator(),
+								"for (int i$ = 0; i$ < 10; i$++) {",
+								"    int i = i$;",
+								"    i = i + 5;",
+								"}"
+						)
+				),
+				Arguments.of("Variable Bounds",
+						// FOR i IN range(0, n, step) DO END
+						new Ast.Stmt.For("i", range(integer(0), variable("n"), variable("step")), Arrays.asList()),
+						String.join(System.lineSeparator(),
+								"{",
+								"    int i$ = 0, i$end = n, i$step = step;",
+								"    if (i$step == 0) {",
+								"        throw new RuntimeException(\"The step of a range cannot be 0.\");",
+								"    }",
+								"    for (; i$step > 0 ? i$ < i$end : i$ > i$end; i$ += i$step) {",
+								"        int i = i$;",
+								"    }",
+								"}"
+						)
+				),
+				Arguments.of("Iterable",
+						// FOR i IN list DO END
+						new Ast.Stmt.For("i", variable("list"), Arrays.asList()),
+						"for (int i : list) {}"
+				)
+		);
+	}
+
+	@Test
+	void testRangeValue()
+	{
+		// LET r = range(0, 3);
+		Ast.Stmt.Declaration ast = init(new Ast.Stmt.Declaration("r", Optional.empty(), Optional.of(range(integer(0), integer(3)))),
+				declaration -> declaration.setVariable(new Environment.Variable("r", "r", Environment.Type.INTEGER_ITERABLE, Environment.NIL)));
+		RuntimeException exception = Assertions.assertThrows(RuntimeException.class, () -> test(ast, ""));
+		Assertions.assertEquals("A range can only be generated as the value of a FOR loop.", exception.getMessage());
+	}
+
+	private static Ast.Expr range(Ast.Expr... arguments)
+	{
+		List<Environment.Type> parameterTypes = Collections.nCopies(arguments.length, Environment.Type.INTEGER);
+		return init(new Ast.Expr.Function(Optional.empty(), "range", Arrays.asList(arguments)),
+				ast -> ast.setFunction(new Environment.Function("range", "range", parameterTypes, Environment.Type.INTEGER_ITERABLE, args -> Environment.NIL)));
+	}
+
+	private static Ast.Expr integer(long value)
+	{
+		return init(new Ast.Expr.Literal(BigInteger.valueOf(value)), ast -> ast.setType(Environment.Type.INTEGER));
+	}
+
+	private static Ast.Expr variable(String name)
+	{
+		return init(new Ast.Expr.Access(Optional.empty(), name), ast -> ast.setVariable(new Environment.Variable(name, name, Environment.Type.INTEGER, Environment.NIL)));
+	}
+
 	/**
 	 * Helper function for tests, using a StringWriter as the output stream.
 	 */
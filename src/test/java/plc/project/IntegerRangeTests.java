@@ -0,0 +1,82 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class IntegerRangeTests
+{
+
+	@Test
+	public void testSize()
+	{
+		Assertions.assertEquals(10, IntegerRange.of(0, 10).size());
+		Assertions.assertEquals(4, IntegerRange.of(0, 10, 3).size());
+		Assertions.assertEquals(5, IntegerRange.of(10, 0, -2).size());
+		Assertions.assertEquals(0, IntegerRange.of(10, 0).size());
+		Assertions.assertEquals(0, IntegerRange.of(0, 10, -1).size());
+		Assertions.assertEquals(-1, IntegerRange.of(Long.MIN_VALUE, Long.MAX_VALUE).size());
+		Assertions.assertThrows(RuntimeException.class, () -> IntegerRange.of(0, 10, 0));
+	}
+
+	@Test
+	public void testIterator()
+	{
+		List<Object> values = new ArrayList<>();
+		for (Environment.PlcObject value : IntegerRange.of(5, -5, -3))
+		{
+			values.add(value.getValue());
+		}
+		Assertions.assertEquals(List.of(BigInteger.valueOf(5), BigInteger.valueOf(2), BigInteger.valueOf(-1), BigInteger.valueOf(-4)), values);
+		Assertions.assertSame(Environment.Type.INTEGER_ITERABLE, Environment.create(IntegerRange.of(0, 1)).getType());
+	}
+
+	@ParameterizedTest
+	@MethodSource
+	public void testProgram(String test, String input, Object expected)
+	{
+		Assertions.assertEquals(expected, run(input).getValue());
+	}
+
+	private static Stream<Arguments> testProgram()
+	{
+		return Stream.of(
+				Arguments.of("Sum", "DEF main(): Integer DO LET sum = 0; FOR i IN range(0, 10) DO sum = sum + i; END RETURN sum; END", BigInteger.valueOf(45)),
+				Arguments.of("Step", "DEF main(): Integer DO LET sum = 0; FOR i IN range(1, 10, 4) DO sum = sum + i; END RETURN sum; END", BigInteger.valueOf(15)),
+				Arguments.of("Negative Step", "DEF main(): Integer DO LET last = 0; FOR i IN range(3, -3, -2) DO last = i; END RETURN last; END", BigInteger.valueOf(-1)),
+				Arguments.of("Empty", "DEF main(): Integer DO LET count = 0; FOR i IN range(5, 5) DO count = count + 1; END RETURN count; END", BigInteger.ZERO),
+				Arguments.of("Large", "DEF main(): Integer DO LET sum = 0; FOR i IN range(0, 2000000000, 500000000) DO sum = sum + i; END RETURN sum; END", BigInteger.valueOf(3000000000L))
+		);
+	}
+
+	@Test
+	public void testAllocation()
+	{
+		Ast.Source ast = new Parser(new Lexer("DEF main(): Integer DO LET last = 0; FOR i IN range(0, 1000) DO last = i; END RETURN last; END").lex()).parseSource();
+		new Analyzer(new Scope(null)).visit(ast);
+		Interpreter interpreter = new Interpreter(new Scope(null));
+		interpreter.visit(ast);
+		Environment.Function main = interpreter.getScope().lookupFunction("main", 0);
+
+		long bytes = Benchmarks.allocatedBytes();
+		main.invoke();
+		bytes = Benchmarks.allocatedBytes() - bytes;
+		// the call itself allocates, but far less than an object per element
+		Assertions.assertTrue(bytes < 4 * 1000, "Allocated " + bytes + " bytes for 1000 iterations.");
+	}
+
+	private static Environment.PlcObject run(String input)
+	{
+		Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+		new Analyzer(new Scope(null)).visit(ast);
+		return new Interpreter(new Scope(null)).visit(ast);
+	}
+
+}
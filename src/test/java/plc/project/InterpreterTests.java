@@ -13,6 +13,7 @@ import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -47,6 +48,105 @@ final class InterpreterTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testAnalyzedSource(String test, String input, Object expected) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        test(ast, expected, new Scope(null));
+    }
+
+    private static Stream<Arguments> testAnalyzedSource() {
+        return Stream.of(
+                Arguments.of("Recursion",
+                        "DEF fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END " +
+                        "DEF main(): Integer DO RETURN fib(10); END",
+                        BigInteger.valueOf(55)
+                ),
+                Arguments.of("Field Assignment",
+                        "LET x: Integer = 1; LET y: Integer = x + 1; " +
+                        "DEF inc(): Integer DO x = x + y; RETURN x; END " +
+                        "DEF main(): Integer DO inc(); RETURN inc(); END",
+                        BigInteger.valueOf(5)
+                ),
+                Arguments.of("Reused Slots",
+                        "DEF main(): Integer DO LET total = 0; LET i = 0; " +
+                        "WHILE i < 3 DO LET a = i; total = total + a; i = i + 1; END " +
+                        "IF total > 0 DO LET b = 10; total = total + b; END " +
+                        "RETURN total; END",
+                        BigInteger.valueOf(13)
+                )
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testLoopScopes(String test, String input, Object expected) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        test(ast, expected, createList());
+
+        Scope scope = new Scope(null);
+        scope.defineVariable("list", "list", Environment.Type.INTEGER_ITERABLE, Environment.NIL);
+        new Analyzer(scope).visit(ast);
+        test(ast, expected, createList());
+    }
+
+    private static Stream<Arguments> testLoopScopes() {
+        return Stream.of(
+                Arguments.of("While Without Declarations",
+                        "DEF main(): Integer DO LET i = 0; WHILE i < 5 DO i = i + 1; END RETURN i; END",
+                        BigInteger.valueOf(5)
+                ),
+                Arguments.of("While With Declarations",
+                        "DEF main(): Integer DO LET i = 0; LET sum = 0; " +
+                        "WHILE i < 5 DO LET next = i + 1; sum = sum + next; i = next; END RETURN sum; END",
+                        BigInteger.valueOf(15)
+                ),
+                Arguments.of("Nested Loops",
+                        "DEF main(): Integer DO LET sum = 0; " +
+                        "FOR i IN list DO FOR j IN list DO LET product = i * j; sum = sum + product; END END RETURN sum; END",
+                        BigInteger.valueOf(100)
+                ),
+                Arguments.of("Return From Loop",
+                        "DEF find(): Integer DO FOR i IN list DO LET square = i * i; IF square > 5 DO RETURN i; END END RETURN 0; END " +
+                        "DEF main(): Integer DO LET first = find(); RETURN first + find(); END",
+                        BigInteger.valueOf(6)
+                )
+        );
+    }
+
+    private static Scope createList() {
+        Scope scope = new Scope(null);
+        scope.defineVariable("list", Environment.create(IntStream.range(0, 5)
+                .mapToObj(i -> Environment.create(BigInteger.valueOf(i)))
+                .collect(Collectors.toList())));
+        return scope;
+    }
+
+    @Test
+    void testFork() throws Exception {
+        Ast.Source ast = new Parser(new Lexer(
+                "LET count: Integer = 0; " +
+                "DEF increment(): Integer DO count = count + 1; RETURN count; END " +
+                "DEF main(): Integer DO increment(); RETURN increment(); END"
+        ).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        interpreter.prepare(ast);
+
+        List<CompletableFuture<Object>> results = IntStream.range(0, 100)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> interpreter.fork().execute().getValue()))
+                .collect(Collectors.toList());
+        for (CompletableFuture<Object> result : results) {
+            Assertions.assertEquals(BigInteger.valueOf(2), result.get());
+        }
+
+        Interpreter fork = interpreter.fork();
+        Assertions.assertEquals(BigInteger.valueOf(2), fork.execute().getValue());
+        Assertions.assertEquals(BigInteger.valueOf(4), fork.execute().getValue());
+        Assertions.assertEquals(BigInteger.valueOf(2), interpreter.fork().execute().getValue());
+    }
+
     @ParameterizedTest
     @MethodSource
     void testField(String test, Ast.Field ast, Object expected) {
@@ -322,6 +422,72 @@ final class InterpreterTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testUnboxedArithmetic(String test, Ast ast, Object expected) {
+        test(ast, expected, new Scope(null));
+    }
+
+    private static Stream<Arguments> testUnboxedArithmetic() {
+        BigInteger max = BigInteger.valueOf(Long.MAX_VALUE);
+        BigInteger min = BigInteger.valueOf(Long.MIN_VALUE);
+        return Stream.of(
+                Arguments.of("Addition Overflow",
+                        new Ast.Expr.Binary("+", new Ast.Expr.Literal(max), new Ast.Expr.Literal(BigInteger.ONE)),
+                        max.add(BigInteger.ONE)
+                ),
+                Arguments.of("Subtraction Overflow",
+                        new Ast.Expr.Binary("-", new Ast.Expr.Literal(min), new Ast.Expr.Literal(BigInteger.ONE)),
+                        min.subtract(BigInteger.ONE)
+                ),
+                Arguments.of("Multiplication Overflow",
+                        new Ast.Expr.Binary("*", new Ast.Expr.Literal(max), new Ast.Expr.Literal(BigInteger.TWO)),
+                        max.multiply(BigInteger.TWO)
+                ),
+                Arguments.of("Marked Multiplication Overflow",
+                        overflowSafe(new Ast.Expr.Binary("*", new Ast.Expr.Literal(max), new Ast.Expr.Literal(max))),
+                        max.multiply(max)
+                ),
+                Arguments.of("Division Overflow",
+                        new Ast.Expr.Binary("/", new Ast.Expr.Literal(min), new Ast.Expr.Literal(BigInteger.ONE.negate())),
+                        min.negate()
+                ),
+                Arguments.of("Truncated Division",
+                        new Ast.Expr.Binary("/", new Ast.Expr.Literal(BigInteger.valueOf(-7)), new Ast.Expr.Literal(BigInteger.TWO)),
+                        BigInteger.valueOf(-3)
+                ),
+                Arguments.of("Decimal Addition",
+                        new Ast.Expr.Binary("+", new Ast.Expr.Literal(new BigDecimal("0.1")), new Ast.Expr.Literal(new BigDecimal("0.2"))),
+                        new BigDecimal("0.3")
+                ),
+                Arguments.of("Decimal Addition Scales",
+                        new Ast.Expr.Binary("+", new Ast.Expr.Literal(new BigDecimal("1.5")), new Ast.Expr.Literal(new BigDecimal("0.25"))),
+                        new BigDecimal("1.75")
+                ),
+                Arguments.of("Decimal Multiplication",
+                        new Ast.Expr.Binary("*", new Ast.Expr.Literal(new BigDecimal("1.5")), new Ast.Expr.Literal(new BigDecimal("0.25"))),
+                        new BigDecimal("0.375")
+                ),
+                Arguments.of("Decimal Equality Scale",
+                        new Ast.Expr.Binary("==", new Ast.Expr.Literal(new BigDecimal("1.0")), new Ast.Expr.Literal(new BigDecimal("1.00"))),
+                        false
+                ),
+                Arguments.of("Decimal Comparison Scales",
+                        new Ast.Expr.Binary("<", new Ast.Expr.Literal(new BigDecimal("1.05")), new Ast.Expr.Literal(new BigDecimal("1.1"))),
+                        true
+                )
+        );
+    }
+
+    /**
+     * Marks an expression as overflow-safe regardless of its operands, as an
+     * unsound analysis (or a folded copy of its result) might.
+     */
+    private static Ast.Expr.Binary overflowSafe(Ast.Expr.Binary binary) {
+        binary.setOverflowSafe(true);
+        return binary;
+    }
+
     @ParameterizedTest
     @MethodSource
     void testAccessExpression(String test, Ast ast, Object expected) {
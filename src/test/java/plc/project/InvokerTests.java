@@ -0,0 +1,70 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+public class InvokerTests
+{
+
+	private static final Environment.PlcObject A = Environment.create("a");
+	private static final Environment.PlcObject B = Environment.create("b");
+	private static final Environment.PlcObject C = Environment.create("c");
+
+	@Test
+	public void testArities()
+	{
+		Invoker unary = Invoker.of(first -> first);
+		Invoker binary = Invoker.of((first, second) -> second);
+		Invoker variadic = Invoker.variadic(arguments -> Environment.create(BigInteger.valueOf(arguments.length)));
+
+		Assertions.assertSame(A, unary.invoke(A));
+		Assertions.assertSame(A, unary.invoke(new Environment.PlcObject[]{A}));
+		Assertions.assertSame(B, binary.invoke(Arrays.asList(A, B)));
+		Assertions.assertThrows(RuntimeException.class, () -> unary.invoke(A, B));
+		Assertions.assertThrows(RuntimeException.class, () -> binary.invoke(A));
+		Assertions.assertThrows(RuntimeException.class, () -> binary.invoke(Arrays.asList(A, B, C)));
+		Assertions.assertEquals(BigInteger.ZERO, variadic.invoke().getValue());
+		Assertions.assertEquals(BigInteger.valueOf(3), variadic.invoke(A, B, C).getValue());
+		Assertions.assertEquals(BigInteger.valueOf(5), variadic.invoke(Arrays.asList(A, B, C, A, B)).getValue());
+	}
+
+	@Test
+	public void testList()
+	{
+		List<Environment.PlcObject> arguments = Arrays.asList(A, B);
+		Invoker invoker = Invoker.ofList(list -> list == arguments ? A : list.get(1));
+
+		Assertions.assertSame(A, invoker.invoke(arguments));
+		Assertions.assertSame(C, invoker.invoke(B, C));
+	}
+
+	@Test
+	public void testCallMethod()
+	{
+		Scope scope = new Scope(Environment.Type.ANY.getScope());
+		scope.defineFunction("pick", "pick", Arrays.asList(Environment.Type.ANY, Environment.Type.ANY, Environment.Type.ANY), Environment.Type.ANY, Invoker.of((receiver, first, second) -> second));
+		scope.defineFunction("count", "count", Arrays.asList(Environment.Type.ANY, Environment.Type.ANY, Environment.Type.ANY, Environment.Type.ANY, Environment.Type.ANY), Environment.Type.ANY, Invoker.variadic(arguments -> arguments.length == 5 ? arguments[4] : null));
+		Environment.Type type = new Environment.Type("InvokerType", "InvokerType", scope);
+		Environment.registerType(type);
+		Environment.PlcObject object = new Environment.PlcObject(type, new Scope(null), "object");
+		int pick = Selector.of("pick", 3);
+
+		Assertions.assertSame(C, object.callMethod(pick, B, C));
+		Assertions.assertSame(C, object.callMethod("pick", Arrays.asList(B, C)));
+		Assertions.assertSame(A, object.callMethod("count", Arrays.asList(B, B, B, A)));
+
+		int iterations = 100_000;
+		long bytes = Benchmarks.allocatedBytes();
+		for (int i = 0; i < iterations; i++)
+		{
+			object.callMethod(pick, B, C);
+		}
+		bytes = Benchmarks.allocatedBytes() - bytes;
+		Assertions.assertTrue(bytes < iterations, "Allocated " + bytes + " bytes for " + iterations + " calls.");
+	}
+
+}
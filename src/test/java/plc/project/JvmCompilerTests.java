@@ -0,0 +1,68 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.lang.invoke.MethodHandle;
+import java.math.BigInteger;
+
+/**
+ * Runs the programs of {@link InterpreterTests} and {@link
+ * ClosureCompilerTests} compiled by the {@link JvmCompiler}, checking that the
+ * results match the {@link Interpreter}'s.
+ */
+public class JvmCompilerTests
+{
+
+	@ParameterizedTest
+	@MethodSource("plc.project.InterpreterTests#testSource")
+	public void testSource(String test, Ast.Source ast, Object expected)
+	{
+		test(ast, expected);
+	}
+
+	@ParameterizedTest
+	@MethodSource({"plc.project.InterpreterTests#testAnalyzedSource", "plc.project.ClosureCompilerTests#testProgram"})
+	public void testAnalyzedSource(String test, String input, Object expected)
+	{
+		test(analyze(input), expected);
+	}
+
+	@Test
+	public void testMethodHandle() throws Throwable
+	{
+		Ast.Source ast = analyze("DEF fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END " +
+				"DEF main(): Integer DO RETURN fib(10); END");
+		JvmCompiler.Program program = new JvmCompiler(new Scope(null)).compile(ast);
+
+		Assertions.assertTrue(program.getType().isHidden());
+		MethodHandle fib = program.getMethod("fib", 1);
+		Assertions.assertEquals(BigInteger.valueOf(6765), ((Environment.PlcObject) fib.invoke(Environment.createInteger(20))).getValue());
+		Assertions.assertThrows(RuntimeException.class, () -> program.getMethod("fib", 2));
+	}
+
+	@Test
+	public void testDeepRecursion()
+	{
+		Ast.Source ast = analyze("DEF count(n: Integer): Integer DO IF n == 0 DO RETURN 0; END RETURN 1 + count(n - 1); END " +
+				"DEF main(): Integer DO RETURN count(5000); END");
+		Assertions.assertEquals(BigInteger.valueOf(5000), new JvmCompiler(new Scope(null)).compile(ast).run().getValue());
+	}
+
+	private static Ast.Source analyze(String input)
+	{
+		Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+		new Analyzer(new Scope(null)).visit(ast);
+		return ast;
+	}
+
+	private static void test(Ast.Source ast, Object expected)
+	{
+		JvmCompiler.Program program = new JvmCompiler(new Scope(null)).compile(ast);
+		Assertions.assertEquals(expected, program.run().getValue());
+		Assertions.assertEquals(expected, program.run().getValue(), "Running the program again.");
+	}
+
+}
@@ -0,0 +1,80 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class PersistentScopeTests
+{
+
+	@Test
+	public void testPersistentMap()
+	{
+		PersistentMap<String, Integer> map = PersistentMap.empty();
+		Map<String, Integer> expected = new HashMap<>();
+		PersistentMap<String, Integer> half = null;
+
+		for (int i = 0; i < 2000; i++)
+		{
+			map = map.put("key" + i, i);
+			expected.put("key" + i, i);
+			if (i == 999)
+			{
+				half = map;
+			}
+		}
+
+		Assertions.assertEquals(2000, map.size());
+		for (Map.Entry<String, Integer> entry : expected.entrySet())
+		{
+			Assertions.assertEquals(entry.getValue(), map.get(entry.getKey()));
+		}
+		Assertions.assertEquals(1000, half.size());
+		Assertions.assertNull(half.get("key1000"));
+		Assertions.assertEquals(999, half.get("key999"));
+
+		Map<String, Integer> entries = new HashMap<>();
+		map.forEach(entries::put);
+		Assertions.assertEquals(expected, entries);
+	}
+
+	@Test
+	public void testPersistentMapCollisions()
+	{
+		// "Aa" and "BB" have the same hash code
+		PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().put("Aa", 1).put("BB", 2);
+		PersistentMap<String, Integer> replaced = map.put("BB", 3).put("C", 4);
+
+		Assertions.assertEquals(1, map.get("Aa"));
+		Assertions.assertEquals(2, map.get("BB"));
+		Assertions.assertEquals(2, map.size());
+		Assertions.assertEquals(3, replaced.get("BB"));
+		Assertions.assertEquals(4, replaced.get("C"));
+		Assertions.assertEquals(3, replaced.size());
+	}
+
+	@Test
+	public void testFork()
+	{
+		PersistentScope persistent = new PersistentScope(null)
+				.defineVariable("x", "x", Environment.Type.INTEGER, Environment.create(1))
+				.defineFunction(new Environment.Function("f", 0, args -> Environment.create("f")));
+		Scope first = persistent.fork();
+		Scope second = persistent.fork(function -> new Environment.Function(function.getName(), 0, args -> Environment.create("bound")));
+
+		first.lookupVariable("x").setValue(Environment.create(2));
+		Assertions.assertEquals(2, first.lookupVariable("x").getValue().getValue());
+		Assertions.assertEquals(1, second.lookupVariable("x").getValue().getValue());
+		Assertions.assertEquals(1, persistent.fork().lookupVariable("x").getValue().getValue());
+
+		Assertions.assertEquals("f", first.lookupFunction("f", 0).invoke().getValue());
+		Assertions.assertEquals("bound", second.lookupFunction("f", 0).invoke().getValue());
+		Assertions.assertSame(second.lookupFunction("f", 0), second.lookupFunction("f", 0));
+
+		Assertions.assertThrows(RuntimeException.class, () -> first.defineVariable("x", Environment.NIL));
+		Assertions.assertThrows(RuntimeException.class, () -> persistent.defineVariable("x", "x", Environment.Type.ANY, Environment.NIL));
+	}
+
+}
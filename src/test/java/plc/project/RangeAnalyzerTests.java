@@ -0,0 +1,91 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class RangeAnalyzerTests
+{
+
+	@ParameterizedTest(name = "{0}")
+	@MethodSource
+	void testOverflowSafe(String test, String input, boolean expected)
+	{
+		Ast.Source ast = new Parser(new Lexer(input + " DEF main(): Integer DO RETURN 0; END").lex()).parseSource();
+		new Analyzer(new Scope(null)).visit(ast);
+		new RangeAnalyzer().visit(ast);
+
+		Ast.Expr.Binary returned = (Ast.Expr.Binary) findReturn(ast.getMethods().get(0).getStatements()).getValue();
+		Assertions.assertEquals(expected, returned.isOverflowSafe());
+	}
+
+	private static Stream<Arguments> testOverflowSafe()
+	{
+		return Stream.of(
+				Arguments.of("Literals", "DEF f(): Integer DO RETURN 1 + 2; END", true),
+				Arguments.of("Large Literals", "DEF f(): Integer DO RETURN 2147483647 + 1; END", false),
+				Arguments.of("Parameter", "DEF f(x: Integer): Integer DO RETURN x + 1; END", false),
+				Arguments.of("Guarded Parameter", "DEF f(x: Integer): Integer DO IF x < 100 AND x > -100 DO RETURN x * x; END RETURN 0; END", true),
+				Arguments.of("Negated Guard", "DEF f(x: Integer): Integer DO IF x >= 100 DO RETURN 0; ELSE RETURN x + 1; END END", false),
+				Arguments.of("Negated Guards", "DEF f(x: Integer): Integer DO IF x >= 100 OR x < 0 DO RETURN 0; ELSE RETURN x + 1; END END", true),
+				Arguments.of("Bounded Loop", "DEF f(): Integer DO LET i = 0; WHILE i < 10 DO i = i + 1; END RETURN i * 2; END", true),
+				Arguments.of("Unbounded Loop", "DEF f(): Integer DO LET i = 1; WHILE i != 0 DO i = i * 2; END RETURN i + 1; END", false),
+				Arguments.of("Reassigned Variable", "DEF f(x: Integer): Integer DO LET y = 1; y = x; RETURN y + 1; END", false),
+				Arguments.of("Halving", "DEF f(x: Integer): Integer DO RETURN x / 2; END", false),
+				Arguments.of("Guarded Halving", "DEF f(x: Integer): Integer DO IF x < 100 AND x > -100 DO RETURN x / 2; END RETURN 0; END", true),
+				Arguments.of("Quotients", "DEF f(p: Integer): Integer DO RETURN (p / 65536) * (p / 65536); END", false),
+				Arguments.of("Negative Divisor", "LET y: Integer = 1; DEF f(x: Integer): Integer DO RETURN x / y; END", false)
+		);
+	}
+
+	/**
+	 * Integers aren't bounded by the range of an int, so a parameter may be
+	 * the square of one.
+	 */
+	@Test
+	void testUnboundedParameter()
+	{
+		Ast.Source ast = new Parser(new Lexer("DEF sq(p: Integer): Integer DO RETURN (p / 65536) * (p / 65536); END " +
+				"DEF main(): Integer DO LET x = 2147483647; x = x * x; RETURN sq(x); END").lex()).parseSource();
+		new Analyzer(new Scope(null)).visit(ast);
+		new RangeAnalyzer().visit(ast);
+
+		Assertions.assertEquals(new BigInteger("4951760147918149067036688384"), new Interpreter(new Scope(null)).visit(ast).getValue());
+	}
+
+	/**
+	 * Returns the first RETURN statement with a binary value in the given
+	 * statements.
+	 */
+	private static Ast.Stmt.Return findReturn(List<Ast.Stmt> statements)
+	{
+		for (Ast.Stmt statement : statements)
+		{
+			Ast.Stmt.Return result = null;
+			if (statement instanceof Ast.Stmt.Return && ((Ast.Stmt.Return) statement).getValue() instanceof Ast.Expr.Binary)
+			{
+				result = (Ast.Stmt.Return) statement;
+			}
+			else if (statement instanceof Ast.Stmt.If)
+			{
+				result = findReturn(((Ast.Stmt.If) statement).getThenStatements());
+				if (result == null)
+				{
+					result = findReturn(((Ast.Stmt.If) statement).getElseStatements());
+				}
+			}
+			if (result != null)
+			{
+				return result;
+			}
+		}
+		return null;
+	}
+
+}
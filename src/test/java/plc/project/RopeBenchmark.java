@@ -0,0 +1,38 @@
+package plc.project;
+
+/**
+ * Measures building a string by concatenating in a loop, as in {@code s = s +
+ * x;}, with the {@link Interpreter}'s concatenation of String objects, which
+ * uses {@link Rope}s, compared to concatenating their values as Java strings
+ * (which is what the Interpreter did before).
+ */
+public final class RopeBenchmark
+{
+
+	public static void main(String[] args)
+	{
+		Environment.PlcObject suffix = Environment.create("suffix");
+
+		for (int count : new int[]{100, 1_000, 10_000})
+		{
+			int iterations = 1_000_000 / count;
+			Benchmarks.run("concat " + count + " (ropes)", iterations, () -> {
+				Environment.PlcObject string = Environment.create("");
+				for (int i = 0; i < count; i++)
+				{
+					string = string.concat(suffix);
+				}
+				return ((String) string.getValue()).length();
+			});
+			Benchmarks.run("concat " + count + " (strings)", iterations, () -> {
+				Environment.PlcObject string = Environment.create("");
+				for (int i = 0; i < count; i++)
+				{
+					string = Environment.create((String) string.getValue() + suffix.getValue());
+				}
+				return ((String) string.getValue()).length();
+			});
+		}
+	}
+
+}
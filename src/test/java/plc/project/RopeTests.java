@@ -0,0 +1,72 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class RopeTests
+{
+
+	@Test
+	public void testConcat()
+	{
+		Assertions.assertEquals("ab", Rope.concat("a", "b"));
+		Object rope = Rope.concat("a".repeat(Rope.THRESHOLD), "b");
+		Assertions.assertTrue(rope instanceof Rope);
+		Assertions.assertEquals("a".repeat(Rope.THRESHOLD) + "b", rope.toString());
+		Assertions.assertEquals("a".repeat(Rope.THRESHOLD) + "bc", Rope.concat(rope, "c").toString());
+	}
+
+	@Test
+	public void testBranches()
+	{
+		Object base = Rope.concat("x".repeat(Rope.THRESHOLD), "");
+		Object first = Rope.concat(base, "first");
+		Object second = Rope.concat(base, "second");
+		Object third = Rope.concat(first, "third");
+
+		Assertions.assertEquals("x".repeat(Rope.THRESHOLD), base.toString());
+		Assertions.assertEquals("x".repeat(Rope.THRESHOLD) + "first", first.toString());
+		Assertions.assertEquals("x".repeat(Rope.THRESHOLD) + "second", second.toString());
+		Assertions.assertEquals("x".repeat(Rope.THRESHOLD) + "firstthird", third.toString());
+	}
+
+	@Test
+	public void testConcurrentAppends() throws Exception
+	{
+		Object base = Rope.concat("x".repeat(Rope.THRESHOLD), "");
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (int thread = 0; thread < 4; thread++)
+		{
+			String suffix = String.valueOf(thread);
+			futures.add(CompletableFuture.runAsync(() -> {
+				Object rope = base;
+				for (int i = 0; i < 1000; i++)
+				{
+					rope = Rope.concat(rope, suffix);
+				}
+				Assertions.assertEquals("x".repeat(Rope.THRESHOLD) + suffix.repeat(1000), rope.toString());
+			}));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+	}
+
+	@Test
+	public void testInterpreter()
+	{
+		String input = "DEF main(): Integer DO LET s = \"\"; LET i = 0; WHILE i < 1000 DO s = s + \"ab\"; i = i + 1; END RETURN s.length + s.indexOf(\"ba\"); END";
+		Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+		new Analyzer(new Scope(null)).visit(ast);
+		Assertions.assertEquals(BigInteger.valueOf(2001), new Interpreter(new Scope(null)).visit(ast).getValue());
+
+		Environment.PlcObject rope = Environment.create("a".repeat(Rope.THRESHOLD)).concat(Environment.create("b"));
+		Assertions.assertTrue(rope.isString());
+		Assertions.assertSame(Environment.Type.STRING, rope.getType());
+		Assertions.assertEquals("a".repeat(Rope.THRESHOLD) + "b", rope.getValue());
+	}
+
+}
@@ -0,0 +1,36 @@
+package plc.project;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures function lookups through a chain of scopes, as done for every
+ * call of a global function by the {@link Interpreter}, and method lookups
+ * through the method tables of types, as done for every method call on an
+ * object.
+ */
+public final class ScopeBenchmark
+{
+
+	public static void main(String[] args)
+	{
+		Scope global = new Scope(null);
+		global.defineFunction("print", 1, arguments -> Environment.NIL);
+		global.defineFunction("fib", 1, arguments -> Environment.NIL);
+		global.defineFunction("fib", 2, arguments -> Environment.NIL);
+		Scope scope = new Scope(new Scope(new Scope(global)));
+
+		List<String> names = Arrays.asList("print", "fib");
+		Environment.Type string = Environment.getType("String");
+
+		Benchmarks.run("lookupFunction (local)", 10_000_000, () -> global.lookupFunction("fib", 2).getParameterTypes().size());
+		Benchmarks.run("lookupFunction (3 scopes up)", 10_000_000, () -> scope.lookupFunction("fib", 1).getParameterTypes().size());
+		Benchmarks.run("lookupFunction (by computed name)", 10_000_000, () -> scope.lookupFunction(names.get(0), 1).getParameterTypes().size());
+		Benchmarks.run("Type#getMethod", 10_000_000, () -> string.getMethod("slice", 2).getParameterTypes().size());
+
+		int slice = Selector.of("slice", 3);
+		Benchmarks.run("Type#getMethod (selector)", 10_000_000, () -> string.getMethod(slice).getParameterTypes().size());
+		Benchmarks.run("Type#getMethod (inherited)", 10_000_000, () -> string.getMethod(Selector.of("stringify", 1)).getParameterTypes().size());
+	}
+
+}
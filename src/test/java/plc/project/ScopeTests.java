@@ -0,0 +1,85 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ScopeTests
+{
+
+	@Test
+	public void testFunctionOverloads()
+	{
+		Scope parent = new Scope(null);
+		parent.defineFunction("f", 2, arguments -> Environment.create("parent"));
+		Scope scope = new Scope(parent);
+		scope.defineFunction("f", 0, arguments -> Environment.create("zero"));
+		scope.defineFunction("f", 1, arguments -> Environment.create("one"));
+
+		Assertions.assertEquals("zero", scope.lookupFunction("f", 0).invoke().getValue());
+		Assertions.assertEquals("one", scope.lookupFunction("f", 1).invoke().getValue());
+		Assertions.assertEquals("parent", scope.lookupFunction("f", 2).invoke().getValue());
+		Assertions.assertThrows(RuntimeException.class, () -> scope.lookupFunction("f", 3));
+		Assertions.assertThrows(RuntimeException.class, () -> scope.lookupFunction("g", 0));
+		Assertions.assertThrows(RuntimeException.class, () -> scope.defineFunction("f", 1, arguments -> Environment.NIL));
+	}
+
+	@Test
+	public void testLookupFunctionAllocation()
+	{
+		Scope global = new Scope(null);
+		global.defineFunction("f", 1, arguments -> Environment.NIL);
+		Scope scope = new Scope(new Scope(global));
+
+		int iterations = 100_000;
+		int found = 0;
+		for (int i = 0; i < iterations; i++)
+		{
+			found += scope.lookupFunction("f", 1).getParameterTypes().size();
+		}
+
+		long bytes = Benchmarks.allocatedBytes();
+		for (int i = 0; i < iterations; i++)
+		{
+			found += scope.lookupFunction("f", 1).getParameterTypes().size();
+		}
+		bytes = Benchmarks.allocatedBytes() - bytes;
+
+		Assertions.assertEquals(2 * iterations, found);
+		Assertions.assertTrue(bytes < iterations, "Allocated " + bytes + " bytes for " + iterations + " lookups.");
+	}
+
+	@Test
+	public void testConcurrentDefinitions()
+	{
+		Scope scope = new Scope(null, true);
+
+		List<CompletableFuture<Boolean>> definitions = IntStream.range(0, 64)
+				.mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+					scope.defineVariable("variable" + i, Environment.create(i));
+					scope.defineFunction("function", i, arguments -> Environment.NIL);
+					try
+					{
+						scope.defineVariable("shared", Environment.create(i));
+						return true;
+					}
+					catch (RuntimeException e)
+					{
+						return false;
+					}
+				}))
+				.collect(Collectors.toList());
+
+		Assertions.assertEquals(1, definitions.stream().filter(CompletableFuture::join).count());
+		for (int i = 0; i < 64; i++)
+		{
+			Assertions.assertEquals(i, scope.lookupVariable("variable" + i).getValue().getValue());
+			Assertions.assertEquals(i, scope.lookupFunction("function", i).getParameterTypes().size());
+		}
+	}
+
+}
@@ -0,0 +1,94 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+public class SourceCompilerTests
+{
+
+	private static final String PROGRAM = "DEF fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END " +
+			"DEF main(): Integer DO LET sum = 0; FOR i IN range(0, 10) DO sum = sum + fib(i); END RETURN sum; END";
+
+	@Test
+	public void testRun(@TempDir Path cache)
+	{
+		SourceCompiler compiler = new SourceCompiler(cache);
+		Assertions.assertEquals(88, compiler.run(analyze(PROGRAM)));
+		Assertions.assertEquals(1, compiler.getCompilations());
+		Assertions.assertEquals(0, compiler.getCacheHits());
+	}
+
+	@Test
+	public void testCache(@TempDir Path cache)
+	{
+		new SourceCompiler(cache).run(analyze(PROGRAM));
+
+		SourceCompiler compiler = new SourceCompiler(cache);
+		Assertions.assertEquals(88, compiler.run(analyze(PROGRAM)));
+		Assertions.assertEquals(0, compiler.getCompilations(), "The cached classes are loaded.");
+		Assertions.assertEquals(1, compiler.getCacheHits());
+
+		Assertions.assertEquals(3, compiler.run(analyze("DEF main(): Integer DO RETURN 3; END")));
+		Assertions.assertEquals(1, compiler.getCompilations(), "A different source is compiled.");
+	}
+
+	@Test
+	public void testCompileError(@TempDir Path cache)
+	{
+		SourceCompiler compiler = new SourceCompiler(cache);
+		RuntimeException exception = Assertions.assertThrows(RuntimeException.class, () -> compiler.load("public class Main { int main() { return; } }"));
+		Assertions.assertTrue(exception.getMessage().startsWith("Unable to compile"), exception.getMessage());
+	}
+
+	/**
+	 * Pins the programs which run with Java semantics rather than those of
+	 * the {@link Interpreter}, and those which are rejected or fail (where
+	 * the expected value is the start of the message).
+	 */
+	@ParameterizedTest(name = "{0}")
+	@MethodSource
+	public void testSemantics(String test, String input, Object expected, @TempDir Path cache)
+	{
+		SourceCompiler compiler = new SourceCompiler(cache);
+		if (expected instanceof Integer)
+		{
+			Assertions.assertEquals(expected, compiler.run(analyze(input)));
+		}
+		else
+		{
+			RuntimeException exception = Assertions.assertThrows(RuntimeException.class, () -> compiler.run(analyze(input)));
+			Assertions.assertTrue(exception.getMessage().startsWith((String) expected), exception.getMessage());
+		}
+	}
+
+	private static Stream<Arguments> testSemantics()
+	{
+		return Stream.of(
+				Arguments.of("Integer Arithmetic", "DEF main(): Integer DO RETURN 7 / 2 - 1; END", 2),
+				Arguments.of("Assigned Loop Variable", "DEF main(): Integer DO LET t = 0; FOR i IN range(0, 10) DO i = i + 5; t = t + 1; END RETURN t; END", 10),
+				Arguments.of("Zero Step", "DEF main(): Integer DO LET s = 0; LET t = 0; FOR i IN range(5, 0, s) DO t = t + 1; END RETURN t; END", "The step of a range cannot be 0."),
+				Arguments.of("String Method", "DEF main(): Integer DO RETURN \"hello\".length(); END", 5),
+				// The Interpreter returns 3000000000000, which doesn't fit in an int.
+				Arguments.of("Integer Overflow", "DEF main(): Integer DO LET x = 3; x = x * 1000000; x = x * 1000000; RETURN x; END", 2112827392),
+				// The Interpreter rounds 1.0 / 3.0 to 0.3, so it returns 1.
+				Arguments.of("Decimal Division", "DEF main(): Integer DO IF 1.0 / 3.0 == 0.3 DO RETURN 1; END RETURN 0; END", 0),
+				Arguments.of("String Method Arguments", "DEF main(): Integer DO print(\"hello\".at(1)); RETURN 0; END", "Unable to generate"),
+				Arguments.of("Range Value", "DEF main(): Integer DO LET r = range(0, 3); LET t = 0; FOR i IN r DO t = t + i; END RETURN t; END", "Unable to generate")
+		);
+	}
+
+	private static Ast.Source analyze(String input)
+	{
+		Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+		new Analyzer(new Scope(null)).visit(ast);
+		return ast;
+	}
+
+}
@@ -0,0 +1,63 @@
+package plc.project;
+
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures calls of standard library methods through the {@link
+ * java.lang.invoke.MethodHandle}s bound by {@link StandardLibrary}, compared
+ * to calling the same JVM members reflectively with the same conversions, and
+ * to a handwritten implementation.
+ */
+public final class StandardLibraryBenchmark
+{
+
+	public static void main(String[] args) throws Exception
+	{
+		Environment.PlcObject string = Environment.create("standard library");
+		List<Environment.PlcObject> arguments = Arrays.asList(string, Environment.create(BigInteger.valueOf(2)), Environment.create(BigInteger.valueOf(8)));
+
+		Environment.Function slice = Environment.Type.STRING.getMethod("slice", 2);
+		Method substring = String.class.getMethod("substring", int.class, int.class);
+		Environment.Function reflective = new Environment.Function("slice", "substring", slice.getParameterTypes(), slice.getReturnType(), list -> {
+			try
+			{
+				Object[] values = new Object[list.size() - 1];
+				for (int i = 1; i < list.size(); i++)
+				{
+					values[i - 1] = ((BigInteger) list.get(i).getValue()).intValueExact();
+				}
+				return Environment.create(substring.invoke(list.get(0).getValue(), values));
+			}
+			catch (ReflectiveOperationException e)
+			{
+				throw new RuntimeException(e);
+			}
+		});
+		Environment.Function handwritten = new Environment.Function("slice", "substring", slice.getParameterTypes(), slice.getReturnType(), list ->
+				Environment.create(((String) list.get(0).getValue()).substring(((BigInteger) list.get(1).getValue()).intValueExact(), ((BigInteger) list.get(2).getValue()).intValueExact())));
+
+		Benchmarks.run("slice (method handle)", 10_000_000, () -> slice.invoke(arguments).hashCode());
+		Benchmarks.run("slice (reflection)", 10_000_000, () -> reflective.invoke(arguments).hashCode());
+		Benchmarks.run("slice (handwritten)", 10_000_000, () -> handwritten.invoke(arguments).hashCode());
+
+		Environment.Function compare = Environment.Type.INTEGER.getMethod("compare", 1);
+		Method compareTo = BigInteger.class.getMethod("compareTo", BigInteger.class);
+		List<Environment.PlcObject> integers = Arrays.asList(Environment.create(BigInteger.valueOf(12)), Environment.create(BigInteger.valueOf(34)));
+
+		Benchmarks.run("compare (method handle)", 10_000_000, () -> compare.invoke(integers).hashCode());
+		Benchmarks.run("compare (reflection)", 10_000_000, () -> {
+			try
+			{
+				return Environment.create(BigInteger.valueOf((Integer) compareTo.invoke(integers.get(0).getValue(), integers.get(1).getValue()))).hashCode();
+			}
+			catch (ReflectiveOperationException e)
+			{
+				throw new RuntimeException(e);
+			}
+		});
+	}
+
+}
@@ -0,0 +1,62 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+public class StandardLibraryTests
+{
+
+	@Test
+	public void testMethods()
+	{
+		Environment.PlcObject string = Environment.create("library");
+
+		Assertions.assertEquals("bra", string.callMethod("slice", Arrays.asList(Environment.create(BigInteger.valueOf(2)), Environment.create(BigInteger.valueOf(5)))).getValue());
+		Assertions.assertEquals(BigInteger.valueOf(7), string.getField("length").getValue().getValue());
+		Assertions.assertEquals('r', string.callMethod("at", Arrays.asList(Environment.create(BigInteger.valueOf(3)))).getValue());
+		Assertions.assertEquals(true, string.callMethod("contains", Arrays.asList(Environment.create("bra"))).getValue());
+		Assertions.assertEquals(BigInteger.valueOf(-1), Environment.create(BigInteger.ONE).callMethod("compare", Arrays.asList(Environment.create(BigInteger.TEN))).getValue());
+		Assertions.assertEquals(BigInteger.ZERO, Environment.create(new BigDecimal("1.0")).callMethod("compare", Arrays.asList(Environment.create(new BigDecimal("1.00")))).getValue());
+		Assertions.assertEquals("12", Environment.create(BigInteger.valueOf(12)).callMethod("stringify", Arrays.asList()).getValue());
+	}
+
+	@Test
+	public void testConversionErrors()
+	{
+		Environment.PlcObject string = Environment.create("library");
+		Environment.PlcObject large = Environment.create(BigInteger.ONE.shiftLeft(40));
+
+		Assertions.assertThrows(ArithmeticException.class, () -> string.callMethod("at", Arrays.asList(large)));
+		Assertions.assertThrows(StringIndexOutOfBoundsException.class, () -> string.callMethod("at", Arrays.asList(Environment.create(BigInteger.TEN))));
+		Assertions.assertThrows(RuntimeException.class, () -> string.setField("length", Environment.create(BigInteger.ONE)));
+	}
+
+	@ParameterizedTest
+	@MethodSource
+	public void testProgram(String test, String input, Object expected)
+	{
+		Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+		new Analyzer(new Scope(null)).visit(ast);
+		Assertions.assertEquals(expected, new Interpreter(new Scope(null)).visit(ast).getValue());
+	}
+
+	private static Stream<Arguments> testProgram()
+	{
+		return Stream.of(
+				Arguments.of("Strings", "DEF main(): Integer DO RETURN \"hello\".length + \"hello\".indexOf(\"l\"); END", BigInteger.valueOf(7)),
+				Arguments.of("Math", "DEF main(): Integer DO RETURN max(abs(-4), min(2, 3)); END", BigInteger.valueOf(4)),
+				Arguments.of("Decimal Math", "DEF main(): Integer DO RETURN sqrt(pow(1.5, 2.0)).compare(1.5); END", BigInteger.ZERO),
+				Arguments.of("Conversions", "DEF main(): Integer DO RETURN parseInteger(\"40\") + 2; END", BigInteger.valueOf(42)),
+				Arguments.of("Stringify", "DEF main(): Integer DO LET x = 5; RETURN x.stringify().length; END", BigInteger.ONE)
+		);
+	}
+
+}
@@ -0,0 +1,128 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the programs of {@link InterpreterTests} and {@link
+ * ClosureCompilerTests} with every method compiled once it is first called,
+ * checking that the results match the {@link Interpreter}'s, and checks the
+ * transitions between tiers.
+ */
+public class TieredInterpreterTests
+{
+
+	private static final String FIB = "DEF fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END " +
+			"DEF main(): Integer DO RETURN fib(15); END";
+
+	@ParameterizedTest
+	@MethodSource("plc.project.InterpreterTests#testSource")
+	public void testSource(String test, Ast.Source ast, Object expected)
+	{
+		TieredInterpreter interpreter = new TieredInterpreter(new Scope(null), 1, Runnable::run);
+		Assertions.assertEquals(expected, interpreter.visit(ast).getValue());
+	}
+
+	@ParameterizedTest
+	@MethodSource({"plc.project.InterpreterTests#testAnalyzedSource", "plc.project.ClosureCompilerTests#testProgram"})
+	public void testAnalyzedSource(String test, String input, Object expected)
+	{
+		TieredInterpreter interpreter = new TieredInterpreter(new Scope(null), 1, Runnable::run);
+		Assertions.assertEquals(expected, interpreter.visit(analyze(input)).getValue());
+	}
+
+	@Test
+	public void testTransition()
+	{
+		List<Runnable> tasks = new ArrayList<>();
+		TieredInterpreter interpreter = new TieredInterpreter(new Scope(null), 100, tasks::add);
+		Ast.Source ast = analyze(FIB);
+
+		Assertions.assertEquals(BigInteger.valueOf(610), interpreter.visit(ast).getValue());
+		TieredInterpreter.Profile fib = interpreter.getProfile("fib", 1);
+		Assertions.assertEquals(TieredInterpreter.Tier.COMPILING, fib.getTier());
+		Assertions.assertEquals(TieredInterpreter.Tier.INTERPRETED, interpreter.getProfile("main", 0).getTier());
+		Assertions.assertEquals(1, tasks.size(), "The method is only queued once.");
+		Assertions.assertEquals(1973, fib.getInvocations());
+
+		tasks.forEach(Runnable::run);
+		Assertions.assertEquals(TieredInterpreter.Tier.COMPILED, fib.getTier());
+		Assertions.assertEquals(1, interpreter.getCompilations());
+		Assertions.assertEquals(BigInteger.valueOf(610), interpreter.execute().getValue());
+		Assertions.assertEquals(1973, fib.getInvocations(), "Compiled calls aren't counted.");
+	}
+
+	@Test
+	public void testBackEdges()
+	{
+		TieredInterpreter interpreter = new TieredInterpreter(new Scope(null), 50, Runnable::run);
+		Ast.Source ast = analyze("LET total: Integer = 0; " +
+				"DEF add(n: Integer): Integer DO LET i = 0; WHILE i < n DO total = total + i; i = i + 1; END RETURN total; END " +
+				"DEF main(): Integer DO add(20); add(40); RETURN add(10); END");
+
+		Assertions.assertEquals(BigInteger.valueOf(190 + 780 + 45), interpreter.visit(ast).getValue());
+		TieredInterpreter.Profile add = interpreter.getProfile("add", 1);
+		Assertions.assertEquals(TieredInterpreter.Tier.COMPILED, add.getTier());
+		Assertions.assertEquals(2, add.getInvocations());
+		Assertions.assertEquals(51, add.getBackEdges(), "The loop continues compiled after 50 iterations.");
+	}
+
+	@Test
+	public void testOnStackReplacement()
+	{
+		TieredInterpreter interpreter = new TieredInterpreter(new Scope(null), 100, Runnable::run);
+		Ast.Source ast = analyze("LET calls: Integer = 0; " +
+				"DEF square(n: Integer): Integer DO calls = calls + 1; RETURN n * n; END " +
+				"DEF main(): Integer DO LET i = 0; LET sum = 0; WHILE i < 1000 DO LET next = i + 1; sum = sum + square(i); i = next; END RETURN sum + i + calls; END");
+
+		Assertions.assertEquals(BigInteger.valueOf(332833500 + 1000 + 1000), interpreter.visit(ast).getValue());
+		TieredInterpreter.LoopProfile loop = interpreter.getLoopProfiles().get(0);
+		Assertions.assertEquals(TieredInterpreter.Tier.COMPILED, loop.getTier());
+		Assertions.assertEquals(100, loop.getBackEdges(), "The loop continues compiled once it is.");
+		Assertions.assertEquals(1, loop.getEntries());
+		Assertions.assertEquals(101, interpreter.getProfile("main", 0).getBackEdges());
+	}
+
+	@Test
+	public void testOnStackReplacementReturn()
+	{
+		TieredInterpreter interpreter = new TieredInterpreter(new Scope(null), 10, Runnable::run);
+		Ast.Source ast = analyze("DEF main(): Integer DO LET i = 0; WHILE TRUE DO IF i == 500 DO RETURN i * 2; END i = i + 1; END RETURN 0; END");
+
+		Assertions.assertEquals(BigInteger.valueOf(1000), interpreter.visit(ast).getValue());
+		Assertions.assertEquals(1, interpreter.getLoopProfiles().get(0).getEntries());
+	}
+
+	@Test
+	public void testBackground() throws InterruptedException
+	{
+		TieredInterpreter interpreter = new TieredInterpreter(new Scope(null), 10, Executors.newSingleThreadExecutor());
+		Ast.Source ast = analyze(FIB);
+		Assertions.assertEquals(BigInteger.valueOf(610), interpreter.visit(ast).getValue());
+
+		TieredInterpreter.Profile fib = interpreter.getProfile("fib", 1);
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (fib.getTier() != TieredInterpreter.Tier.COMPILED && System.nanoTime() < deadline)
+		{
+			Thread.sleep(10);
+		}
+		Assertions.assertEquals(TieredInterpreter.Tier.COMPILED, fib.getTier());
+		Assertions.assertEquals(BigInteger.valueOf(610), interpreter.execute().getValue());
+	}
+
+	private static Ast.Source analyze(String input)
+	{
+		Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+		new Analyzer(new Scope(null)).visit(ast);
+		return ast;
+	}
+
+}
@@ -0,0 +1,82 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class TypeRegistryTests
+{
+
+	@Test
+	public void testIsolation()
+	{
+		TypeRegistry first = Environment.createTypes();
+		TypeRegistry second = Environment.createTypes();
+		Environment.Type firstPoint = new Environment.Type("Point", "Point", new Scope(Environment.Type.ANY.getScope()));
+		Environment.Type secondPoint = new Environment.Type("Point", "Point", new Scope(Environment.Type.COMPARABLE.getScope()));
+		first.register(firstPoint);
+		second.register(secondPoint);
+
+		Assertions.assertSame(firstPoint, first.get("Point"));
+		Assertions.assertSame(secondPoint, second.get("Point"));
+		Assertions.assertFalse(first.isSubtype(first.get("Point"), Environment.Type.COMPARABLE));
+		Assertions.assertTrue(second.isSubtype(second.get("Point"), Environment.Type.COMPARABLE));
+		Assertions.assertFalse(Environment.getTypes().contains("Point"));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> first.register(new Environment.Type("Point", "Point", new Scope(null))));
+	}
+
+	@Test
+	public void testCopyOnWrite()
+	{
+		TypeRegistry registry = Environment.createTypes();
+		TypeRegistry copy = registry.copy();
+		registry.register(new Environment.Type("Later", "Later", new Scope(Environment.Type.ANY.getScope())));
+
+		Assertions.assertTrue(registry.contains("Later"));
+		Assertions.assertFalse(copy.contains("Later"));
+		Assertions.assertSame(Environment.Type.INTEGER, copy.get("Integer"));
+		Assertions.assertThrows(RuntimeException.class, () -> copy.get("Later"));
+	}
+
+	@Test
+	public void testConcurrentRegistration() throws Exception
+	{
+		TypeRegistry registry = Environment.createTypes();
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (int thread = 0; thread < 4; thread++)
+		{
+			int offset = thread * 50;
+			futures.add(CompletableFuture.runAsync(() -> {
+				for (int i = offset; i < offset + 50; i++)
+				{
+					Environment.Type type = new Environment.Type("Type" + i, "Type" + i, new Scope(Environment.Type.COMPARABLE.getScope()));
+					registry.register(type);
+					Assertions.assertTrue(registry.isSubtype(registry.get("Type" + i), Environment.Type.COMPARABLE));
+				}
+			}));
+		}
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+
+		for (int i = 0; i < 200; i++)
+		{
+			Assertions.assertTrue(registry.contains("Type" + i), "Type" + i);
+		}
+	}
+
+	@Test
+	public void testAnalyzer()
+	{
+		TypeRegistry registry = Environment.createTypes();
+		registry.register(new Environment.Type("Counter", "Counter", new Scope(Environment.Type.ANY.getScope())));
+		String input = "LET counter: Counter; DEF main(): Integer DO RETURN 0; END";
+
+		Analyzer analyzer = new Analyzer(new Scope(null), registry);
+		analyzer.visit(new Parser(new Lexer(input).lex()).parseSource());
+		Assertions.assertSame(registry.get("Counter"), analyzer.getScope().lookupVariable("counter").getType());
+		Assertions.assertThrows(RuntimeException.class, () -> new Analyzer(new Scope(null)).visit(new Parser(new Lexer(input).lex()).parseSource()));
+	}
+
+}
@@ -0,0 +1,86 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Runs the programs of {@link InterpreterTests} and {@link
+ * ClosureCompilerTests} on the {@link VirtualMachine}, checking that the
+ * results match the {@link Interpreter}'s.
+ */
+public class VirtualMachineTests
+{
+
+	@ParameterizedTest
+	@MethodSource("plc.project.InterpreterTests#testSource")
+	public void testSource(String test, Ast.Source ast, Object expected)
+	{
+		test(ast, expected);
+	}
+
+	@ParameterizedTest
+	@MethodSource({"plc.project.InterpreterTests#testAnalyzedSource", "plc.project.ClosureCompilerTests#testProgram"})
+	public void testAnalyzedSource(String test, String input, Object expected)
+	{
+		Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+		new Analyzer(new Scope(null)).visit(ast);
+		test(ast, expected);
+	}
+
+	@Test
+	public void testDisassembler()
+	{
+		Ast.Source ast = new Parser(new Lexer("DEF fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END " +
+				"DEF main(): Integer DO RETURN fib(10); END").lex()).parseSource();
+		new Analyzer(new Scope(null)).visit(ast);
+		Bytecode.Program program = new BytecodeCompiler(new Scope(null)).compile(ast);
+
+		Assertions.assertEquals(String.join("\n",
+				"<source>/0 (locals 0, stack 1)",
+				"    0: CALL 0 0 ; main/0",
+				"    3: RETURN",
+				""
+		), Disassembler.disassemble(program.getEntry()));
+		Assertions.assertEquals(String.join("\n",
+				"fib/1 (locals 1, stack 3)",
+				"    0: LOAD 0",
+				"    2: CONST 0 ; 2",
+				"    4: ILT",
+				"    5: JUMP_FALSE 10",
+				"    7: LOAD 0",
+				"    9: RETURN",
+				"   10: LOAD 0",
+				"   12: CONST 1 ; 1",
+				"   14: ISUB",
+				"   15: CALL 2 1 ; fib/1",
+				"   18: LOAD 0",
+				"   20: CONST 0 ; 2",
+				"   22: ISUB",
+				"   23: CALL 2 1 ; fib/1",
+				"   26: IADD",
+				"   27: RETURN",
+				"   28: CONST 3 ; nil",
+				"   30: RETURN",
+				""
+		), Disassembler.disassemble(program.getFunctions().stream().filter(function -> function.getName().equals("fib")).findFirst().get()));
+	}
+
+	@Test
+	public void testDeepRecursion()
+	{
+		Ast.Source ast = new Parser(new Lexer("DEF count(n: Integer): Integer DO IF n == 0 DO RETURN 0; END RETURN 1 + count(n - 1); END " +
+				"DEF main(): Integer DO RETURN count(100000); END").lex()).parseSource();
+		new Analyzer(new Scope(null)).visit(ast);
+		Assertions.assertEquals(100000, ((java.math.BigInteger) new VirtualMachine(new BytecodeCompiler(new Scope(null)).compile(ast)).run().getValue()).intValue());
+	}
+
+	private static void test(Ast.Source ast, Object expected)
+	{
+		VirtualMachine machine = new VirtualMachine(new BytecodeCompiler(new Scope(null)).compile(ast));
+		Assertions.assertEquals(expected, machine.run().getValue());
+		Assertions.assertEquals(expected, machine.run().getValue(), "Running the program again.");
+	}
+
+}